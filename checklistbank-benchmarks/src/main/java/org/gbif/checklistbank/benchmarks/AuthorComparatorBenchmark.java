@@ -0,0 +1,50 @@
+package org.gbif.checklistbank.benchmarks;
+
+import org.gbif.checklistbank.authorship.AuthorComparator;
+import org.gbif.checklistbank.model.Equality;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the authorship comparison with the bundled author map as used during name matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorComparatorBenchmark {
+
+  private final AuthorComparator comp = AuthorComparator.createWithAuthormap();
+
+  @Benchmark
+  public Equality equalAuthors() {
+    return comp.compare("L.", "1753", "Linnaeus", "1753");
+  }
+
+  @Benchmark
+  public Equality differentAuthors() {
+    return comp.compare("Mill.", null, "Lam.", "1783");
+  }
+
+  @Benchmark
+  public Equality teamAuthors() {
+    return comp.compare("J.V.F. Lamouroux & Bory", "1813", "Lamouroux, J.V.F. and Bory de St.-Vincent", null);
+  }
+
+  @Benchmark
+  public Equality missingAuthor() {
+    return comp.compare(null, null, "Hulst", "1896");
+  }
+}
@@ -0,0 +1,119 @@
+package org.gbif.checklistbank.benchmarks;
+
+import org.gbif.api.model.Constants;
+import org.gbif.api.model.checklistbank.NameUsage;
+import org.gbif.api.util.ClassificationUtils;
+import org.gbif.api.vocabulary.Rank;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+import org.gbif.checklistbank.model.ParsedNameUsage;
+import org.gbif.checklistbank.service.mybatis.mapper.NameUsageMapper;
+import org.gbif.nub.lookup.fuzzy.NubIndex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * Small backbone fixture with roughly 4000 usages taken from the nub matching test index
+ * that is used to build on disk nub indices for benchmarking.
+ */
+public class NubFixture {
+  private static final String USAGES_FILE = "/nub-usages.tsv";
+  private static final Splitter TAB = Splitter.on('\t');
+  private static final Rank[] HIGHER_RANKS = new Rank[]{Rank.KINGDOM, Rank.PHYLUM, Rank.CLASS, Rank.ORDER, Rank.FAMILY, Rank.GENUS};
+
+  private NubFixture() {
+  }
+
+  /**
+   * Reads all fixture usages with the columns:
+   * key, acceptedKey, scientificName, rank, status, kingdom ... genus, kingdomKey ... genusKey
+   */
+  public static List<ParsedNameUsage> usages() throws IOException {
+    List<ParsedNameUsage> usages = Lists.newArrayList();
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(
+        NubFixture.class.getResourceAsStream(USAGES_FILE), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        List<String> cols = TAB.splitToList(line);
+        ParsedNameUsage u = new ParsedNameUsage();
+        u.setKey(Integer.valueOf(cols.get(0)));
+        u.setAcceptedKey(toInt(cols.get(1)));
+        u.setScientificName(cols.get(2));
+        u.setRank(Strings.isNullOrEmpty(cols.get(3)) ? null : Rank.valueOf(cols.get(3)));
+        u.setTaxonomicStatus(Strings.isNullOrEmpty(cols.get(4)) ? null : TaxonomicStatus.valueOf(cols.get(4)));
+        for (int idx = 0; idx < HIGHER_RANKS.length; idx++) {
+          ClassificationUtils.setHigherRank(u, HIGHER_RANKS[idx], Strings.emptyToNull(cols.get(5 + idx)),
+              toInt(cols.get(5 + HIGHER_RANKS.length + idx)));
+        }
+        usages.add(u);
+      }
+    }
+    return usages;
+  }
+
+  /**
+   * Builds a new memory mapped nub index in the given, not yet existing directory from all fixture usages.
+   */
+  public static NubIndex newFileIndex(File indexDir) throws IOException {
+    return NubIndex.newFileIndex(indexDir, mapper(usages()), Constants.NUB_DATASET_KEY);
+  }
+
+  /**
+   * @return a name usage mapper that only supports processDataset, streaming the given usages, and datasetState
+   */
+  private static NameUsageMapper mapper(final List<ParsedNameUsage> usages) {
+    return (NameUsageMapper) Proxy.newProxyInstance(NubFixture.class.getClassLoader(), new Class[]{NameUsageMapper.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("processDataset")) {
+            @SuppressWarnings("unchecked")
+            ResultHandler<ParsedNameUsage> handler = (ResultHandler<ParsedNameUsage>) args[1];
+            DefaultResultContext<ParsedNameUsage> ctx = new DefaultResultContext<>();
+            for (ParsedNameUsage u : usages) {
+              ctx.nextResultObject(u);
+              handler.handleResult(ctx);
+            }
+            return null;
+
+          } else if (method.getName().equals("datasetState")) {
+            return "fixture:" + usages.size();
+          }
+          throw new UnsupportedOperationException(method.getName() + " not supported by fixture mapper");
+        });
+  }
+
+  private static Integer toInt(String x) {
+    return Strings.isNullOrEmpty(x) ? null : Integer.valueOf(x);
+  }
+
+  /**
+   * @return every nth canonical name of the fixture usages, with a misspelled variant for every second one
+   */
+  public static List<String> queryNames(List<? extends NameUsage> usages, int step) {
+    List<String> names = Lists.newArrayList();
+    int counter = 0;
+    for (int idx = 0; idx < usages.size(); idx += step) {
+      String name = usages.get(idx).getScientificName();
+      names.add(name);
+      if (counter++ % 2 == 0 && name.length() > 6) {
+        // swap two inner letters to trigger fuzzy matching
+        char[] chars = name.toCharArray();
+        char c = chars[3];
+        chars[3] = chars[4];
+        chars[4] = c;
+        names.add(new String(chars));
+      }
+    }
+    return names;
+  }
+}
@@ -0,0 +1,94 @@
+package org.gbif.checklistbank.benchmarks;
+
+import org.gbif.api.model.checklistbank.NameUsageMatch;
+import org.gbif.checklistbank.model.ParsedNameUsage;
+import org.gbif.nameparser.NameParserGbifV1;
+import org.gbif.nub.lookup.fuzzy.HigherTaxaComparator;
+import org.gbif.nub.lookup.fuzzy.NubIndex;
+import org.gbif.nub.lookup.fuzzy.NubMatchingServiceImpl;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the full name matching against a small memory mapped nub index on disk.
+ * The query names contain exact names and misspelled variants to exercise fuzzy matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NubMatchingBenchmark {
+
+  private File indexDir;
+  private NubIndex index;
+  private NubMatchingServiceImpl matcher;
+  private List<ParsedNameUsage> usages;
+  private List<String> names;
+  private int idx;
+  private int usageIdx;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    indexDir = new File(Files.createTempDir(), "nubidx");
+    index = NubFixture.newFileIndex(indexDir);
+    // no synonym dictionaries loaded to avoid network access
+    matcher = new NubMatchingServiceImpl(index, new HigherTaxaComparator(), new NameParserGbifV1());
+    usages = NubFixture.usages();
+    names = NubFixture.queryNames(usages, 20);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws Exception {
+    index.close();
+    FileUtils.deleteQuietly(indexDir.getParentFile());
+  }
+
+  private String nextName() {
+    idx = (idx + 1) % names.size();
+    return names.get(idx);
+  }
+
+  @Benchmark
+  public NameUsageMatch match() {
+    return matcher.match(nextName(), null, null, false, false);
+  }
+
+  @Benchmark
+  public NameUsageMatch matchStrict() {
+    return matcher.match(nextName(), null, null, true, false);
+  }
+
+  @Benchmark
+  public NameUsageMatch matchWithClassification() {
+    usageIdx = (usageIdx + 20) % usages.size();
+    ParsedNameUsage u = usages.get(usageIdx);
+    NameUsageMatch cl = new NameUsageMatch();
+    cl.setKingdom(u.getKingdom());
+    cl.setFamily(u.getFamily());
+    return matcher.match(u.getScientificName(), null, cl, false, false);
+  }
+
+  @Benchmark
+  public List<NameUsageMatch> fuzzyIndexSearch() {
+    return index.matchByName(nextName(), true, 50);
+  }
+}
@@ -0,0 +1,52 @@
+package org.gbif.checklistbank.benchmarks;
+
+import org.gbif.checklistbank.utils.SciNameNormalizer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the regex based scientific name normalization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SciNameNormalizerBenchmark {
+
+  @Param({
+      "Abies",
+      "Abies alba",
+      "Larus fuscus intermedius",
+      "Zabidius novaemaculeatus",
+      "Æschna ×hybrida  Linnaeus"
+  })
+  public String name;
+
+  @Benchmark
+  public String normalize() {
+    return SciNameNormalizer.normalize(name);
+  }
+
+  @Benchmark
+  public String normalizeWithoutStemming() {
+    return SciNameNormalizer.normalize(name, false);
+  }
+
+  @Benchmark
+  public String normalizeAll() {
+    return SciNameNormalizer.normalizeAll(name);
+  }
+}
@@ -0,0 +1,69 @@
+package org.gbif.checklistbank.benchmarks;
+
+import org.gbif.nub.lookup.similarity.JaroWinkler;
+import org.gbif.nub.lookup.similarity.ModifiedDamerauLevenshtein;
+import org.gbif.nub.lookup.similarity.ScientificNameSimilarity;
+import org.gbif.nub.lookup.similarity.StringSimilarity;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the string similarity implementations used to score fuzzy name matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSimilarityBenchmark {
+
+  @Param({
+      "Abies alba|Abies alba",
+      "Abies alba|Abies albus",
+      "Zabidius novaemaculeatus|Zabideus novemaculeatus",
+      "Iberus gualtieranus minor|Iberus gualterianus minor",
+      "Puma|Pumba"
+  })
+  public String pair;
+
+  private String x1;
+  private String x2;
+  private final StringSimilarity sciNameSim = new ScientificNameSimilarity();
+  private final StringSimilarity damerau = new ModifiedDamerauLevenshtein();
+  private final StringSimilarity jaroWinkler = new JaroWinkler();
+
+  @Setup
+  public void setup() {
+    int sep = pair.indexOf('|');
+    x1 = pair.substring(0, sep);
+    x2 = pair.substring(sep + 1);
+  }
+
+  @Benchmark
+  public double scientificNameSimilarity() {
+    return sciNameSim.getSimilarity(x1, x2);
+  }
+
+  @Benchmark
+  public double modifiedDamerauLevenshtein() {
+    return damerau.getSimilarity(x1, x2);
+  }
+
+  @Benchmark
+  public double jaroWinkler() {
+    return jaroWinkler.getSimilarity(x1, x2);
+  }
+}
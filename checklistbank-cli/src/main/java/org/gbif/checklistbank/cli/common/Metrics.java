@@ -7,5 +7,13 @@ public class Metrics {
     public static final String RELATION_METER = "taxon.relations";
     public static final String METRICS_METER = "taxon.metrics";
     public static final String DENORMED_METER = "taxon.denormed";
+    public static final String PAGECACHE_HITS = "neo.pagecache.hits";
+    public static final String PAGECACHE_FAULTS = "neo.pagecache.faults";
+    public static final String PAGECACHE_EVICTIONS = "neo.pagecache.evictions";
+    public static final String PAGECACHE_HIT_RATIO = "neo.pagecache.hitratio";
+    // prefix for the serialized object size histograms of the kvp maps
+    public static final String KVP_SIZE_PREFIX = "kvp.size.";
+    // prefix for the timers, process wide peak heap and store size histograms of the individual normalizer stages
+    public static final String NORMALIZER_STAGE_PREFIX = "normalizer.";
 
 }
@@ -1,6 +1,7 @@
 package org.gbif.checklistbank.cli.common;
 
 import com.beust.jcommander.Parameter;
+import com.google.common.collect.Maps;
 import org.apache.commons.io.FileUtils;
 import org.neo4j.graphdb.factory.GraphDatabaseBuilder;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
@@ -13,6 +14,9 @@ import org.slf4j.LoggerFactory;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -21,6 +25,11 @@ import java.util.UUID;
 public class NeoConfiguration {
 
   private static final Logger LOG = LoggerFactory.getLogger(NeoConfiguration.class);
+  private static final long MB = 1024 * 1024;
+  // rough store sizes per dataset record incl synonyms, relations and properties
+  private static final long NEO_BYTES_PER_RECORD = 1024;
+  private static final long KVP_BYTES_PER_RECORD = 4096;
+  private static final int MIN_MAPPED_MEMORY = 16;
 
   @NotNull
   @Parameter(names = "--neo-repo")
@@ -30,10 +39,38 @@ public class NeoConfiguration {
   @Parameter(names = "--neo-batchsize")
   public int batchSize = 10000;
 
+  /**
+   * Number of threads used to parse names and interpret records during the initial batch insert.
+   */
+  @Min(1)
+  @Parameter(names = "--neo-insert-threads")
+  public int insertThreads = 4;
+
+  /**
+   * Number of threads used to walk independent subtrees when building metrics and matching to the backbone.
+   */
+  @Min(1)
+  @Parameter(names = "--neo-walk-threads")
+  public int walkThreads = 4;
+
   @Min(0)
   @Parameter(names = "--neo-mapped-memory")
   public int mappedMemory = 128;
 
+  /**
+   * If true the neo4j page cache and the initial kvp store allocation are sized from the number of dataset records
+   * instead of using the fixed mappedMemory, limited by the available memory.
+   */
+  @Parameter(names = "--neo-auto-memory")
+  public boolean autoMemory = false;
+
+  /**
+   * Optional initial kryo buffer sizes in bytes for the kvp maps of the UsageDao keyed by their map name,
+   * e.g. verbatim or extensions. Buffers grow automatically, so these only avoid repeated growth for large objects.
+   */
+  @NotNull
+  public Map<String, Integer> kryoBufferSizes = Maps.newHashMap();
+
   @Min(1000)
   @Parameter(names = {"--neo-shell-port"}, required = false)
   public int port = 1337;
@@ -53,11 +90,67 @@ public class NeoConfiguration {
   }
 
   /**
-   * Creates a new embedded db in the neoRepository folder.
+   * @param records     number of dataset records, negative if unknown
+   * @param concurrency maximum number of datasets processed at the same time which share the available memory
+   * @return the neo4j page cache size in MB to be used for a dataset with the given number of records
+   */
+  public int mappedMemory(long records, int concurrency) {
+    if (!autoMemory || records < 0) {
+      return mappedMemory;
+    }
+    long mb = Math.max(MIN_MAPPED_MEMORY, records * NEO_BYTES_PER_RECORD / MB);
+    return (int) Math.max(MIN_MAPPED_MEMORY, Math.min(mb, availableMemory(concurrency) / MB));
+  }
+
+  /**
+   * @param records     number of dataset records, negative if unknown
+   * @param concurrency maximum number of datasets processed at the same time which share the available memory
+   * @return the initial allocation of the kvp store file in bytes or zero to use the MapDB default
+   */
+  public long kvpAllocation(long records, int concurrency) {
+    if (!autoMemory || records < 0) {
+      return 0;
+    }
+    return Math.min(records * KVP_BYTES_PER_RECORD, availableMemory(concurrency));
+  }
+
+  /**
+   * The page cache lives off heap, so we use half of the physical memory not reserved for the java heap.
+   * If the physical memory is unknown we fall back to half the max heap size.
+   * The memory is shared equally by all datasets processed concurrently.
+   */
+  private static long availableMemory(int concurrency) {
+    return processMemory() / Math.max(1, concurrency);
+  }
+
+  private static long processMemory() {
+    long heap = Runtime.getRuntime().maxMemory();
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      long ram = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+      if (ram > heap) {
+        return (ram - heap) / 2;
+      }
+    }
+    return heap / 2;
+  }
+
+  /**
+   * Creates a new embedded db in the neoRepository folder using the fixed mappedMemory.
    *
    * @param eraseExisting if true deletes previously existing db
    */
   public GraphDatabaseBuilder newEmbeddedDb(File storeDir, boolean eraseExisting) {
+    return newEmbeddedDb(storeDir, eraseExisting, mappedMemory);
+  }
+
+  /**
+   * Creates a new embedded db in the neoRepository folder.
+   *
+   * @param eraseExisting if true deletes previously existing db
+   * @param mappedMemory  page cache size in MB
+   */
+  public GraphDatabaseBuilder newEmbeddedDb(File storeDir, boolean eraseExisting, int mappedMemory) {
     if (eraseExisting && storeDir.exists()) {
       // erase previous db
       LOG.debug("Removing previous neo4j database from {}", storeDir.getAbsolutePath());
@@ -5,6 +5,9 @@ import org.gbif.checklistbank.config.GangliaConfiguration;
 import org.gbif.common.messaging.config.MessagingConfiguration;
 import org.gbif.common.search.solr.SolrConfig;
 
+import java.io.File;
+
+import javax.annotation.Nullable;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
@@ -43,4 +46,13 @@ public class MatcherConfiguration {
   @NotNull
   public SolrConfig solr = new SolrConfig();
 
+  /**
+   * Optional file to keep a persistent snapshot of the backbone id lookup.
+   * If the backbone has not been modified since the snapshot was written it will be reused on startup,
+   * otherwise the snapshot is rebuilt from postgres.
+   */
+  @Parameter(names = "--lookup-snapshot")
+  @Nullable
+  public File lookupSnapshot;
+
 }
@@ -11,11 +11,11 @@ import org.gbif.checklistbank.nub.lookup.NubMatchService;
 import org.gbif.checklistbank.service.DatasetImportService;
 import org.gbif.checklistbank.service.mybatis.guice.ChecklistBankServiceMyBatisModule;
 import org.gbif.checklistbank.service.mybatis.guice.Mybatis;
+import org.gbif.checklistbank.service.mybatis.mapper.NameUsageMapper;
 import org.gbif.common.messaging.api.messages.ChecklistSyncedMessage;
 import org.gbif.common.messaging.api.messages.MatchDatasetMessage;
 import org.gbif.nub.lookup.straight.DatasetMatchFailed;
 import org.gbif.nub.lookup.straight.IdLookup;
-import org.gbif.nub.lookup.straight.IdLookupImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +26,7 @@ public class MatcherService extends RabbitDatasetService<MatchDatasetMessage> {
   private static final Logger LOG = LoggerFactory.getLogger(MatcherService.class);
 
   private NubMatchService matcher;
+  private IdLookup lookup;
   private static final String QUEUE = "clb-matcher";
   private final DatasetImportService sqlImportService;
   private final DatasetImportService solrImportService;
@@ -47,8 +48,8 @@ public class MatcherService extends RabbitDatasetService<MatchDatasetMessage> {
 
   @Override
   protected void startUpBeforeListening() throws Exception {
-    // loads all nub usages directly from clb postgres - this can take a few minutes
-    IdLookup lookup = IdLookupImpl.temp().load(cfg.clb, false);
+    // reuses an existing snapshot or loads all nub usages directly from clb postgres - this can take a few minutes
+    lookup = NubMatchService.loadLookup(cfg.clb, getInstance(NameUsageMapper.class), cfg.lookupSnapshot);
     matcher = new NubMatchService(cfg.clb, lookup, sqlImportService, solrImportService);
   }
 
@@ -79,5 +80,8 @@ public class MatcherService extends RabbitDatasetService<MatchDatasetMessage> {
     super.shutDown();
     sqlImportService.close();
     solrImportService.close();
+    if (lookup != null) {
+      lookup.close();
+    }
   }
 }
@@ -0,0 +1,50 @@
+package org.gbif.checklistbank.cli.normalizer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the used heap of the JVM in regular intervals and keeps the highest value seen since it was started.
+ * The global peak usage of the memory pools is left untouched, so several normalizers running in the same process
+ * do not reset each others readings.
+ * Note that the used heap is a process wide value which includes the memory of any other concurrently running job.
+ */
+class HeapSampler implements AutoCloseable {
+  private static final long INTERVAL_MS = 100;
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  private final AtomicLong max = new AtomicLong();
+  private final ScheduledExecutorService scheduler;
+
+  HeapSampler() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("heap-sampler-%d").setDaemon(true).build()
+    );
+    sample();
+    scheduler.scheduleAtFixedRate(this::sample, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  private void sample() {
+    final long used = MEMORY.getHeapMemoryUsage().getUsed();
+    max.accumulateAndGet(used, Math::max);
+  }
+
+  /**
+   * @return the highest used process heap in bytes sampled so far
+   */
+  long getMaxUsed() {
+    sample();
+    return max.get();
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
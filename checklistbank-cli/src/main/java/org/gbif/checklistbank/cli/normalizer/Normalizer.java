@@ -9,6 +9,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
 import org.apache.commons.lang3.ObjectUtils;
 import org.gbif.api.model.checklistbank.NameUsage;
 import org.gbif.api.model.checklistbank.VerbatimNameUsage;
@@ -25,7 +28,10 @@ import org.gbif.checklistbank.neo.*;
 import org.gbif.checklistbank.neo.traverse.NubMatchHandler;
 import org.gbif.checklistbank.neo.traverse.Traversals;
 import org.gbif.checklistbank.neo.traverse.TreeWalker;
+import org.gbif.checklistbank.neo.traverse.UsageCache;
 import org.gbif.checklistbank.neo.traverse.UsageMetricsHandler;
+import org.gbif.dwc.ArchiveFile;
+import org.gbif.dwc.DwcFiles;
 import org.gbif.dwc.terms.DwcTerm;
 import org.gbif.nub.lookup.straight.IdLookup;
 import org.gbif.nub.lookup.straight.IdLookupPassThru;
@@ -36,8 +42,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 
 /**
  * Reads a good id based dwc archive and produces a neo4j graph from it.
@@ -47,6 +57,9 @@ public class Normalizer extends ImportDb implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(Normalizer.class);
   private static final List<Splitter> COMMON_SPLITTER = Lists.newArrayList();
   private static final Set<Rank> UNKNOWN_RANKS = ImmutableSet.of(Rank.UNRANKED, Rank.OTHER);
+  // subtree sizes for concurrent tree walks
+  private static final int CHUNK_MIN_SIZE = 100;
+  private static final int CHUNK_SIZE = 10000;
   private static final List<Rank> DWC_RANKS_REVERSE = ImmutableList.copyOf(Lists.reverse(Rank.DWC_RANKS));
 
   static {
@@ -62,22 +75,31 @@ public class Normalizer extends ImportDb implements Runnable {
   private final Meter relationMeter;
   private final Meter denormedMeter;
   private final Meter metricsMeter;
+  private final MetricRegistry registry;
+  private final List<StageStats> stages = Lists.newArrayList();
+  private long stageStart;
+  private HeapSampler heapSampler;
   private final int batchSize;
+  private final int insertThreads;
+  private final int walkThreads;
   private InsertMetadata meta;
   private List<String> cycles = Lists.newArrayList();
   private UsageMetricsHandler metricsHandler;
   private NubMatchHandler matchHandler;
 
-  private Normalizer(UUID datasetKey, UsageDao dao, File dwca, int batchSize,
+  private Normalizer(UUID datasetKey, UsageDao dao, File dwca, int batchSize, int insertThreads, int walkThreads,
                      MetricRegistry registry, Map<String, UUID> constituents, IdLookup lookup) {
     super(datasetKey, dao);
     this.constituents = constituents;
+    this.registry = registry;
     relationMeter = registry.meter(Metrics.RELATION_METER);
     metricsMeter = registry.meter(Metrics.METRICS_METER);
     denormedMeter = registry.meter(Metrics.DENORMED_METER);
     this.dwca = dwca;
     this.lookup = lookup;
     this.batchSize = batchSize;
+    this.insertThreads = insertThreads;
+    this.walkThreads = walkThreads;
   }
 
   /**
@@ -87,14 +109,59 @@ public class Normalizer extends ImportDb implements Runnable {
   public static Normalizer create(NormalizerConfiguration cfg, UUID datasetKey, MetricRegistry registry,
                                   Map<String, UUID> constituents, IdLookup lookup) {
     return new Normalizer(datasetKey,
-        UsageDao.persistentDao(cfg.neo, datasetKey, registry, true),
+        UsageDao.persistentDao(cfg.neo, datasetKey, registry, true,
+            cfg.neo.autoMemory ? countRecords(cfg.archiveDir(datasetKey)) : -1, cfg.poolSize),
         cfg.archiveDir(datasetKey),
         cfg.neo.batchSize,
+        cfg.neo.insertThreads,
+        cfg.neo.walkThreads,
         registry, constituents, lookup);
   }
 
+  /**
+   * Quickly estimates the number of core records of an archive by counting the lines of its core data files.
+   *
+   * @return the estimated number of records or -1 if the archive cannot be read
+   */
+  @VisibleForTesting
+  static long countRecords(File dwca) {
+    try {
+      ArchiveFile core = DwcFiles.fromLocation(dwca.toPath()).getCore();
+      long lines = 0;
+      final byte[] buffer = new byte[64 * 1024];
+      for (File f : core.getLocationFiles()) {
+        try (InputStream in = new FileInputStream(f)) {
+          int read;
+          byte last = '\n';
+          while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+              if (buffer[i] == '\n') {
+                lines++;
+              }
+            }
+            last = buffer[read - 1];
+          }
+          // last line without newline
+          if (last != '\n') {
+            lines++;
+          }
+        }
+      }
+      if (core.getIgnoreHeaderLines() != null) {
+        lines -= core.getIgnoreHeaderLines();
+      }
+      long records = Math.max(0, lines);
+      LOG.info("Estimated {} core records in archive {}", records, dwca);
+      return records;
+
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to count records in archive {}", dwca, e);
+      return -1;
+    }
+  }
+
   public static Normalizer create(UUID datasetKey, UsageDao dao, File dwca, IdLookup lookup, int batchSize) {
-    return new Normalizer(datasetKey, dao, dwca, batchSize, new MetricRegistry(), Maps.newHashMap(), lookup);
+    return new Normalizer(datasetKey, dao, dwca, batchSize, 1, 1, new MetricRegistry(), Maps.newHashMap(), lookup);
   }
 
   /**
@@ -163,7 +230,10 @@ public class Normalizer extends ImportDb implements Runnable {
       // match to nub and build metrics
       buildMetricsAndMatchBackbone();
       LOG.info("Normalization succeeded");
+      LOG.info("Normalization stages: {}", stages);
+      dao.logStats();
     } finally {
+      stopHeapSampler();
       if (closeDao) {
         dao.close();
         LOG.info("Normalizer database shut down");
@@ -171,19 +241,63 @@ public class Normalizer extends ImportDb implements Runnable {
     }
   }
 
+  /**
+   * @return the timing and resource statistics of all normalization stages run so far
+   */
+  public List<StageStats> getStageStats() {
+    return ImmutableList.copyOf(stages);
+  }
+
+  /**
+   * Starts the timer and heap sampling for a new stage.
+   */
+  private void startStage() {
+    stopHeapSampler();
+    heapSampler = new HeapSampler();
+    stageStart = System.currentTimeMillis();
+  }
+
+  /**
+   * Records the statistics of the stage started last and pushes them to the metrics registry.
+   * The heap value is the highest used heap of the whole process sampled during the stage,
+   * so it includes memory of other jobs running concurrently in the same JVM.
+   *
+   * @param records number of records or nodes processed by the stage
+   */
+  private void endStage(String name, long records) {
+    final long millis = System.currentTimeMillis() - stageStart;
+    final long peakHeap = heapSampler == null ? 0 : heapSampler.getMaxUsed();
+    stopHeapSampler();
+    StageStats s = new StageStats(name, millis, records, peakHeap, dao.allocatedStoreSize());
+    stages.add(s);
+    registry.timer(Metrics.NORMALIZER_STAGE_PREFIX + name).update(millis, TimeUnit.MILLISECONDS);
+    registry.histogram(Metrics.NORMALIZER_STAGE_PREFIX + name + ".heap").update(peakHeap);
+    registry.histogram(Metrics.NORMALIZER_STAGE_PREFIX + name + ".storeAllocated").update(s.getStoreAllocated());
+    LOG.info("Stage {} completed: {}", name, s);
+  }
+
+  private void stopHeapSampler() {
+    if (heapSampler != null) {
+      heapSampler.close();
+      heapSampler = null;
+    }
+  }
+
   public NormalizerStats getStats() {
     return metricsHandler.getStats(meta == null ? 0 : meta.getIgnored(), cycles);
   }
 
   private void batchInsertData() throws NormalizationFailedException {
+    startStage();
     try {
-      NeoInserter inserter = dao.createBatchInserter(batchSize);
+      NeoInserter inserter = dao.createBatchInserter(batchSize, insertThreads);
       try {
         meta = inserter.insert(dwca, constituents);
       } finally {
         // closing the batch inserter open the neo db again for regular access via the DAO
         inserter.close();
       }
+      endStage("batchInsertData", meta.getRecords());
     } catch (NotUniqueRuntimeException e) {
       throw new NormalizationFailedException(e.getProperty() + " values not unique: " + e.getKey(), e);
 
@@ -201,8 +315,10 @@ public class Normalizer extends ImportDb implements Runnable {
    */
   private void applyDenormedClassification() {
     LOG.info("Start processing higher denormalized classification ...");
+    startStage();
     if (!meta.isDenormedClassificationMapped()) {
       LOG.info("No higher classification mapped");
+      endStage("applyDenormedClassification", 0);
       return;
     }
 
@@ -225,6 +341,7 @@ public class Normalizer extends ImportDb implements Runnable {
       tx.close();
     }
     LOG.info("Classification processing completed, {} nodes processed", counter);
+    endStage("applyDenormedClassification", counter);
   }
 
   private void applyClassification(Node n) {
@@ -347,127 +464,273 @@ public class Normalizer extends ImportDb implements Runnable {
    * <li>Break eternal classification loops at lowest rank</li>
    * </ul>
    */
-  private void cleanupRelations() {
+  private void cleanupRelations() throws NormalizationFailedException {
     LOG.info("Cleanup relations ...");
+    startStage();
+    // collect node ids upfront so we can process them in batched transactions
+    final LongArrayList synonymOfNodes = new LongArrayList();
+    final LongArrayList synonymNodes = new LongArrayList();
+    try (Transaction tx = dao.getNeo().beginTx()) {
+      for (Node n : dao.allNodes()) {
+        if (n.hasRelationship(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+          synonymOfNodes.add(n.getId());
+        }
+        if (n.hasLabel(Labels.SYNONYM)) {
+          synonymNodes.add(n.getId());
+        }
+      }
+    }
+    LOG.info("Cleanup relations of {} synonyms in batches of {}", synonymOfNodes.size(), batchSize);
+
     // cut synonym cycles
-    int counter = 0;
-    while (true) {
-      try (Transaction tx = dao.getNeo().beginTx()) {
-        Result result = dao.getNeo().execute("MATCH (s:TAXON)-[sr:SYNONYM_OF]->(x)-[:SYNONYM_OF*]->(s) RETURN sr LIMIT 1");
-        if (result.hasNext()) {
-          Relationship sr = (Relationship) result.next().get("sr");
+    inBatches(synonymOfNodes, this::cutSynonymCycle);
+    // relink synonym chain to single accepted
+    final int chainedSynonyms = inBatches(synonymOfNodes, this::relinkSynonymChain);
 
-          Node syn = sr.getStartNode();
+    // removes parent relations for synonyms
+    // if synonyms are parents of other taxa relinks relationship to the accepted
+    // presence of both confuses subsequent imports, see http://dev.gbif.org/issues/browse/POR-2755
+    final SynonymParentCleanup parentCleanup = new SynonymParentCleanup();
+    inBatches(synonymNodes, parentCleanup);
 
-          NameUsage su = dao.readUsage(syn, false);
-          su.addIssue(NameUsageIssue.CHAINED_SYNOYM);
-          su.addIssue(NameUsageIssue.PARENT_CYCLE);
-          dao.store(syn.getId(), su, false);
+    LOG.info("Relations cleaned up, {} synonym cycles detected, {} chained synonyms relinked", cycles.size(), chainedSynonyms);
+    LOG.info("Synonym relations cleaned up. "
+            + "{} childOf relations deleted, {} childOf rels relinked to accepted,"
+            + "{} parentOf relations deleted, {} parentOf rels moved from synonym to accepted",
+        parentCleanup.childOfRelDeleted, parentCleanup.childOfRelRelinkedToAccepted, parentCleanup.parentOfRelDeleted, parentCleanup.parentOfRelRelinked);
+    endStage("cleanupRelations", synonymOfNodes.size());
+  }
 
-          String taxonID = (String) syn.getProperty(NeoProperties.TAXON_ID, null);
-          cycles.add(taxonID);
+  /**
+   * Processes nodes given by their id in transactions committed every batchSize nodes.
+   * Nodes deleted in the meantime are skipped.
+   *
+   * @param processor returns the number of changes done for a node
+   * @return the total number of changes
+   */
+  private int inBatches(LongList nodeIds, ToIntFunction<Node> processor) throws NormalizationFailedException {
+    int changes = 0;
+    int counter = 0;
+    Transaction tx = dao.getNeo().beginTx();
+    try {
+      LongIterator iter = nodeIds.iterator();
+      while (iter.hasNext()) {
+        Node n;
+        try {
+          n = dao.getNeo().getNodeById(iter.nextLong());
+        } catch (NotFoundException e) {
+          // node was deleted
+          n = null;
+        }
+        if (n != null) {
+          changes += processor.applyAsInt(n);
+        }
+        if (++counter % batchSize == 0) {
+          tx = renewTx(tx);
+          LOG.debug("Cleaned up relations of {} nodes with {} changes so far", counter, changes);
+          checkInterrupted();
+        }
+      }
+      tx.success();
+    } finally {
+      tx.close();
+    }
+    return changes;
+  }
 
-          NameUsageNode acc = create(Origin.MISSING_ACCEPTED, NormalizerConstants.PLACEHOLDER_NAME, null, TaxonomicStatus.DOUBTFUL, true, null, "Synonym cycle cut for taxonID " + taxonID);
-          createSynonymRel(syn, acc.node, true);
-          sr.delete();
-          tx.success();
+  /**
+   * Cuts a synonym cycle going through the given synonym by linking it to a new placeholder accepted taxon instead.
+   *
+   * @return 1 if a cycle was cut, 0 otherwise
+   */
+  private int cutSynonymCycle(Node syn) {
+    for (Relationship sr : syn.getRelationships(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+      if (followsSynonymsTo(sr.getEndNode(), syn)) {
+        NameUsage su = dao.readUsage(syn, false);
+        su.addIssue(NameUsageIssue.CHAINED_SYNOYM);
+        su.addIssue(NameUsageIssue.PARENT_CYCLE);
+        dao.store(syn.getId(), su, false);
+
+        String taxonID = (String) syn.getProperty(NeoProperties.TAXON_ID, null);
+        cycles.add(taxonID);
+
+        NameUsageNode acc = create(Origin.MISSING_ACCEPTED, NormalizerConstants.PLACEHOLDER_NAME, null, TaxonomicStatus.DOUBTFUL, true, null, "Synonym cycle cut for taxonID " + taxonID);
+        createSynonymRel(syn, acc.node, true);
+        sr.delete();
+        LOG.debug("Synonym cycle cut for taxonID {}", taxonID);
+        return 1;
+      }
+    }
+    return 0;
+  }
 
-          if (counter++ % 100 == 0) {
-            LOG.debug("Synonym cycles cut so far: {}", counter);
-          }
+  /**
+   * @return true if the target node can be reached from start following outgoing synonym_of relations
+   */
+  private static boolean followsSynonymsTo(Node start, Node target) {
+    Set<Long> visited = new HashSet<>();
+    Deque<Node> stack = new ArrayDeque<>();
+    stack.push(start);
+    while (!stack.isEmpty()) {
+      Node n = stack.pop();
+      if (n.equals(target)) {
+        return true;
+      }
+      if (visited.add(n.getId())) {
+        for (Relationship r : n.getRelationships(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+          stack.push(r.getEndNode());
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Relinks a synonym of a synonym to the final accepted taxa at the end of the synonym chain.
+   * Pro parte synonyms in the chain can have several accepted names, so all their synonym relations are followed.
+   * The synonym keeps a single synonym_of relation to the primary accepted taxon,
+   * any further accepted taxa are linked with pro parte synonym relations.
+   *
+   * @return number of relinked synonym relations
+   */
+  private int relinkSynonymChain(Node syn) {
+    int relinked = 0;
+    for (Relationship sr : Lists.newArrayList(syn.getRelationships(RelType.SYNONYM_OF, Direction.OUTGOING))) {
+      Node target = sr.getEndNode();
+      if (target.hasRelationship(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+        Set<Node> accepted = acceptedEndsOfChain(target);
+        accepted.remove(syn);
+        if (accepted.isEmpty()) {
+          LOG.warn("Synonym chain of node {} ends in a cycle", syn.getId());
         } else {
-          break;
+          addIssueRemark(syn, null, NameUsageIssue.CHAINED_SYNOYM);
+          sr.delete();
+          for (Node acc : accepted) {
+            if (!syn.hasRelationship(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+              createSynonymRel(syn, acc, false);
+            } else if (!isRelated(syn, acc, RelType.SYNONYM_OF) && !isRelated(syn, acc, RelType.PROPARTE_SYNONYM_OF)) {
+              syn.createRelationshipTo(acc, RelType.PROPARTE_SYNONYM_OF);
+            }
+          }
+          relinked++;
         }
       }
     }
+    return relinked;
+  }
 
-    // relink synonym chain to single accepted
-    int chainedSynonyms = 0;
-    while (true) {
-      try (Transaction tx = dao.getNeo().beginTx()) {
-        Result result = dao.getNeo().execute("MATCH (s:TAXON)-[sr:SYNONYM_OF*]->(x)-[:SYNONYM_OF]->(t:TAXON) " +
-            "WHERE NOT (t)-[:SYNONYM_OF]->() " +
-            "RETURN sr, t LIMIT 1");
-        if (result.hasNext()) {
-          Map<String, Object> row = result.next();
-          Node acc = (Node) row.get("t");
-          for (Relationship sr : (Collection<Relationship>) row.get("sr")) {
-            Node syn = sr.getStartNode();
-            addIssueRemark(syn, null, NameUsageIssue.CHAINED_SYNOYM);
-            createSynonymRel(syn, acc, false);
-            sr.delete();
-            chainedSynonyms++;
+  /**
+   * Follows synonym_of and pro parte synonym relations starting with the synonym_of ones,
+   * so the first node returned is the end of the primary synonym chain.
+   *
+   * @return all nodes without outgoing synonym_of relations that can be reached from start
+   */
+  private static Set<Node> acceptedEndsOfChain(Node start) {
+    Set<Node> accepted = new LinkedHashSet<>();
+    Set<Long> visited = new HashSet<>();
+    Deque<Node> stack = new ArrayDeque<>();
+    stack.push(start);
+    while (!stack.isEmpty()) {
+      Node n = stack.pop();
+      if (visited.add(n.getId())) {
+        if (n.hasRelationship(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+          // pushed last, popped first
+          for (Relationship r : n.getRelationships(RelType.PROPARTE_SYNONYM_OF, Direction.OUTGOING)) {
+            stack.push(r.getEndNode());
           }
-          tx.success();
-          if (counter++ % 100 == 0) {
-            LOG.debug("Synonym chain cut so far: {}", counter);
+          for (Relationship r : n.getRelationships(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+            stack.push(r.getEndNode());
           }
-
         } else {
-          break;
+          accepted.add(n);
         }
       }
     }
+    return accepted;
+  }
 
+  private static boolean isRelated(Node start, Node end, RelType type) {
+    for (Relationship r : start.getRelationships(type, Direction.OUTGOING)) {
+      if (r.getEndNode().equals(end)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    // removes parent relations for synonyms
-    // if synonyms are parents of other taxa relinks relationship to the accepted
-    // presence of both confuses subsequent imports, see http://dev.gbif.org/issues/browse/POR-2755
-    int parentOfRelDeleted = 0;
-    int parentOfRelRelinked = 0;
-    int childOfRelDeleted = 0;
-    int childOfRelRelinkedToAccepted = 0;
-    try (Transaction tx = dao.getNeo().beginTx()) {
-      for (Node syn : Iterators.loop(dao.allSynonyms())) {
-        Node accepted = syn.getSingleRelationship(RelType.SYNONYM_OF, Direction.OUTGOING).getEndNode();
-        LazyUsage synU = new LazyUsage(syn);
-        LazyUsage accU = new LazyUsage(accepted);
-        // if the synonym is a parent of another child taxon - relink accepted as parent of child
-        for (Relationship rel : syn.getRelationships(RelType.PARENT_OF, Direction.OUTGOING)) {
-          Node child = rel.getOtherNode(syn);
-          if (child.equals(accepted)) {
-            // accepted is also the parent. Delete parent rel in this case
-            rel.delete();
-            parentOfRelDeleted++;
-          } else {
-            rel.delete();
-            accepted.createRelationshipTo(child, RelType.PARENT_OF);
-            parentOfRelRelinked++;
-            addIssueRemark(child, "Parent relation taken from synonym " + synU.scientificName());
-          }
+  /**
+   * @return the accepted node of the oldest synonym_of relation or null if there is none
+   */
+  @Nullable
+  private static Node primaryAccepted(Node syn) {
+    Relationship primary = null;
+    for (Relationship r : syn.getRelationships(RelType.SYNONYM_OF, Direction.OUTGOING)) {
+      if (primary == null || r.getId() < primary.getId()) {
+        primary = r;
+      }
+    }
+    return primary == null ? null : primary.getEndNode();
+  }
+
+  /**
+   * Removes parent relations of synonyms, relinking them to the accepted taxon if needed.
+   */
+  private class SynonymParentCleanup implements ToIntFunction<Node> {
+    private int parentOfRelDeleted = 0;
+    private int parentOfRelRelinked = 0;
+    private int childOfRelDeleted = 0;
+    private int childOfRelRelinkedToAccepted = 0;
+
+    @Override
+    public int applyAsInt(Node syn) {
+      final int before = parentOfRelDeleted + parentOfRelRelinked + childOfRelDeleted + childOfRelRelinkedToAccepted;
+      // pro parte synonyms keep their parent relations with the primary accepted taxon only
+      final Node accepted = primaryAccepted(syn);
+      if (accepted == null) {
+        LOG.warn("Synonym node {} without accepted taxon", syn.getId());
+        return 0;
+      }
+      LazyUsage synU = new LazyUsage(syn);
+      LazyUsage accU = new LazyUsage(accepted);
+      // if the synonym is a parent of another child taxon - relink accepted as parent of child
+      for (Relationship rel : syn.getRelationships(RelType.PARENT_OF, Direction.OUTGOING)) {
+        Node child = rel.getOtherNode(syn);
+        if (child.equals(accepted)) {
+          // accepted is also the parent. Delete parent rel in this case
+          rel.delete();
+          parentOfRelDeleted++;
+        } else {
+          rel.delete();
+          accepted.createRelationshipTo(child, RelType.PARENT_OF);
+          parentOfRelRelinked++;
+          addIssueRemark(child, "Parent relation taken from synonym " + synU.scientificName());
         }
-        // remove parent rel for synonyms
-        for (Relationship rel : syn.getRelationships(RelType.PARENT_OF, Direction.INCOMING)) {
-          // before we delete the relation make sure the accepted does have a parent rel or is ROOT
-          if (accepted.hasRelationship(RelType.PARENT_OF, Direction.INCOMING)) {
-            // delete
-            childOfRelDeleted++;
-            rel.delete();
-          } else {
-            Node parent = rel.getOtherNode(syn);
-            // relink if parent is not the accepted and parent rank is higher than accepted or null
-            if (!parent.equals(accepted)) {
-              NameUsage parentU = dao.readUsage(parent, false);
-              if (parentU.getRank() == null ||
-                  (accU.getUsage().getRank() != null && parentU.getRank().higherThan(accU.getUsage().getRank()))) {
-                LOG.debug("Relink parent rel of synonym {}", synU.scientificName());
-                childOfRelRelinkedToAccepted++;
-                parent.createRelationshipTo(accepted, RelType.PARENT_OF);
-                addIssueRemark(accepted, "Parent relation taken from synonym " + synU.scientificName());
-              }
+      }
+      // remove parent rel for synonyms
+      for (Relationship rel : syn.getRelationships(RelType.PARENT_OF, Direction.INCOMING)) {
+        // before we delete the relation make sure the accepted does have a parent rel or is ROOT
+        if (accepted.hasRelationship(RelType.PARENT_OF, Direction.INCOMING)) {
+          // delete
+          childOfRelDeleted++;
+          rel.delete();
+        } else {
+          Node parent = rel.getOtherNode(syn);
+          // relink if parent is not the accepted and parent rank is higher than accepted or null
+          if (!parent.equals(accepted)) {
+            NameUsage parentU = dao.readUsage(parent, false);
+            if (parentU.getRank() == null ||
+                (accU.getUsage().getRank() != null && parentU.getRank().higherThan(accU.getUsage().getRank()))) {
+              LOG.debug("Relink parent rel of synonym {}", synU.scientificName());
+              childOfRelRelinkedToAccepted++;
+              parent.createRelationshipTo(accepted, RelType.PARENT_OF);
+              addIssueRemark(accepted, "Parent relation taken from synonym " + synU.scientificName());
             }
-            rel.delete();
           }
+          rel.delete();
         }
       }
-      tx.success();
+      return parentOfRelDeleted + parentOfRelRelinked + childOfRelDeleted + childOfRelRelinkedToAccepted - before;
     }
-
-    LOG.info("Relations cleaned up, {} synonym cycles detected, {} chained synonyms relinked", cycles.size(), chainedSynonyms);
-    LOG.info("Synonym relations cleaned up. "
-            + "{} childOf relations deleted, {} childOf rels relinked to accepted,"
-            + "{} parentOf relations deleted, {} parentOf rels moved from synonym to accepted",
-        childOfRelDeleted, childOfRelRelinkedToAccepted, parentOfRelDeleted, parentOfRelRelinked);
   }
 
   /**
@@ -519,12 +782,16 @@ public class Normalizer extends ImportDb implements Runnable {
   private void buildMetricsAndMatchBackbone() throws NormalizationFailedException {
     checkInterrupted();
     LOG.info("Walk all accepted taxa, build metrics and match to the GBIF backbone");
-    metricsHandler = new UsageMetricsHandler(dao);
-    matchHandler = new NubMatchHandler(lookup, dao);
+    startStage();
+    // usages are read once per walk and shared by both handlers. The cache must be the last handler to evict entries
+    UsageCache cache = new UsageCache(dao);
+    metricsHandler = new UsageMetricsHandler(dao, cache);
+    matchHandler = new NubMatchHandler(lookup, dao, cache);
     final long before = metricsMeter.getCount();
-    TreeWalker.walkAcceptedTree(dao.getNeo(), null, null, metricsMeter, metricsHandler, matchHandler);
+    TreeWalker.walkAcceptedTree(dao.getNeo(), walkThreads, CHUNK_MIN_SIZE, CHUNK_SIZE, metricsMeter, metricsHandler, matchHandler, cache);
     final long after = metricsMeter.getCount();
     LOG.info("Walked all {} accepted taxa and built metrics", after - before);
+    endStage("buildMetricsAndMatchBackbone", after - before);
   }
 
   /**
@@ -580,33 +847,49 @@ public class Normalizer extends ImportDb implements Runnable {
 
   /**
    * Creates implicit nodes and sets up relations between taxa.
+   * The transaction is committed in batches of batchSize nodes.
    */
   private void normalize() throws NormalizationFailedException {
-    LOG.info("Start processing explicit relations ...");
+    LOG.info("Start processing explicit relations in batches of {} ...", batchSize);
+    startStage();
     int counter = 0;
+    long lastId = -1;
+    boolean rescan = true;
 
     Transaction tx = dao.getNeo().beginTx();
     try {
-      // This iterates over ALL NODES, even the ones created within this loop which trigger a transaction commit!
+      // This iterates over ALL NODES, even the ones created within this loop once their transaction batch got committed!
       // iteration is by node id starting from node id 1 to highest.
-      // if nodes are created within this loop they receive the highest node id and thus are added to the end of this loop
-      for (Node n : dao.getNeo().getAllNodes()) {
-        setupRelation(n);
-        // inc counters & commit batch
-        counter++;
-        relationMeter.mark();
-        tx = renewTx(tx);
-        if (counter % 10000 == 0) {
-          LOG.debug("Processed relations for {} nodes", counter);
-          // interrupted? then lets get out of here
-          checkInterrupted();
+      // if nodes are created within this loop they receive the highest node id and thus are added to the end of this loop.
+      // Nodes created in the last, uncommitted batch are missed by the iteration, so we rescan for new ids
+      // until no more nodes appear
+      while (rescan) {
+        rescan = false;
+        for (Node n : dao.getNeo().getAllNodes()) {
+          if (n.getId() <= lastId) {
+            continue;
+          }
+          setupRelation(n);
+          lastId = n.getId();
+          rescan = true;
+          // inc counters & commit batch
+          counter++;
+          relationMeter.mark();
+          if (counter % batchSize == 0) {
+            tx = renewTx(tx);
+            LOG.debug("Processed relations for {} nodes at {} nodes/s", counter, (int) relationMeter.getOneMinuteRate());
+            // interrupted? then lets get out of here
+            checkInterrupted();
+          }
         }
+        tx = renewTx(tx);
       }
 
     } finally {
       tx.success();
       tx.close();
     }
+    endStage("normalize", counter);
 
     // now process the denormalized classifications
     applyDenormedClassification();
@@ -614,7 +897,7 @@ public class Normalizer extends ImportDb implements Runnable {
     // finally resolve cycles and other bad relations
     cleanupRelations();
 
-    LOG.info("Relation setup completed, {} nodes processed. Setup rate: {}", counter, relationMeter.getMeanRate());
+    LOG.info("Relation setup completed, {} nodes processed. Setup rate: {} nodes/s", counter, relationMeter.getMeanRate());
   }
 
   private NameUsage setupRelation(Node n) {
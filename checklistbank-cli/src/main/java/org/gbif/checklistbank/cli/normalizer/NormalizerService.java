@@ -10,7 +10,7 @@ import org.gbif.checklistbank.cli.common.ZookeeperUtils;
 import org.gbif.common.messaging.api.messages.ChecklistNormalizedMessage;
 import org.gbif.common.messaging.api.messages.DwcaMetasyncFinishedMessage;
 import org.gbif.nub.lookup.straight.IdLookup;
-import org.gbif.nub.lookup.straight.IdLookupImpl;
+import org.gbif.nub.lookup.straight.IdLookupOffHeap;
 
 import java.io.IOException;
 import java.util.UUID;
@@ -55,7 +55,7 @@ public class NormalizerService extends RabbitDatasetService<DwcaMetasyncFinished
   @Override
   protected void startUpBeforeListening() throws Exception {
     // loads all nub usages directly from clb postgres - this can take a few minutes
-    lookup = IdLookupImpl.temp().load(cfg.clb, false);
+    lookup = IdLookupOffHeap.backbone(cfg.clb, false);
   }
 
   @Override
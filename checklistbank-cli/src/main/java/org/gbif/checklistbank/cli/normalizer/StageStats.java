@@ -0,0 +1,105 @@
+package org.gbif.checklistbank.cli.normalizer;
+
+import com.google.common.base.Objects;
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Timing and resource statistics of a single normalizer stage.
+ */
+public class StageStats {
+
+  private final String stage;
+  private final long millis;
+  private final long records;
+  private final long peakHeap;
+  private final long storeAllocated;
+
+  @JsonCreator
+  public StageStats(@JsonProperty("stage") String stage, @JsonProperty("millis") long millis,
+                    @JsonProperty("records") long records, @JsonProperty("peakHeap") long peakHeap,
+                    @JsonProperty("storeAllocated") long storeAllocated) {
+    this.stage = stage;
+    this.millis = millis;
+    this.records = records;
+    this.peakHeap = peakHeap;
+    this.storeAllocated = storeAllocated;
+  }
+
+  /**
+   * @return the name of the stage
+   */
+  public String getStage() {
+    return stage;
+  }
+
+  /**
+   * @return wall time of the stage in milliseconds
+   */
+  public long getMillis() {
+    return millis;
+  }
+
+  /**
+   * @return number of records or nodes processed by the stage
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  /**
+   * @return processed records per second
+   */
+  @JsonIgnore
+  public long getRate() {
+    return millis > 0 ? records * 1000 / millis : records;
+  }
+
+  /**
+   * @return highest used heap sampled during the stage in bytes.
+   * This is a process wide value and includes other jobs running concurrently in the same JVM
+   */
+  public long getPeakHeap() {
+    return peakHeap;
+  }
+
+  /**
+   * @return allocated size of the neo4j and kvp store files at the end of the stage in bytes.
+   * This includes the space preallocated for the kvp store and is not the size of the data stored
+   */
+  public long getStoreAllocated() {
+    return storeAllocated;
+  }
+
+  @Override
+  public String toString() {
+    return stage + "{" + millis + "ms" +
+           ", records=" + records +
+           ", rate=" + getRate() + "/s" +
+           ", peakHeap=" + peakHeap / (1024 * 1024) + "MB" +
+           ", storeAllocated=" + storeAllocated / (1024 * 1024) + "MB" +
+           '}';
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(stage, millis, records, peakHeap, storeAllocated);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    final StageStats other = (StageStats) obj;
+    return Objects.equal(this.stage, other.stage)
+           && Objects.equal(this.millis, other.millis)
+           && Objects.equal(this.records, other.records)
+           && Objects.equal(this.peakHeap, other.peakHeap)
+           && Objects.equal(this.storeAllocated, other.storeAllocated);
+  }
+}
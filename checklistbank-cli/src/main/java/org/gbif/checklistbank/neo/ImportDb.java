@@ -43,11 +43,7 @@ public class ImportDb {
    * @return the single matching node with the taxonID or null
    */
   protected Node nodeByTaxonId(String taxonID) {
-//      try {
-    return Iterators.singleOrNull(dao.getNeo().findNodes(Labels.TAXON, NeoProperties.TAXON_ID, taxonID));
-//      } catch (NoSuchElementException e) {
-//          throw new NotUniqueException(taxonID, "TaxonID not unique: " + taxonID);
-//      }
+    return dao.nodeByTaxonId(taxonID);
   }
 
   /**
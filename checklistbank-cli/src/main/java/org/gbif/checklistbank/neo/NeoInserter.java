@@ -36,8 +36,7 @@ import org.gbif.dwc.record.Record;
 import org.gbif.dwc.record.StarRecord;
 import org.gbif.nameparser.NameParserGbifV1;
 import org.gbif.utils.ObjectUtils;
-import org.neo4j.kernel.api.exceptions.index.IndexEntryConflictException;
-import org.neo4j.kernel.lifecycle.LifecycleException;
+import org.gbif.utils.concurrent.NamedThreadFactory;
 import org.neo4j.unsafe.batchinsert.BatchInserter;
 import org.neo4j.unsafe.batchinsert.BatchInserters;
 import org.slf4j.Logger;
@@ -48,18 +47,38 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import static org.gbif.dwc.terms.GbifTerm.datasetKey;
 
 /**
+ * Batch inserts all records of a dwc archive into a new neo4j db and the usage dao kvp store.
  *
+ * With more than one thread configured the insert runs as a pipeline:
+ * a reader thread iterates the archive and copies each star record into a verbatim usage,
+ * a pool of workers parses names and interprets usages and extensions
+ * and the calling thread is the single writer that creates the neo4j nodes and stores the usages in the dao.
+ * Records are written in archive order so node ids are the same as with a single thread.
  */
 public class NeoInserter implements AutoCloseable {
 
   private static final Logger LOG = LoggerFactory.getLogger(NeoInserter.class);
   private static final Pattern NULL_PATTERN = Pattern.compile("^\\s*(\\\\N|\\\\?NULL)\\s*$");
   private static final TermFactory TF = TermFactory.instance();
+  /**
+   * Number of records per worker thread that can be read ahead of the writer.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 1000;
+  private static final Future<InsertRecord> END_OF_ARCHIVE = CompletableFuture.completedFuture(null);
 
   private Archive arch;
   private Map<String, UUID> constituents;
@@ -71,17 +90,20 @@ public class NeoInserter implements AutoCloseable {
   private ExtensionInterpreter extensionInterpreter = new ExtensionInterpreter();
   private final BatchInserter inserter;
   private final int batchSize;
+  private final int threads;
   private final Meter insertMeter;
   private final Map<Term, Extension> extensions;
   private final UsageDao dao;
 
-  private NeoInserter(UsageDao dao, File storeDir, int batchSize, @Nullable Meter insertMeter) throws IOException {
+  private NeoInserter(UsageDao dao, File storeDir, int batchSize, int threads, @Nullable Meter insertMeter) throws IOException {
     Preconditions.checkNotNull(dao, "DAO required");
+    Preconditions.checkArgument(threads > 0, "At least one thread required");
     LOG.info("Creating new neo db at {}", storeDir.getAbsolutePath());
     this.dao = dao;
     initNeoDir(storeDir);
     inserter = BatchInserters.inserter(storeDir);
     this.batchSize = batchSize;
+    this.threads = threads;
     this.insertMeter = insertMeter;
     extensions = Maps.newHashMap();
     for (Extension e : Extension.values()) {
@@ -90,14 +112,25 @@ public class NeoInserter implements AutoCloseable {
   }
 
   public static NeoInserter create(UsageDao dao, File storeDir, int batchSize, @Nullable MetricRegistry registry) throws IOException {
-    return new NeoInserter(dao, storeDir, batchSize, registry == null ? null : registry.meter(Metrics.INSERT_METER));
+    return create(dao, storeDir, batchSize, 1, registry);
+  }
+
+  /**
+   * @param threads number of worker threads used to interpret records. If larger than 1 a parallel pipeline is used
+   */
+  public static NeoInserter create(UsageDao dao, File storeDir, int batchSize, int threads, @Nullable MetricRegistry registry) throws IOException {
+    return new NeoInserter(dao, storeDir, batchSize, threads, registry == null ? null : registry.meter(Metrics.INSERT_METER));
   }
 
   public InsertMetadata insert(File dwca, Map<String, UUID> constituents) throws NormalizationFailedException {
     this.constituents = constituents;
     openArchive(dwca);
-    for (StarRecord star : arch) {
-      insertStarRecord(star);
+    if (threads > 1) {
+      insertParallel();
+    } else {
+      for (StarRecord star : arch) {
+        insertStarRecord(star);
+      }
     }
     LOG.info("Data insert completed, {} nodes created", meta.getRecords());
     if (insertMeter != null) {
@@ -106,69 +139,186 @@ public class NeoInserter implements AutoCloseable {
     return meta;
   }
 
-  @VisibleForTesting
-  protected void insertStarRecord(StarRecord star) throws NormalizationFailedException {
-
+  /**
+   * Reads the archive in a separate thread, interprets records with a pool of workers
+   * and writes the interpreted records in their original order from the calling thread.
+   */
+  private void insertParallel() throws NormalizationFailedException {
+    LOG.info("Insert records with {} interpretation threads", threads);
+    final BlockingQueue<Future<InsertRecord>> queue = new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD);
+    // set once the writer stops consuming the queue, successfully or not
+    final AtomicBoolean writerDone = new AtomicBoolean(false);
+    final ExecutorService workers = Executors.newFixedThreadPool(threads, new NamedThreadFactory("neo-inserter-worker"));
+    final ExecutorService reader = Executors.newSingleThreadExecutor(new NamedThreadFactory("neo-inserter-reader"));
     try {
-      VerbatimNameUsage v = new VerbatimNameUsage();
-
-      // set core props
-      Record core = star.core();
-      for (Term t : core.terms()) {
-        String val = clean(core.value(t));
-        if (val != null) {
-          v.setCoreField(t, val);
-        }
-      }
-      // make sure this is last to override already put taxonID keys
-      v.setCoreField(DwcTerm.taxonID, taxonID(core));
-      // readUsage extensions data
-      for (Map.Entry<Term, Extension> ext : extensions.entrySet()) {
-        if (star.hasExtension(ext.getKey())) {
-          v.getExtensions().put(ext.getValue(), Lists.<Map<Term, String>>newArrayList());
-          for (Record eRec : star.extension(ext.getKey())) {
-            Map<Term, String> data = Maps.newHashMap();
-            for (Term t : eRec.terms()) {
-              String val = clean(eRec.value(t));
-              if (val != null) {
-                data.put(t, val);
-              }
+      Future<?> reading = reader.submit(() -> {
+        try {
+          for (StarRecord star : arch) {
+            final InsertRecord rec = read(star);
+            if (!enqueue(queue, workers.submit(() -> interpret(rec)), writerDone)) {
+              break;
             }
-            v.getExtensions().get(ext.getValue()).add(data);
           }
+        } finally {
+          enqueue(queue, END_OF_ARCHIVE, writerDone);
+        }
+        return null;
+      });
+
+      try {
+        Future<InsertRecord> next;
+        while ((next = queue.take()) != END_OF_ARCHIVE) {
+          write(next.get());
         }
+      } finally {
+        writerDone.set(true);
       }
-      // convert into a NameUsage interpreting all enums and other needed types
-      // creates a ParsedName from various verbatim options
-      ParsedNameUsageCompound pnu = buildUsage(v);
-      final NameUsage u = pnu.usage;
-      UsageExtensions ext = extensionInterpreter.interpret(u, v);
-
-      // and batch insert key neo properties used during normalization
-      Map<String, Object> props = dao.neoProperties(core.id(), u, v);
-      long nodeId = inserter.createNode(props, Labels.TAXON, u.isSynonym() ? Labels.SYNONYM : Labels.TAXON);
-      // store verbatim instance
-      dao.store(nodeId, v);
-      dao.store(nodeId, u, false);
-      dao.store(nodeId, pnu.parsedName);
-      dao.store(nodeId, ext);
-
-      meta.incRecords();
-      meta.incRank(u.getRank());
-      if (insertMeter != null) {
-        insertMeter.mark();
+      // surface reader errors
+      reading.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("NeoInserter interrupted, exit {} early with incomplete parsing", datasetKey);
+      throw new NormalizationFailedException("NeoInserter interrupted", e);
+
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
-      if (meta.getRecords() % (batchSize * 10) == 0) {
-        LOG.info("Inserts done into neo4j: {}", meta.getRecords());
-        if (Thread.interrupted()) {
-          LOG.warn("NeoInserter interrupted, exit {} early with incomplete parsing", datasetKey);
-          throw new NormalizationFailedException("NeoInserter interrupted");
+      throw new NormalizationFailedException("Failed to insert records", e.getCause());
+
+    } finally {
+      reader.shutdownNow();
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Puts a record into the bounded queue, waiting for space only as long as the writer still consumes it.
+   * An interrupt is ignored as the writer flag decides when to give up.
+   *
+   * @return false if the writer is done and the record was not queued
+   */
+  private static boolean enqueue(BlockingQueue<Future<InsertRecord>> queue, Future<InsertRecord> rec, AtomicBoolean writerDone) {
+    while (!writerDone.get()) {
+      try {
+        if (queue.offer(rec, 100, TimeUnit.MILLISECONDS)) {
+          return true;
         }
+      } catch (InterruptedException e) {
+        // check the writer flag again
       }
+    }
+    return false;
+  }
+
+  @VisibleForTesting
+  protected void insertStarRecord(StarRecord star) throws NormalizationFailedException {
+    write(interpret(read(star)));
+  }
+
+  /**
+   * A single archive record passing through the insert pipeline.
+   */
+  private static class InsertRecord {
+    private final String id;
+    private final VerbatimNameUsage v;
+    private ParsedNameUsageCompound pnu;
+    private UsageExtensions ext;
+    private IgnoreNameUsageException ignored;
+
+    private InsertRecord(String id, VerbatimNameUsage v) {
+      this.id = id;
+      this.v = v;
+    }
+  }
 
+  /**
+   * Copies all values of a star record into a new verbatim usage.
+   * Star records might be reused by the archive iterator, so this needs to happen before handing over to other threads.
+   */
+  private InsertRecord read(StarRecord star) {
+    VerbatimNameUsage v = new VerbatimNameUsage();
+
+    // set core props
+    Record core = star.core();
+    for (Term t : core.terms()) {
+      String val = clean(core.value(t));
+      if (val != null) {
+        v.setCoreField(t, val);
+      }
+    }
+    // make sure this is last to override already put taxonID keys
+    v.setCoreField(DwcTerm.taxonID, taxonID(core));
+    // readUsage extensions data
+    for (Map.Entry<Term, Extension> ext : extensions.entrySet()) {
+      if (star.hasExtension(ext.getKey())) {
+        v.getExtensions().put(ext.getValue(), Lists.<Map<Term, String>>newArrayList());
+        for (Record eRec : star.extension(ext.getKey())) {
+          Map<Term, String> data = Maps.newHashMap();
+          for (Term t : eRec.terms()) {
+            String val = clean(eRec.value(t));
+            if (val != null) {
+              data.put(t, val);
+            }
+          }
+          v.getExtensions().get(ext.getValue()).add(data);
+        }
+      }
+    }
+    return new InsertRecord(core.id(), v);
+  }
+
+  /**
+   * Converts the verbatim record into a NameUsage interpreting all enums and other needed types
+   * and creates a ParsedName from various verbatim options.
+   * Thread safe, this is called concurrently by the pipeline workers.
+   */
+  private InsertRecord interpret(InsertRecord rec) {
+    try {
+      rec.pnu = buildUsage(rec.v);
+      rec.ext = extensionInterpreter.interpret(rec.pnu.usage, rec.v);
     } catch (IgnoreNameUsageException e) {
+      rec.ignored = e;
+    }
+    return rec;
+  }
+
+  /**
+   * Batch inserts key neo properties used during normalization and stores the interpreted record in the dao.
+   * Must only be called from a single thread.
+   */
+  private void write(InsertRecord rec) throws NormalizationFailedException {
+    if (rec.ignored != null) {
       meta.incIgnored();
-      LOG.info("Ignoring record {}: {}", star.core().id(), e.getMessage());
+      LOG.info("Ignoring record {}: {}", rec.id, rec.ignored.getMessage());
+      return;
+    }
+
+    final NameUsage u = rec.pnu.usage;
+    Map<String, Object> props = dao.neoProperties(rec.id, u, rec.v);
+    long nodeId = inserter.createNode(props, Labels.TAXON, u.isSynonym() ? Labels.SYNONYM : Labels.TAXON);
+    // stream the taxonID into the lookup right away which also detects duplicates early
+    if (rec.id != null) {
+      dao.storeTaxonId(rec.id, nodeId);
+    }
+    // store verbatim instance
+    dao.store(nodeId, rec.v);
+    dao.store(nodeId, u, false);
+    dao.store(nodeId, rec.pnu.parsedName);
+    dao.store(nodeId, rec.ext);
+
+    meta.incRecords();
+    meta.incRank(u.getRank());
+    if (insertMeter != null) {
+      insertMeter.mark();
+    }
+    if (meta.getRecords() % (batchSize * 10) == 0) {
+      LOG.info("Inserts done into neo4j: {}", meta.getRecords());
+      if (Thread.interrupted()) {
+        LOG.warn("NeoInserter interrupted, exit {} early with incomplete parsing", datasetKey);
+        throw new NormalizationFailedException("NeoInserter interrupted");
+      }
     }
   }
 
@@ -406,45 +556,16 @@ public class NeoInserter implements AutoCloseable {
   }
 
   @Override
-  public void close() throws NotUniqueRuntimeException {
+  public void close() {
     try {
-      try {
-        // define indices
-        LOG.info("Building lucene index taxonID ...");
-        //TODO: neo4j batchinserter does not seem to evaluate the unique constraint. Duplicates pass thru (see tests) !!!
-        inserter.createDeferredConstraint(Labels.TAXON).assertPropertyIsUnique(NeoProperties.TAXON_ID).create();
-        LOG.info("Building lucene index scientific name ...");
-        inserter.createDeferredSchemaIndex(Labels.TAXON).on(NeoProperties.SCIENTIFIC_NAME).create();
-        LOG.info("Building lucene index canonical name ...");
-        inserter.createDeferredSchemaIndex(Labels.TAXON).on(NeoProperties.CANONICAL_NAME).create();
-      } finally {
-        // this is when lucene indices are build and thus throws RuntimeExceptions when unique constraints are broken
-        // we catch these exceptions below
-        inserter.shutdown();
-      }
-
-    } catch (LifecycleException e) {
-      // likely a bad neo4j error, see https://github.com/neo4j/neo4j/issues/10738
-      Throwable t = e.getCause();
-      // check if the cause was a broken unique constraint which can only be taxonID in our case
-      if (t != null && t instanceof IllegalStateException) {
-        LOG.error("Bad neo4j LifecycleException. Assume this is caused by non unique TaxonID. Cause: {}", t);
-        // we assume it was a broken unique constraint which can only be taxonID in our case
-        throw new NotUniqueRuntimeException("TaxonID", "<unknown>");
-      } else {
-        throw e;
-      }
-
-    } catch (RuntimeException e) {
-      Throwable t = e.getCause();
-      // check if the cause was a broken unique constraint which can only be taxonID in our case
-      if (t != null && t instanceof IndexEntryConflictException) {
-        IndexEntryConflictException pe = (IndexEntryConflictException) t;
-        LOG.error("TaxonID not unique. Value {} used for both node {} and {}", pe.getSinglePropertyValue(), pe.getExistingNodeId(), pe.getAddedNodeId());
-        throw new NotUniqueRuntimeException("TaxonID", pe.getSinglePropertyValue());
-      } else {
-        throw e;
-      }
+      // define indices. TaxonIDs are streamed into the kvp taxonID lookup during inserts and need no neo4j index
+      LOG.info("Building lucene index scientific name ...");
+      inserter.createDeferredSchemaIndex(Labels.TAXON).on(NeoProperties.SCIENTIFIC_NAME).create();
+      LOG.info("Building lucene index canonical name ...");
+      inserter.createDeferredSchemaIndex(Labels.TAXON).on(NeoProperties.CANONICAL_NAME).create();
+    } finally {
+      // this is when lucene indices are build
+      inserter.shutdown();
     }
     LOG.info("Neo batch inserter closed, data flushed to disk. Opening regular neo db again ...", meta.getRecords());
     dao.openNeo();
@@ -1,9 +1,13 @@
 package org.gbif.checklistbank.neo;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
 import com.esotericsoftware.kryo.pool.KryoPool;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
@@ -15,6 +19,7 @@ import org.gbif.api.vocabulary.NameUsageIssue;
 import org.gbif.api.vocabulary.Origin;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.api.vocabulary.TaxonomicStatus;
+import org.gbif.checklistbank.cli.common.Metrics;
 import org.gbif.checklistbank.cli.common.NeoConfiguration;
 import org.gbif.checklistbank.cli.model.GraphFormat;
 import org.gbif.checklistbank.cli.model.NameUsageNode;
@@ -35,6 +40,8 @@ import org.mapdb.Serializer;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.factory.GraphDatabaseBuilder;
 import org.neo4j.helpers.collection.Iterators;
+import org.neo4j.io.pagecache.monitoring.PageCacheCounters;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +66,16 @@ public class UsageDao implements AutoCloseable {
   private static final KryoPool KPOOL = new KryoPool.Builder(new CliKryoFactory())
       .softReferences()
       .build();
+  // default initial kryo buffer sizes per kvp map
+  private static final Map<String, Integer> BUFFER_SIZES = ImmutableMap.<String, Integer>builder()
+      .put("names", 128)
+      .put("facts", 128)
+      .put("verbatim", 1024)
+      .put("usages", 256)
+      .put("extensions", 1024)
+      .put("srcUsages", 256)
+      .put("nubUsages", 256)
+      .build();
 
   private GraphDatabaseService neo;
   private final GraphDatabaseBuilder neoFactory;
@@ -70,7 +87,10 @@ public class UsageDao implements AutoCloseable {
   private final Map<Long, UsageExtensions> extensions;
   private final Map<Long, SrcUsage> srcUsages;
   private final Map<Long, NubUsage> nubUsages;
+  // taxonID lookup of neo node ids, streamed during inserts
+  private final Map<String, Long> taxonIds;
   private final MetricRegistry registry;
+  private final Map<String, Integer> bufferSizes;
   private final File neoDir;
   private final File kvpStore;
   private final Joiner remarkJoiner = Joiner.on("\n").skipNulls();
@@ -80,22 +100,29 @@ public class UsageDao implements AutoCloseable {
    * @param neoDir
    * @param neoFactory
    * @param registry
+   * @param bufferSizes custom initial kryo buffer sizes by kvp map name
    */
-  private UsageDao(DB kvp, File neoDir, @Nullable File kvpStore, GraphDatabaseBuilder neoFactory, @Nullable MetricRegistry registry) {
+  private UsageDao(DB kvp, File neoDir, @Nullable File kvpStore, GraphDatabaseBuilder neoFactory, @Nullable MetricRegistry registry,
+                   Map<String, Integer> bufferSizes) {
     try {
       this.neoFactory = neoFactory;
       this.neoDir = neoDir;
       this.kvpStore = kvpStore;
       this.kvp = kvp;
       this.registry = registry;
-
-      names = createKvpMap("names", ParsedName.class, 128);
-      facts = createKvpMap("facts", UsageFacts.class, 128);
-      verbatim = createKvpMap("verbatim", VerbatimNameUsage.class, 512);
-      usages = createKvpMap("usages", NameUsage.class, 256);
-      extensions = createKvpMap("extensions", UsageExtensions.class, 512);
-      srcUsages = createKvpMap("srcUsages", SrcUsage.class, 256);
-      nubUsages = createKvpMap("nubUsages", NubUsage.class, 256);
+      this.bufferSizes = bufferSizes;
+
+      names = createKvpMap("names", ParsedName.class);
+      facts = createKvpMap("facts", UsageFacts.class);
+      verbatim = createKvpMap("verbatim", VerbatimNameUsage.class);
+      usages = createKvpMap("usages", NameUsage.class);
+      extensions = createKvpMap("extensions", UsageExtensions.class);
+      srcUsages = createKvpMap("srcUsages", SrcUsage.class);
+      nubUsages = createKvpMap("nubUsages", NubUsage.class);
+      taxonIds = kvp.hashMap("taxonIds")
+          .keySerializer(Serializer.STRING)
+          .valueSerializer(Serializer.LONG)
+          .createOrOpen();
 
       openNeo();
     } catch (Exception e) {
@@ -105,10 +132,15 @@ public class UsageDao implements AutoCloseable {
     }
   }
 
-  private <T> Map<Long, T> createKvpMap(String name, Class<T> clazz, int bufferSize) {
+  /**
+   * Creates a kvp map with a kryo serializer that records the serialized sizes in the metrics registry if existing.
+   */
+  private <T> Map<Long, T> createKvpMap(String name, Class<T> clazz) {
+    int bufferSize = bufferSizes.containsKey(name) ? bufferSizes.get(name) : BUFFER_SIZES.get(name);
+    Histogram sizes = registry == null ? null : registry.histogram(kvpSizeMetric(name));
     return kvp.hashMap(name)
         .keySerializer(Serializer.LONG)
-        .valueSerializer(new MapDbObjectSerializer(clazz, KPOOL, bufferSize))
+        .valueSerializer(new MapDbObjectSerializer(clazz, KPOOL, bufferSize, sizes))
         .createOrOpen();
   }
 
@@ -133,7 +165,7 @@ public class UsageDao implements AutoCloseable {
     GraphDatabaseBuilder builder = cfg.newEmbeddedDb(storeDir, false);
     CleanupUtils.registerCleanupHook(storeDir);
 
-    return new UsageDao(kvp, storeDir, null, builder, new MetricRegistry());
+    return new UsageDao(kvp, storeDir, null, builder, new MetricRegistry(), cfg.kryoBufferSizes);
   }
 
   /**
@@ -166,6 +198,19 @@ public class UsageDao implements AutoCloseable {
    * @param eraseExisting if true erases any previous data files
    */
   public static UsageDao persistentDao(NeoConfiguration cfg, UUID datasetKey, MetricRegistry registry, boolean eraseExisting) {
+    return persistentDao(cfg, datasetKey, registry, eraseExisting, -1, 1);
+  }
+
+  /**
+   * A backend that is stored in files inside the configured neo directory.
+   * If configured the neo4j page cache and the kvp store are sized according to the given number of records.
+   *
+   * @param eraseExisting if true erases any previous data files
+   * @param records       number of dataset records or negative if unknown
+   * @param concurrency   maximum number of daos open at the same time sharing the available memory
+   */
+  public static UsageDao persistentDao(NeoConfiguration cfg, UUID datasetKey, MetricRegistry registry, boolean eraseExisting,
+                                       long records, int concurrency) {
     DB kvp = null;
     try {
       final File kvpF = cfg.kvp(datasetKey);
@@ -178,11 +223,17 @@ public class UsageDao implements AutoCloseable {
       }
       FileUtils.forceMkdir(kvpF.getParentFile());
       LOG.debug("Use KVP store {}", kvpF.getAbsolutePath());
-      kvp = DBMaker.fileDB(kvpF)
-          .fileMmapEnableIfSupported()
-          .make();
-      GraphDatabaseBuilder builder = cfg.newEmbeddedDb(storeDir, eraseExisting);
-      return new UsageDao(kvp, storeDir, kvpF, builder, registry);
+      DBMaker.Maker maker = DBMaker.fileDB(kvpF)
+          .fileMmapEnableIfSupported();
+      final long kvpAllocation = cfg.kvpAllocation(records, concurrency);
+      if (kvpAllocation > 0) {
+        maker.allocateStartSize(kvpAllocation);
+      }
+      kvp = maker.make();
+      final int mappedMemory = cfg.mappedMemory(records, concurrency);
+      LOG.info("Use {}MB neo4j page cache and {}MB initial kvp store for {} records", mappedMemory, kvpAllocation / (1024 * 1024), records);
+      GraphDatabaseBuilder builder = cfg.newEmbeddedDb(storeDir, eraseExisting, mappedMemory);
+      return new UsageDao(kvp, storeDir, kvpF, builder, registry, cfg.kryoBufferSizes);
 
     } catch (Exception e) {
       if (kvp != null && !kvp.isClosed()) {
@@ -282,10 +333,26 @@ public class UsageDao implements AutoCloseable {
     } catch (Exception e) {
       LOG.error("Failed to close kvp store {}", kvpStore.getAbsolutePath(), e);
     }
+    removeKvpMetrics();
     closeNeo();
     LOG.info("Closed DAO for directory {}", neoDir.getAbsolutePath());
   }
 
+  /**
+   * @return the current size in bytes of all neo4j and kvp store files on disk.
+   * The kvp store file is preallocated, so this is rather the allocated than the used size
+   */
+  public long allocatedStoreSize() {
+    long size = 0;
+    if (neoDir != null && neoDir.exists()) {
+      size += FileUtils.sizeOfDirectory(neoDir);
+    }
+    if (kvpStore != null && kvpStore.exists()) {
+      size += kvpStore.length();
+    }
+    return size;
+  }
+
   public void closeAndDelete() {
     close();
     if (kvpStore != null && kvpStore.exists()) {
@@ -301,9 +368,105 @@ public class UsageDao implements AutoCloseable {
   void openNeo() {
     LOG.debug("Starting embedded neo4j database from {}", neoDir.getAbsolutePath());
     neo = neoFactory.newGraphDatabase();
+    registerPageCacheMetrics();
+  }
+
+  /**
+   * Exposes the page cache counters of the current neo4j db through the metrics registry if one exists.
+   * Every db has its own page cache, so the metric names are qualified by the db directory name,
+   * i.e. the dataset key for persistent daos.
+   */
+  private void registerPageCacheMetrics() {
+    if (registry == null) {
+      return;
+    }
+    removePageCacheMetrics();
+    try {
+      final PageCacheCounters counters = ((GraphDatabaseAPI) neo).getDependencyResolver().resolveDependency(PageCacheCounters.class);
+      registry.register(pageCacheMetric(Metrics.PAGECACHE_HITS), new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return counters.hits();
+        }
+      });
+      registry.register(pageCacheMetric(Metrics.PAGECACHE_FAULTS), new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return counters.faults();
+        }
+      });
+      registry.register(pageCacheMetric(Metrics.PAGECACHE_EVICTIONS), new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return counters.evictions();
+        }
+      });
+      registry.register(pageCacheMetric(Metrics.PAGECACHE_HIT_RATIO), new Gauge<Double>() {
+        @Override
+        public Double getValue() {
+          return counters.hitRatio();
+        }
+      });
+    } catch (RuntimeException e) {
+      LOG.warn("Failed to register neo4j page cache metrics", e);
+    }
+  }
+
+  private void removePageCacheMetrics() {
+    if (registry != null) {
+      registry.remove(pageCacheMetric(Metrics.PAGECACHE_HITS));
+      registry.remove(pageCacheMetric(Metrics.PAGECACHE_FAULTS));
+      registry.remove(pageCacheMetric(Metrics.PAGECACHE_EVICTIONS));
+      registry.remove(pageCacheMetric(Metrics.PAGECACHE_HIT_RATIO));
+    }
+  }
+
+  /**
+   * @return the metric name qualified by the neo4j directory name
+   */
+  public String pageCacheMetric(String name) {
+    return MetricRegistry.name(name, neoDir.getName());
+  }
+
+  /**
+   * @return the name of the serialized size histogram of the given kvp map qualified by the neo4j directory name
+   */
+  public String kvpSizeMetric(String kvpName) {
+    return MetricRegistry.name(Metrics.KVP_SIZE_PREFIX + kvpName, neoDir.getName());
+  }
+
+  private void removeKvpMetrics() {
+    if (registry != null) {
+      for (String name : BUFFER_SIZES.keySet()) {
+        registry.remove(kvpSizeMetric(name));
+      }
+    }
+  }
+
+  /**
+   * Logs the page cache counters of the current neo4j db and the serialized object sizes of all kvp maps.
+   * A low hit ratio indicates an IO bound db with a page cache too small for the dataset.
+   */
+  public void logStats() {
+    try {
+      PageCacheCounters counters = ((GraphDatabaseAPI) neo).getDependencyResolver().resolveDependency(PageCacheCounters.class);
+      LOG.info("Neo4j page cache hits={}, faults={}, evictions={}, hitRatio={}", counters.hits(), counters.faults(), counters.evictions(), counters.hitRatio());
+    } catch (RuntimeException e) {
+      LOG.debug("No neo4j page cache counters available", e);
+    }
+    if (registry != null) {
+      for (String name : BUFFER_SIZES.keySet()) {
+        Histogram h = registry.histogram(kvpSizeMetric(name));
+        if (h.getCount() > 0) {
+          Snapshot s = h.getSnapshot();
+          LOG.info("Kvp {} serialized {} objects, bytes mean={}, p99={}, max={}", name, h.getCount(), (long) s.getMean(), (long) s.get99thPercentile(), s.getMax());
+        }
+      }
+    }
   }
 
   private void closeNeo() {
+    removePageCacheMetrics();
     try {
       if (neo != null) {
         neo.shutdown();
@@ -318,8 +481,15 @@ public class UsageDao implements AutoCloseable {
    * Make sure you do not access any other dao methods until the batch inserter was closed properly!
    */
   public NeoInserter createBatchInserter(int batchSize) throws IOException {
+    return createBatchInserter(batchSize, 1);
+  }
+
+  /**
+   * Same as {@link #createBatchInserter(int)} but interpreting records with the given number of threads.
+   */
+  public NeoInserter createBatchInserter(int batchSize, int threads) throws IOException {
     closeNeo();
-    return NeoInserter.create(this, neoDir, batchSize, registry);
+    return NeoInserter.create(this, neoDir, batchSize, threads, registry);
   }
 
   public Transaction beginTx() {
@@ -359,6 +529,41 @@ public class UsageDao implements AutoCloseable {
     return neo.createNode(Labels.TAXON);
   }
 
+  /**
+   * Registers a new, unique taxonID for a node in the kvp taxonID lookup.
+   * This can also be used with the batch inserter as it does not require a neo4j transaction.
+   *
+   * @throws NotUniqueRuntimeException if the taxonID is already used by another node
+   */
+  public void storeTaxonId(String taxonID, long nodeId) throws NotUniqueRuntimeException {
+    Long existing = taxonIds.putIfAbsent(taxonID, nodeId);
+    if (existing != null && existing != nodeId) {
+      LOG.error("TaxonID not unique. Value {} used for both node {} and {}", taxonID, existing, nodeId);
+      throw new NotUniqueRuntimeException("TaxonID", taxonID);
+    }
+  }
+
+  /**
+   * Looks up a node by its taxonID using the kvp taxonID lookup instead of a neo4j index.
+   *
+   * @return the node with the given taxonID or null
+   */
+  public Node nodeByTaxonId(String taxonID) {
+    Long nodeId = taxonIds.get(taxonID);
+    if (nodeId != null) {
+      try {
+        Node n = neo.getNodeById(nodeId);
+        // make sure the taxonID was not changed or reused since
+        if (taxonID.equals(n.getProperty(NeoProperties.TAXON_ID, null))) {
+          return n;
+        }
+      } catch (NotFoundException e) {
+        // node was deleted
+      }
+    }
+    return null;
+  }
+
   public UsageExtensions readExtensions(long key) {
     return extensions.get(key);
   }
@@ -411,6 +616,9 @@ public class UsageDao implements AutoCloseable {
   private void updateNeo(Node n, NameUsage u) {
     if (n != null) {
       setProperty(n, NeoProperties.TAXON_ID, u.getTaxonID());
+      if (u.getTaxonID() != null) {
+        taxonIds.put(u.getTaxonID(), n.getId());
+      }
       setProperty(n, NeoProperties.SCIENTIFIC_NAME, u.getScientificName());
       setProperty(n, NeoProperties.CANONICAL_NAME, u.getCanonicalName());
       storeEnum(n, NeoProperties.RANK, u.getRank());
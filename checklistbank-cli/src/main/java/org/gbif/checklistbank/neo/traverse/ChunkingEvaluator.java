@@ -16,29 +16,63 @@ import org.neo4j.graphdb.traversal.Evaluator;
  * At present, families are marked. This could be improved based on the checklist,
  * or could take account of the current depth (path.length()), to avoid marking many
  * unplaced families.
+ *
+ * The subtree sizes are read from the usage facts by default, but can be supplied by any other {@link SubtreeSizes}
+ * in case the facts have not been built yet.
  */
 public class ChunkingEvaluator implements Evaluator {
 
-  private UsageDao dao;
+  private final SubtreeSizes sizes;
   private int chunkSize;
   private int minChunkSize;
   private LongSet chunkIds = new LongOpenHashSet();
 
-  public ChunkingEvaluator(UsageDao dao, int minChunkSize, int chunkSize) {
+  /**
+   * Source of the subtree size of a node.
+   */
+  public interface SubtreeSizes {
+
+    /**
+     * @return number of accepted descendants plus the synonyms of the node or -1 if unknown
+     */
+    int size(Node n);
+
+    /**
+     * @return number of direct accepted children of the node
+     */
+    int children(Node n);
+  }
+
+  public ChunkingEvaluator(final UsageDao dao, int minChunkSize, int chunkSize) {
+    this(new SubtreeSizes() {
+      @Override
+      public int size(Node n) {
+        UsageFacts facts = dao.readFacts(n.getId());
+        return facts == null ? -1 : facts.metrics.getNumDescendants() + facts.metrics.getNumSynonyms();
+      }
+
+      @Override
+      public int children(Node n) {
+        UsageFacts facts = dao.readFacts(n.getId());
+        return facts == null ? 0 : facts.metrics.getNumChildren();
+      }
+    }, minChunkSize, chunkSize);
+  }
+
+  public ChunkingEvaluator(SubtreeSizes sizes, int minChunkSize, int chunkSize) {
     Preconditions.checkArgument(minChunkSize < chunkSize, "Minimum chunk size needs to be smaller then the chunk size");
     Preconditions.checkArgument(minChunkSize >= 0, "Minimum chunk size needs to be positive");
     Preconditions.checkArgument(chunkSize > 0, "Chunk size needs to be at least 1");
     this.chunkSize = chunkSize;
-    this.dao = dao;
+    this.sizes = sizes;
     this.minChunkSize = minChunkSize;
   }
 
   @Override
   public Evaluation evaluate(Path path) {
     Node n = path.endNode();
-    UsageFacts facts = dao.readFacts(n.getId());
-    int size = facts == null ? -1 : facts.metrics.getNumDescendants() + facts.metrics.getNumSynonyms();
-    if (size > minChunkSize && (size < chunkSize || size - facts.metrics.getNumChildren() < minChunkSize)) {
+    int size = sizes.size(n);
+    if (size > minChunkSize && (size < chunkSize || size - sizes.children(n) < minChunkSize)) {
       chunkIds.add(n.getId());
       return Evaluation.INCLUDE_AND_PRUNE;
     } else {
@@ -0,0 +1,29 @@
+package org.gbif.checklistbank.neo.traverse;
+
+import java.util.List;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * A StartEndHandler that can walk independent subtrees concurrently in forked handler instances
+ * and merge their results back into the handler that walks the remaining upper tree.
+ */
+public interface MergeableStartEndHandler extends StartEndHandler {
+
+  /**
+   * Creates a new handler for walking an entire subtree, starting with the subtree root.
+   * Called in the thread and transaction that walks the subtree.
+   *
+   * @param ancestors the accepted parents of the subtree root, starting with the root of the tree
+   */
+  MergeableStartEndHandler fork(List<Node> ancestors);
+
+  /**
+   * Merges the results of a forked handler that has walked the entire subtree of the given root.
+   * Called instead of the start and end events for the subtree root while walking the upper tree.
+   *
+   * @param subtreeRoot the root node of the subtree walked by the fork
+   * @param fork the handler instance returned by fork()
+   */
+  void merge(Node subtreeRoot, MergeableStartEndHandler fork);
+}
@@ -12,9 +12,17 @@ import org.gbif.common.parsers.core.ParseResult;
 import org.gbif.nub.lookup.straight.IdLookup;
 import org.gbif.nub.lookup.straight.LookupUsage;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.neo4j.graphdb.Node;
 import org.slf4j.Logger;
@@ -22,32 +30,60 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Assigns existing usageKey through a backbone match.
+ * Usages are matched in batches grouped by their name and the homonyms of a name are cached for the entire dataset,
+ * so repeated names are read from the lookup only once.
+ * Forked handlers for concurrent subtree walks inherit the kingdom from the parsable kingdom names of their ancestors.
  */
-public class NubMatchHandler implements StartEndHandler {
+public class NubMatchHandler implements MergeableStartEndHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(NubMatchHandler.class);
+  private static final int BATCH_SIZE = 1000;
+  private static final int HOMONYM_CACHE_SIZE = 10000;
   private final Set<NameType> unparsableMatchTypes = Sets.newHashSet(NameType.VIRUS, NameType.HYBRID, NameType.CULTIVAR, NameType.CANDIDATUS);
   // neo node ids for the higher classification links
   private final IdLookup lookup;
   private final UsageDao dao;
+  private final UsageCache cache;
+  // shared with all forks
+  private final Cache<String, List<LookupUsage>> homonyms;
+  private final List<PendingMatch> batch = Lists.newArrayList();
   private int counter;
+  private int depth;
   private Kingdom currKingdom;
   private long currKingdomNodeId = -1;
   private KingdomParser kParser = KingdomParser.getInstance();
 
   public NubMatchHandler(IdLookup lookup, UsageDao dao) {
+    this(lookup, dao, null);
+  }
+
+  /**
+   * @param cache optional usage cache shared with other handlers of the same walk
+   */
+  public NubMatchHandler(IdLookup lookup, UsageDao dao, @Nullable UsageCache cache) {
+    this(lookup, dao, cache, CacheBuilder.newBuilder().maximumSize(HOMONYM_CACHE_SIZE).<String, List<LookupUsage>>build());
+  }
+
+  private NubMatchHandler(IdLookup lookup, UsageDao dao, @Nullable UsageCache cache, Cache<String, List<LookupUsage>> homonyms) {
     this.dao = dao;
+    this.cache = cache;
+    this.homonyms = homonyms;
     this.lookup = Preconditions.checkNotNull(lookup, "Backbone matching client required");
   }
 
+  private NameUsage readUsage(Node n) {
+    return cache == null ? dao.readUsage(n, false) : cache.readUsage(n);
+  }
+
   @Override
   public void start(Node n) {
     // increase counters
     counter++;
+    depth++;
     if (counter % 1000 == 0) {
       LOG.debug("Nub matching done for: {}", counter);
     }
-    NameUsage u = dao.readUsage(n, false);
+    NameUsage u = readUsage(n);
     if (currKingdom == null) {
       ParseResult<Kingdom> k = kParser.parse(u.getCanonicalName());
       if (k.isSuccessful()) {
@@ -56,44 +92,145 @@ public class NubMatchHandler implements StartEndHandler {
     }
   }
 
+  @Override
+  public NubMatchHandler fork(List<Node> ancestors) {
+    NubMatchHandler fork = new NubMatchHandler(lookup, dao, cache, homonyms);
+    for (Node p : ancestors) {
+      if (fork.currKingdom != null) {
+        break;
+      }
+      ParseResult<Kingdom> k = kParser.parse(dao.readUsage(p, false).getCanonicalName());
+      if (k.isSuccessful()) {
+        fork.setCurrKingdom(k.getPayload(), p);
+      }
+    }
+    return fork;
+  }
+
+  @Override
+  public void merge(Node subtreeRoot, MergeableStartEndHandler fork) {
+    counter += ((NubMatchHandler) fork).counter;
+  }
+
   @Override
   public void end(Node n) {
-    NameUsage u = dao.readUsage(n, false);
-    // nub lookup
-    NameUsageNode nn = new NameUsageNode(n, u, false);
-    matchToNub(nn);
-    processSynonyms(nn);
+    depth--;
+    PendingMatch acc = new PendingMatch(new NameUsageNode(n, readUsage(n), false), cache == null ? dao.readName(n.getId()) : cache.readName(n), currKingdom);
+    if (cache == null) {
+      for (Node syn : Traversals.SYNONYMS.traverse(n).nodes()) {
+        acc.synonyms.add(new PendingMatch(new NameUsageNode(syn, dao.readUsage(syn, false), false), dao.readName(syn.getId()), null));
+      }
+    } else {
+      for (NameUsageNode syn : cache.readSynonyms(n)) {
+        acc.synonyms.add(new PendingMatch(syn, dao.readName(syn.node.getId()), null));
+      }
+    }
+    batch.add(acc);
     // remove kingdom?
     if (currKingdomNodeId == n.getId()) {
       currKingdom = null;
       currKingdomNodeId = -1;
     }
+    // make sure all matches are stored once the walk has finished
+    if (batch.size() >= BATCH_SIZE || depth == 0) {
+      flush();
+    }
+  }
+
+  /**
+   * A usage waiting to be matched in the next batch.
+   */
+  private class PendingMatch {
+    private final NameUsageNode nn;
+    private final String name;
+    private final String authorship;
+    private final String year;
+    private Kingdom kingdom;
+    private LookupUsage match;
+    private final List<PendingMatch> synonyms = Lists.newArrayList();
+
+    PendingMatch(NameUsageNode nn, @Nullable ParsedName pn, @Nullable Kingdom kingdom) {
+      this.nn = nn;
+      this.kingdom = kingdom;
+      if (pn == null) {
+        LOG.warn("No parsed name found for {} {}", nn.node, nn.usage.getScientificName());
+      }
+      if (pn == null || unparsableMatchTypes.contains(pn.getType())) {
+        // try with full scientific name for certain name types (we dont want to match informal or no names)
+        name = nn.usage.getScientificName();
+        authorship = null;
+        year = null;
+      } else {
+        name = pn.canonicalName();
+        authorship = pn.getAuthorship();
+        year = pn.getYear();
+      }
+    }
+  }
+
+  /**
+   * Matches all pending usages.
+   * Accepted usages are matched first as their matched kingdom complements a missing kingdom for their synonyms.
+   */
+  private void flush() {
+    match(batch);
+    List<PendingMatch> synonyms = Lists.newArrayList();
+    for (PendingMatch acc : batch) {
+      for (PendingMatch syn : acc.synonyms) {
+        syn.kingdom = acc.kingdom;
+        if (syn.kingdom == null && acc.match != null) {
+          syn.kingdom = acc.match.getKingdom();
+          LOG.debug("Nub match {} complementing kingdom: {}", acc.nn.usage.getScientificName(), syn.kingdom);
+        }
+        synonyms.add(syn);
+      }
+    }
+    match(synonyms);
+    batch.clear();
   }
 
   /**
    * Use an in memory backbone matching so there is no need for retries.
+   * Usages are grouped by their name, so the homonyms of each name are read only once.
    * The resulting usageKey of the match and potential issues will be stored in the neo node.
    */
-  private void matchToNub(NameUsageNode nn) {
-    ParsedName pn = dao.readName(nn.node.getId());
-    if (pn == null) {
-      LOG.warn("No parsed name found for {} {}", nn.node, nn.usage.getScientificName());
+  private void match(List<PendingMatch> usages) {
+    Map<String, List<PendingMatch>> byName = Maps.newHashMap();
+    for (PendingMatch p : usages) {
+      if (p.name == null) {
+        store(p);
+      } else {
+        if (!byName.containsKey(p.name)) {
+          byName.put(p.name, Lists.<PendingMatch>newArrayList());
+        }
+        byName.get(p.name).add(p);
+      }
     }
-    LookupUsage match;
-    if (pn == null || unparsableMatchTypes.contains(pn.getType())) {
-      // try with full scientific name for certain name types (we dont want to match informal or no names)
-      match = lookup.match(nn.usage.getScientificName(), null, null, nn.usage.getRank(), nn.usage.getTaxonomicStatus(), currKingdom);
-    } else {
-      match = lookup.match(pn.canonicalName(), pn.getAuthorship(), pn.getYear(), nn.usage.getRank(), nn.usage.getTaxonomicStatus(), currKingdom);
+    for (Map.Entry<String, List<PendingMatch>> e : byName.entrySet()) {
+      List<LookupUsage> hits = homonyms(e.getKey());
+      for (PendingMatch p : e.getValue()) {
+        p.match = lookup.match(hits, p.name, p.authorship, p.year, p.nn.usage.getRank(), p.nn.usage.getTaxonomicStatus(), p.kingdom);
+        store(p);
+      }
     }
+  }
 
-    // store nub key
-    if (match != null) {
-      nn.usage.setNubKey(match.getKey());
-      if (currKingdom == null) {
-        setCurrKingdom(match.getKingdom(), nn.node);
-        LOG.debug("Nub match {} complementing kingdom: {}", nn.usage.getScientificName(), currKingdom);
-      }
+  /**
+   * @return the cached homonyms for a name
+   */
+  private List<LookupUsage> homonyms(String name) {
+    List<LookupUsage> hits = homonyms.getIfPresent(name);
+    if (hits == null) {
+      hits = ImmutableList.copyOf(lookup.match(name));
+      homonyms.put(name, hits);
+    }
+    return hits;
+  }
+
+  private void store(PendingMatch p) {
+    NameUsageNode nn = p.nn;
+    if (p.match != null) {
+      nn.usage.setNubKey(p.match.getKey());
     } else {
       LOG.debug("Failed nub match: {} {}", nn.usage.getRank(), nn.usage.getScientificName());
       nn.usage.setNubKey(null);
@@ -108,16 +245,4 @@ public class NubMatchHandler implements StartEndHandler {
     currKingdomNodeId = n.getId();
   }
 
-  /**
-   * Process all synonymsTD doing a nub lookup for each of them
-   *
-   * @return the number of processed synonymsTD
-   */
-  private void processSynonyms(NameUsageNode nn) {
-    for (Node syn : Traversals.SYNONYMS.traverse(nn.node).nodes()) {
-      NameUsage s = dao.readUsage(syn, false);
-      matchToNub(new NameUsageNode(syn, s, false));
-    }
-  }
-
 }
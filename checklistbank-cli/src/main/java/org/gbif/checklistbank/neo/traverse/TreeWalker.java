@@ -2,19 +2,37 @@ package org.gbif.checklistbank.neo.traverse;
 
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.checklistbank.neo.NeoProperties;
+import org.gbif.checklistbank.neo.RelType;
+import org.gbif.utils.concurrent.NamedThreadFactory;
 
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nullable;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
 import com.codahale.metrics.Meter;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.ResourceIterable;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.Evaluator;
+import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +75,180 @@ public class TreeWalker {
   }
 
 
+  /**
+   * Walks all accepted nodes like walkAcceptedTree, but splits the tree into independent subtrees
+   * using the chunk logic of the {@link ChunkingEvaluator}.
+   * The subtrees are walked concurrently by forked handlers, each in its own transaction.
+   * The remaining upper tree is walked in the calling thread, merging the forked subtree results in place of their root node.
+   * As usage facts might not exist yet, subtree sizes are counted in a first cheap walk over the neo relations only.
+   *
+   * @param threads number of threads to walk subtrees with. A single thread walks the tree sequentially
+   */
+  public static void walkAcceptedTree(GraphDatabaseService db, int threads, int minChunkSize, int chunkSize, @Nullable Meter meter,
+                                      MergeableStartEndHandler... handler) {
+    if (threads < 2) {
+      walkAcceptedTree(db, null, null, meter, handler);
+      return;
+    }
+
+    final TraversalDescription acceptedTree = Traversals.ACCEPTED_TREE.evaluator(new AcceptedOnlyEvaluator());
+    final Long2ObjectMap<Subtree> subtrees = new Long2ObjectOpenHashMap<>();
+    final ExecutorService exec = Executors.newFixedThreadPool(threads, new NamedThreadFactory("tree-walker"));
+    try {
+      try (Transaction tx = db.beginTx()) {
+        final List<Node> roots = TreeIterablesSorted.findRoot(db);
+        SubtreeSizeCounter sizes = new SubtreeSizeCounter(minChunkSize);
+        walkTree(MultiRootPathIterator.create(roots, acceptedTree), null, sizes);
+
+        ChunkingEvaluator chunkingEvaluator = new ChunkingEvaluator(sizes, minChunkSize, chunkSize);
+        for (Path p : MultiRootPathIterator.create(roots, acceptedTree.evaluator(chunkingEvaluator))) {
+          if (chunkingEvaluator.isChunk(p.endNode().getId())) {
+            Subtree st = new Subtree(p, handler.length);
+            st.future = exec.submit(() -> walkSubtree(db, st, meter, handler));
+            subtrees.put(st.rootId, st);
+          }
+        }
+      }
+      LOG.info("Walk {} subtrees with {} threads", subtrees.size(), threads);
+
+      // walk the upper tree while the subtrees are processed
+      try (Transaction tx = db.beginTx()) {
+        TraversalDescription upperTree = Traversals.SORTED_ACCEPTED_TREE.evaluator(new Evaluator() {
+          @Override
+          public Evaluation evaluate(Path path) {
+            return subtrees.containsKey(path.endNode().getId()) ? Evaluation.INCLUDE_AND_PRUNE : Evaluation.INCLUDE_AND_CONTINUE;
+          }
+        });
+        walkTree(MultiRootPathIterator.create(TreeIterablesSorted.findRoot(db), upperTree), null,
+            new MergingHandler(subtrees, meter, handler));
+      }
+
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  private static void walkSubtree(GraphDatabaseService db, Subtree st, @Nullable Meter meter, MergeableStartEndHandler[] handler) {
+    try (Transaction tx = db.beginTx()) {
+      List<Node> ancestors = Lists.newArrayList();
+      for (long id : st.ancestorIds) {
+        ancestors.add(db.getNodeById(id));
+      }
+      for (int i = 0; i < handler.length; i++) {
+        st.forks[i] = handler[i].fork(ancestors);
+      }
+      walkTree(TreeIterablesSorted.acceptedPath(db, db.getNodeById(st.rootId), null), meter, st.forks);
+    }
+  }
+
+  /**
+   * A subtree that is walked concurrently by forked handlers.
+   */
+  private static class Subtree {
+    private final long rootId;
+    private final long[] ancestorIds;
+    private final MergeableStartEndHandler[] forks;
+    private Future<?> future;
+
+    Subtree(Path p, int handlers) {
+      rootId = p.endNode().getId();
+      ancestorIds = new long[p.length()];
+      int idx = 0;
+      for (Node n : p.nodes()) {
+        if (idx < ancestorIds.length) {
+          ancestorIds[idx++] = n.getId();
+        }
+      }
+      forks = new MergeableStartEndHandler[handlers];
+    }
+  }
+
+  /**
+   * Passes events of the upper tree to the handlers and merges the forked handlers of subtrees in place of their root node,
+   * waiting for the subtree walk to finish if needed.
+   */
+  private static class MergingHandler implements StartEndHandler {
+    private final Long2ObjectMap<Subtree> subtrees;
+    private final Meter meter;
+    private final MergeableStartEndHandler[] handler;
+
+    MergingHandler(Long2ObjectMap<Subtree> subtrees, @Nullable Meter meter, MergeableStartEndHandler[] handler) {
+      this.subtrees = subtrees;
+      this.meter = meter;
+      this.handler = handler;
+    }
+
+    @Override
+    public void start(Node n) {
+      if (!subtrees.containsKey(n.getId())) {
+        if (meter != null) {
+          meter.mark();
+        }
+        handleStart(n, handler);
+      }
+    }
+
+    @Override
+    public void end(Node n) {
+      Subtree st = subtrees.get(n.getId());
+      if (st == null) {
+        handleEnd(n, handler);
+      } else {
+        try {
+          st.future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for subtree " + n.getId());
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+        for (int i = 0; i < handler.length; i++) {
+          handler[i].merge(n, st.forks[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the number of accepted descendants and synonyms for all nodes with a subtree larger than the minimum size.
+   */
+  private static class SubtreeSizeCounter implements StartEndHandler, ChunkingEvaluator.SubtreeSizes {
+    private final int minSize;
+    private final Long2IntMap sizes = new Long2IntOpenHashMap();
+    private final IntArrayList starts = new IntArrayList();
+    private int counter;
+
+    SubtreeSizeCounter(int minSize) {
+      this.minSize = minSize;
+      sizes.defaultReturnValue(-1);
+    }
+
+    @Override
+    public void start(Node n) {
+      starts.push(counter++);
+    }
+
+    @Override
+    public void end(Node n) {
+      int size = counter - starts.popInt() - 1
+          + n.getDegree(RelType.SYNONYM_OF, Direction.INCOMING)
+          + n.getDegree(RelType.PROPARTE_SYNONYM_OF, Direction.INCOMING);
+      if (size > minSize) {
+        sizes.put(n.getId(), size);
+      }
+    }
+
+    @Override
+    public int size(Node n) {
+      return sizes.get(n.getId());
+    }
+
+    @Override
+    public int children(Node n) {
+      return n.getDegree(RelType.PARENT_OF, Direction.OUTGOING);
+    }
+  }
+
   private static void walkTree(ResourceIterable<Path> paths, @Nullable Meter meter, StartEndHandler ... handler) {
     Path lastPath = null;
     long counter = 0;
@@ -0,0 +1,110 @@
+package org.gbif.checklistbank.neo.traverse;
+
+import org.gbif.api.model.checklistbank.NameUsage;
+import org.gbif.api.model.checklistbank.ParsedName;
+import org.gbif.checklistbank.cli.model.NameUsageNode;
+import org.gbif.checklistbank.neo.UsageDao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+import org.neo4j.graphdb.Node;
+
+/**
+ * A walk scoped cache of deserialized name usages and parsed names shared by all handlers of a tree walk,
+ * so the kvp store is read only once per node and synonym even if several handlers need them on start and end.
+ *
+ * Entries are evicted on the end event of their node, so the cache must be given to the TreeWalker as the last handler.
+ * As each node is walked by a single thread only, the same cache can be used by concurrent subtree walks.
+ */
+public class UsageCache implements MergeableStartEndHandler {
+  private final UsageDao dao;
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+  private static class Entry {
+    private final NameUsage usage;
+    private ParsedName name;
+    private boolean nameRead;
+    private List<NameUsageNode> synonyms;
+
+    private Entry(NameUsage usage) {
+      this.usage = usage;
+    }
+  }
+
+  public UsageCache(UsageDao dao) {
+    this.dao = dao;
+  }
+
+  private Entry entry(Node n) {
+    Entry e = entries.get(n.getId());
+    if (e == null) {
+      e = new Entry(dao.readUsage(n, false));
+      entries.put(n.getId(), e);
+    }
+    return e;
+  }
+
+  /**
+   * @return the name usage of a walked node
+   */
+  public NameUsage readUsage(Node n) {
+    return entry(n).usage;
+  }
+
+  /**
+   * @return the parsed name of a walked node
+   */
+  public ParsedName readName(Node n) {
+    Entry e = entry(n);
+    if (!e.nameRead) {
+      e.name = dao.readName(n.getId());
+      e.nameRead = true;
+    }
+    return e.name;
+  }
+
+  /**
+   * @return all synonyms of a walked node including pro parte synonyms
+   */
+  public List<NameUsageNode> readSynonyms(Node n) {
+    Entry e = entry(n);
+    if (e.synonyms == null) {
+      ImmutableList.Builder<NameUsageNode> synonyms = ImmutableList.builder();
+      for (Node syn : Traversals.SYNONYMS.traverse(n).nodes()) {
+        synonyms.add(new NameUsageNode(syn, dao.readUsage(syn, false), false));
+      }
+      e.synonyms = synonyms.build();
+    }
+    return e.synonyms;
+  }
+
+  /**
+   * @return number of currently cached nodes
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void start(Node n) {
+    // nothing to do, entries are loaded on first access
+  }
+
+  @Override
+  public void end(Node n) {
+    entries.remove(n.getId());
+  }
+
+  @Override
+  public MergeableStartEndHandler fork(List<Node> ancestors) {
+    return this;
+  }
+
+  @Override
+  public void merge(Node subtreeRoot, MergeableStartEndHandler fork) {
+    // the subtree walk has evicted all its entries already
+  }
+}
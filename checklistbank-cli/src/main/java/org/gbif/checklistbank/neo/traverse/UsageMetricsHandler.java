@@ -8,11 +8,13 @@ import org.gbif.api.vocabulary.Rank;
 import org.gbif.checklistbank.cli.normalizer.NormalizerStats;
 import org.gbif.checklistbank.neo.UsageDao;
 import org.gbif.checklistbank.model.Classification;
+import org.gbif.checklistbank.cli.model.NameUsageNode;
 import org.gbif.checklistbank.cli.model.UsageFacts;
 
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -25,8 +27,11 @@ import org.slf4j.LoggerFactory;
  * Builds higher classification keys (not the verbatim names) and NameUsageMetrics for all accepted usages.
  * Synonym usages do not need a data record as its zero all over.
  * The handler works on taxonomic neo relations and the NameUsage instances in the kvp store, so make sure they exist!
+ *
+ * Subtrees can be walked by forked handlers which keep the metrics of all ancestors outside the subtree
+ * in a single virtual parent that is added to the real ancestors when merged.
  */
-public class UsageMetricsHandler implements StartEndHandler {
+public class UsageMetricsHandler implements MergeableStartEndHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(UsageMetricsHandler.class);
     // neo node ids for the higher classification links
@@ -40,15 +45,28 @@ public class UsageMetricsHandler implements StartEndHandler {
     private Map<Origin, Integer> countByOrigin = Maps.newHashMap();
     private Map<Rank, Integer> countByRank = Maps.newHashMap();
     private final UsageDao dao;
+    private final UsageCache cache;
     private final boolean debug = false;
 
     public UsageMetricsHandler(UsageDao dao) {
+        this(dao, null);
+    }
+
+    /**
+     * @param cache optional usage cache shared with other handlers of the same walk
+     */
+    public UsageMetricsHandler(UsageDao dao, @Nullable UsageCache cache) {
         this.dao = dao;
+        this.cache = cache;
+    }
+
+    private NameUsage readUsage(Node n) {
+        return cache == null ? dao.readUsage(n, false) : cache.readUsage(n);
     }
 
     @Override
     public void start(Node n) {
-        NameUsage u = dao.readUsage(n, false);
+        NameUsage u = readUsage(n);
         Preconditions.checkNotNull(u, "node " + n.getId() + " with missing name usage found");
         // increase counters
         count(u);
@@ -82,10 +100,56 @@ public class UsageMetricsHandler implements StartEndHandler {
         if (debug) LOG.info("start: {} {} {} #  {}-0-{}", u.getTaxonID(), u.getRank(), u.getScientificName(), counter, parentCounts.size());
     }
 
+    @Override
+    public UsageMetricsHandler fork(List<Node> ancestors) {
+        UsageMetricsHandler fork = new UsageMetricsHandler(dao, cache);
+        for (Node p : ancestors) {
+            NameUsage u = dao.readUsage(p, false);
+            if (u.getRank() != null && u.getRank().isLinnean()) {
+                ClassificationUtils.setHigherRankKey(fork.classification, u.getRank(), (int) p.getId());
+                ClassificationUtils.setHigherRank(fork.classification, u.getRank(), u.getCanonicalOrScientificName());
+            }
+        }
+        fork.depth = ancestors.size();
+        // virtual parent collecting the counts for all ancestors outside the subtree
+        fork.parentCounts.add(new NameUsageMetrics());
+        return fork;
+    }
+
+    @Override
+    public void merge(Node subtreeRoot, MergeableStartEndHandler handler) {
+        UsageMetricsHandler fork = (UsageMetricsHandler) handler;
+        NameUsageMetrics subtree = fork.parentCounts.getFirst();
+        // the descendants of all ancestors are derived from the counter
+        counter += fork.counter;
+        roots += fork.roots;
+        maxDepth = Math.max(maxDepth, fork.maxDepth);
+        synonyms += fork.synonyms;
+        for (Rank r : Rank.LINNEAN_RANKS) {
+            if (r != Rank.KINGDOM && subtree.getNumByRank(r) > 0) {
+                for (NameUsageMetrics m : parentCounts) {
+                    setNumByRank(m, r, m.getNumByRank(r) + subtree.getNumByRank(r));
+                }
+            }
+        }
+        if (!parentCounts.isEmpty()) {
+            parentCounts.getLast().setNumChildren(parentCounts.getLast().getNumChildren() + subtree.getNumChildren());
+        }
+        addAll(countByOrigin, fork.countByOrigin);
+        addAll(countByRank, fork.countByRank);
+    }
+
+    private static <T> void addAll(Map<T, Integer> counts, Map<T, Integer> other) {
+        for (Map.Entry<T, Integer> e : other.entrySet()) {
+            Integer cnt = counts.get(e.getKey());
+            counts.put(e.getKey(), cnt == null ? e.getValue() : cnt + e.getValue());
+        }
+    }
+
     @Override
     public void end(Node n) {
         depth--;
-        NameUsage u = dao.readUsage(n, false);
+        NameUsage u = readUsage(n);
         // final data update
         NameUsageMetrics metrics = parentCounts.removeLast();
         metrics.setNumSynonyms(processSynonyms(n));
@@ -116,10 +180,16 @@ public class UsageMetricsHandler implements StartEndHandler {
      */
     private int processSynonyms(Node n) {
         int synCounter = 0;
-        for (Node syn : Traversals.SYNONYMS.traverse(n).nodes()) {
-            NameUsage u = dao.readUsage(syn, false);
-            synCounter++;
-            count(u);
+        if (cache == null) {
+            for (Node syn : Traversals.SYNONYMS.traverse(n).nodes()) {
+                synCounter++;
+                count(dao.readUsage(syn, false));
+            }
+        } else {
+            for (NameUsageNode syn : cache.readSynonyms(n)) {
+                synCounter++;
+                count(syn.usage);
+            }
         }
         synonyms = synonyms + synCounter;
         return synCounter;
@@ -43,7 +43,7 @@ import org.gbif.checklistbank.nub.validation.NubTreeValidation;
 import org.gbif.checklistbank.nub.validation.NubValidation;
 import org.gbif.checklistbank.utils.SciNameNormalizer;
 import org.gbif.nub.lookup.straight.IdLookup;
-import org.gbif.nub.lookup.straight.IdLookupImpl;
+import org.gbif.nub.lookup.straight.IdLookupOffHeap;
 import org.gbif.utils.collection.MapUtils;
 import org.gbif.utils.file.FileUtils;
 import org.neo4j.graphdb.*;
@@ -144,7 +144,7 @@ public class NubBuilder implements Runnable {
   public static NubBuilder create(NubConfiguration cfg) {
     UsageDao dao = UsageDao.persistentDao(cfg.neo, Constants.NUB_DATASET_KEY, null, true);
     try {
-      IdLookupImpl idLookup = IdLookupImpl.temp().load(cfg.clb, true);
+      IdLookupOffHeap idLookup = IdLookupOffHeap.backbone(cfg.clb, true);
       return new NubBuilder(dao, ClbSourceList.create(cfg), idLookup, idLookup.getAuthorComparator(), idLookup.getKeyMax() + 1, cfg);
     } catch (Exception e) {
       throw new IllegalStateException("Failed to load existing backbone ids", e);
@@ -10,12 +10,19 @@ import org.gbif.checklistbank.nub.model.NubUsage;
 import org.gbif.checklistbank.nub.model.SrcUsage;
 import org.gbif.checklistbank.nub.source.ClbSource;
 import org.gbif.checklistbank.service.DatasetImportService;
+import org.gbif.checklistbank.service.mybatis.mapper.NameUsageMapper;
 import org.gbif.nub.lookup.straight.DatasetMatchFailed;
 import org.gbif.nub.lookup.straight.IdLookup;
+import org.gbif.nub.lookup.straight.IdLookupOffHeap;
+import org.gbif.nub.lookup.straight.IdLookupSnapshot;
 import org.gbif.nub.lookup.straight.LookupUsage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.UUID;
 
@@ -37,6 +44,22 @@ public class NubMatchService {
     this.solrService = solrService;
   }
 
+  /**
+   * Loads the current backbone usages into a new lookup.
+   * If a snapshot file is given an existing, up to date snapshot is reused
+   * and only a missing or stale one is reloaded from postgres.
+   *
+   * @param mapper   name usage mapper used to detect stale snapshots
+   * @param snapshot optional persistent snapshot file
+   */
+  public static IdLookup loadLookup(ClbConfiguration cfg, NameUsageMapper mapper, @Nullable File snapshot) throws SQLException, IOException {
+    if (snapshot == null) {
+      // loads all nub usages directly from clb postgres - this can take a few minutes
+      return IdLookupOffHeap.backbone(cfg, false);
+    }
+    return IdLookupSnapshot.open(cfg, mapper, snapshot, false);
+  }
+
   /**
    * @return number of checklists that have been matched so far.
    */
@@ -12,8 +12,10 @@ import org.gbif.checklistbank.cli.model.GraphFormat;
 import org.gbif.checklistbank.model.UsageExtensions;
 import org.gbif.checklistbank.neo.Labels;
 import org.gbif.checklistbank.neo.NeoProperties;
+import org.gbif.checklistbank.neo.RelType;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.schema.IndexDefinition;
@@ -66,6 +68,12 @@ public class NormalizerTest extends BaseTest {
     assertThat(Normalizer.splitByCommonDelimiters("1234,135286 | 67.8231612")).containsExactly("1234,135286", "67.8231612");
   }
 
+  @Test
+  public void testCountRecords() throws Exception {
+    assertEquals(20, Normalizer.countRecords(cfg.archiveDir(datasetKey(1))));
+    assertEquals(-1, Normalizer.countRecords(cfg.archiveDir(UUID.randomUUID())));
+  }
+
   @Test
   public void testNeoIndices() throws Exception {
     final UUID datasetKey = datasetKey(1);
@@ -73,11 +81,24 @@ public class NormalizerTest extends BaseTest {
     Normalizer norm = Normalizer.create(cfg, datasetKey);
     norm.run();
 
+    List<StageStats> stages = norm.getStageStats();
+    assertEquals(5, stages.size());
+    assertEquals("batchInsertData", stages.get(0).getStage());
+    assertTrue(stages.get(0).getRecords() > 0);
+    assertEquals("normalize", stages.get(1).getStage());
+    assertEquals("applyDenormedClassification", stages.get(2).getStage());
+    assertEquals("cleanupRelations", stages.get(3).getStage());
+    assertEquals("buildMetricsAndMatchBackbone", stages.get(4).getStage());
+    for (StageStats s : stages) {
+      assertTrue(s.getPeakHeap() > 0);
+      assertTrue(s.getStoreAllocated() > 0);
+    }
+
     openDb(datasetKey);
     compareStats(norm.getStats());
 
+    // taxonIDs are looked up in the kvp store, not in a neo4j index
     Set<String> taxonIndices = Sets.newHashSet();
-    taxonIndices.add(NeoProperties.TAXON_ID);
     taxonIndices.add(NeoProperties.SCIENTIFIC_NAME);
     taxonIndices.add(NeoProperties.CANONICAL_NAME);
     try (Transaction tx = beginTx()) {
@@ -87,6 +108,10 @@ public class NormalizerTest extends BaseTest {
         assertTrue(idxProps.size() == 1);
         assertTrue(taxonIndices.remove(idxProps.get(0)));
       }
+      assertTrue(taxonIndices.isEmpty());
+
+      assertNotNull(dao.nodeByTaxonId("1001"));
+      assertNull(dao.nodeByTaxonId("x1001"));
 
       assertNotNull(Iterators.singleOrNull(dao.getNeo().findNodes(Labels.TAXON, NeoProperties.TAXON_ID, "1001")));
       assertNotNull(Iterators.singleOrNull(dao.getNeo().findNodes(Labels.TAXON, NeoProperties.SCIENTIFIC_NAME, "Crepis bakeri Greene")));
@@ -638,6 +663,31 @@ public class NormalizerTest extends BaseTest {
     }
   }
 
+  /**
+   * A synonym of a pro parte synonym gets relinked to all accepted taxa of the pro parte synonym,
+   * keeping a single synonym relation to the primary one which also receives its children.
+   */
+  @Test
+  public void testSynonymOfProParteSynonym() throws Exception {
+    normalize(24);
+    try (Transaction tx = beginTx()) {
+      final Node arvensis = dao.nodeByTaxonId("1000");
+      final Node incana = dao.nodeByTaxonId("1001");
+
+      Node syn = dao.nodeByTaxonId("1003");
+      assertEquals(arvensis, syn.getSingleRelationship(RelType.SYNONYM_OF, Direction.OUTGOING).getEndNode());
+      assertEquals(incana, syn.getSingleRelationship(RelType.PROPARTE_SYNONYM_OF, Direction.OUTGOING).getEndNode());
+      assertFalse(syn.hasRelationship(RelType.PARENT_OF));
+      assertTrue(getUsageByTaxonId("1003").getIssues().contains(NameUsageIssue.CHAINED_SYNOYM));
+
+      Node pp = dao.nodeByTaxonId("1002");
+      assertFalse(pp.hasRelationship(RelType.PARENT_OF));
+
+      // the child of the synonym moved to the primary accepted
+      assertEquals(getUsageByTaxonId("1000").getKey(), getUsageByTaxonId("10030").getParentKey());
+    }
+  }
+
   /**
    * Tests if the same verbatim parent gets reused and only one usage is created for it
    */
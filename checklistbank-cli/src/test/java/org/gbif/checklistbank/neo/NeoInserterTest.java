@@ -1,12 +1,15 @@
 package org.gbif.checklistbank.neo;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
 import org.gbif.api.model.checklistbank.NameUsage;
 import org.gbif.api.model.checklistbank.NameUsageContainer;
 import org.gbif.api.model.checklistbank.VerbatimNameUsage;
 import org.gbif.api.vocabulary.NameType;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.checklistbank.cli.normalizer.IgnoreNameUsageException;
+import org.gbif.checklistbank.cli.normalizer.InsertMetadata;
 import org.gbif.dwc.terms.DcTerm;
 import org.gbif.dwc.terms.DwcTerm;
 import org.gbif.dwc.terms.Term;
@@ -19,8 +22,14 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.Iterators;
 
+import java.io.File;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import static org.junit.Assert.*;
 
@@ -116,6 +125,8 @@ public class NeoInserterTest {
 
     try (Transaction tx = dao.beginTx()) {
       assertNotNull(Iterators.singleOrNull(dao.getNeo().findNodes(Labels.TAXON, NeoProperties.TAXON_ID, "1")));
+      assertNotNull(dao.nodeByTaxonId("1"));
+      assertNull(dao.nodeByTaxonId("2"));
     }
   }
 
@@ -231,4 +242,70 @@ public class NeoInserterTest {
     assertEquals("Abies x", NeoInserter.clean("Abies\u0000\u0001x"));
   }
 
-}
\ No newline at end of file
+  /**
+   * Makes sure the parallel insert pipeline creates exactly the same nodes in the same order as a single thread.
+   */
+  @Test
+  public void testParallelInsert() throws Exception {
+    File dwca = new File(getClass().getResource("/dwcas/00000001-c6af-11e2-9b88-00145eb45e9a").toURI());
+    Map<Long, String> expected = insertTaxonIDs(dwca, 1);
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, insertTaxonIDs(dwca, 4));
+  }
+
+  /**
+   * A writer failing early must not leave the reader blocked on the full queue.
+   */
+  @Test(timeout = 60000)
+  public void testParallelInsertWriterFails() throws Exception {
+    File dwca = Files.createTempDirectory("neoinserter").toFile();
+    UsageDao dao2 = UsageDao.temporaryDao(10);
+    try {
+      // many more records than fit into the queue with a duplicate taxonID early on
+      try (Writer w = Files.newBufferedWriter(new File(dwca, "taxa.txt").toPath(), StandardCharsets.UTF_8)) {
+        w.write("taxonID\tscientificName\n");
+        for (int i = 0; i < 10000; i++) {
+          w.write((i == 10 ? 1 : i) + "\tAbies alba" + i + " Mill.\n");
+        }
+      }
+      NeoInserter ins2 = dao2.createBatchInserter(100, 2);
+      try {
+        ins2.insert(dwca, Maps.<String, UUID>newHashMap());
+        fail("Duplicate taxonID expected");
+      } catch (NotUniqueRuntimeException e) {
+        // expected
+      }
+      ins2.close();
+
+      // the reader thread terminates
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        if (t.getName().startsWith("neo-inserter-reader")) {
+          t.join();
+        }
+      }
+    } finally {
+      dao2.closeAndDelete();
+      FileUtils.deleteQuietly(dwca);
+    }
+  }
+
+  private Map<Long, String> insertTaxonIDs(File dwca, int threads) throws Exception {
+    Map<Long, String> ids = Maps.newHashMap();
+    UsageDao dao2 = UsageDao.temporaryDao(10);
+    try {
+      NeoInserter ins2 = dao2.createBatchInserter(100, threads);
+      InsertMetadata meta = ins2.insert(dwca, Maps.<String, UUID>newHashMap());
+      ins2.close();
+      try (Transaction tx = dao2.beginTx()) {
+        for (Node n : dao2.getNeo().getAllNodes()) {
+          ids.put(n.getId(), (String) n.getProperty(NeoProperties.TAXON_ID));
+        }
+      }
+      assertEquals(meta.getRecords(), ids.size());
+    } finally {
+      dao2.closeAndDelete();
+    }
+    return ids;
+  }
+
+}
@@ -11,6 +11,7 @@ import org.gbif.api.vocabulary.Kingdom;
 import org.gbif.api.vocabulary.Origin;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.api.vocabulary.TaxonomicStatus;
+import org.gbif.checklistbank.cli.common.Metrics;
 import org.gbif.checklistbank.cli.common.NeoConfiguration;
 import org.gbif.checklistbank.cli.model.GraphFormat;
 import org.gbif.checklistbank.nub.model.NubUsage;
@@ -28,6 +29,9 @@ import java.util.Random;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class UsageDaoTest {
   private final static Random RND = new Random();
@@ -54,8 +58,12 @@ public class UsageDaoTest {
     UUID uuid = UUID.randomUUID();
     MetricRegistry reg = new MetricRegistry();
 
+    cfg.kryoBufferSizes.put("usages", 16);
     dao = UsageDao.persistentDao(cfg, uuid, reg, true);
     testDao();
+    final String usageSizes = dao.kvpSizeMetric("usages");
+    assertTrue(usageSizes.contains(uuid.toString()));
+    assertTrue(reg.histogram(usageSizes).getCount() > 0);
 
     // close and reopen. Make sure data survived
     dao.close();
@@ -69,6 +77,41 @@ public class UsageDaoTest {
     }
   }
 
+  @Test
+  public void autoMemoryUsageDao() throws Exception {
+    NeoConfiguration cfg = new NeoConfiguration();
+    cfg.neoRepository = Files.createTempDir();
+    cfg.autoMemory = true;
+    assertEquals(128, cfg.mappedMemory(-1, 1));
+    assertEquals(16, cfg.mappedMemory(1000, 1));
+    assertTrue(cfg.mappedMemory(1000000, 1) > 16);
+    // concurrent daos share the available memory
+    assertTrue(cfg.mappedMemory(Integer.MAX_VALUE, 1) > cfg.mappedMemory(Integer.MAX_VALUE, 4));
+    assertTrue(cfg.kvpAllocation(Integer.MAX_VALUE, 1) > cfg.kvpAllocation(Integer.MAX_VALUE, 4));
+
+    MetricRegistry reg = new MetricRegistry();
+    final UUID key1 = UUID.randomUUID();
+    dao = UsageDao.persistentDao(cfg, key1, reg, true, 1000, 2);
+    testDao();
+    final String hits1 = dao.pageCacheMetric(Metrics.PAGECACHE_HITS);
+    assertTrue(hits1.contains(key1.toString()));
+    assertNotNull(reg.getGauges().get(hits1).getValue());
+
+    // a concurrent dao for another dataset keeps the gauges of the first
+    UsageDao dao2 = UsageDao.persistentDao(cfg, UUID.randomUUID(), reg, true, 1000, 2);
+    final String hits2 = dao2.pageCacheMetric(Metrics.PAGECACHE_HITS);
+    assertTrue(reg.getGauges().containsKey(hits1));
+    assertTrue(reg.getGauges().containsKey(hits2));
+
+    dao2.closeAndDelete();
+    assertTrue(reg.getGauges().containsKey(hits1));
+    assertFalse(reg.getGauges().containsKey(hits2));
+
+    dao.closeAndDelete();
+    dao = null;
+    assertFalse(reg.getGauges().containsKey(hits1));
+  }
+
   @Test
   public void testTrees() throws Exception {
     try (ClasspathSource src = new ClasspathSource(41, true)) {
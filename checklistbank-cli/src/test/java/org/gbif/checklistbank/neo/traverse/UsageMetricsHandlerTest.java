@@ -10,7 +10,10 @@ import org.gbif.checklistbank.neo.RelType;
 import org.gbif.checklistbank.cli.model.NameUsageNode;
 import org.gbif.checklistbank.cli.model.UsageFacts;
 
+import java.util.Map;
+
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
@@ -23,29 +26,7 @@ public class UsageMetricsHandlerTest extends BaseTest {
   public void testClassificationHandler() {
     initDb();
 
-    try (Transaction tx = beginTx()) {
-      Node n = addNode(Rank.KINGDOM, "Animalia", null);
-      n.addLabel(Labels.ROOT);
-
-      n = addNode(Rank.KINGDOM, "Plantae", null);
-      n.addLabel(Labels.ROOT);
-
-      n = addNode(Rank.PHYLUM, "Pinophyta", n);
-      n = addNode(Rank.CLASS, "Pinalaea", n);
-      n = addNode(Rank.ORDER, "Pinales", n);
-      addNode(Rank.FAMILY, "Araucariaceae", n);
-      n = addNode(Rank.FAMILY, "Pinaceae", n);
-      n = addNode(Rank.SUBFAMILY, "Abiedea", n);
-      addNode(Rank.GENUS, "Pinus", n);
-      n = addNode(Rank.GENUS, "Abies", n);
-      addNode(Rank.SPECIES, "Abies Alpina DC.", n);
-      addNode(Rank.SPECIES, "Abies balkan L.", n);
-      n =addNode(Rank.SPECIES, "Abies alba Mill.", n);
-      addNode(Rank.SUBSPECIES, "Abies alba Mill. subsp. alba", n);
-      addNode(Rank.SUBSPECIES, "Abies alba subsp. alpina Mill.", n);
-
-      tx.success();
-    }
+    addTree();
 
     UsageMetricsHandler handler = new UsageMetricsHandler(dao);
     TreeWalker.walkAcceptedTree(dao.getNeo(), handler);
@@ -92,6 +73,86 @@ public class UsageMetricsHandlerTest extends BaseTest {
     }
   }
 
+  /**
+   * Walks the tree in small concurrent subtrees and makes sure metrics are the same as with a sequential walk.
+   */
+  @Test
+  public void testParallelWalk() {
+    initDb();
+    addTree();
+
+    UsageMetricsHandler handler = new UsageMetricsHandler(dao);
+    TreeWalker.walkAcceptedTree(dao.getNeo(), handler);
+    NormalizerStats expected = handler.getStats(0, Lists.<String>newArrayList());
+    Map<Long, UsageFacts> expectedFacts = Maps.newHashMap();
+    for (long id = 0; id < 15; id++) {
+      expectedFacts.put(id, dao.readFacts(id));
+    }
+
+    handler = new UsageMetricsHandler(dao);
+    TreeWalker.walkAcceptedTree(dao.getNeo(), 3, 1, 4, null, handler);
+    NormalizerStats stats = handler.getStats(0, Lists.<String>newArrayList());
+    assertEquals(expected.getRoots(), stats.getRoots());
+    assertEquals(expected.getDepth(), stats.getDepth());
+    assertEquals(expected.getCountByRank(), stats.getCountByRank());
+
+    for (long id = 0; id < 15; id++) {
+      UsageFacts facts = dao.readFacts(id);
+      assertEquals(expectedFacts.get(id).metrics, facts.metrics);
+      for (Rank r : Rank.LINNEAN_RANKS) {
+        assertEquals(expectedFacts.get(id).classification.getHigherRankKey(r), facts.classification.getHigherRankKey(r));
+      }
+    }
+  }
+
+  /**
+   * Walks the tree with a shared usage cache and makes sure results are the same and all entries get evicted.
+   */
+  @Test
+  public void testCachedWalk() {
+    initDb();
+    addTree();
+
+    UsageMetricsHandler handler = new UsageMetricsHandler(dao);
+    TreeWalker.walkAcceptedTree(dao.getNeo(), handler);
+    NormalizerStats expected = handler.getStats(0, Lists.<String>newArrayList());
+
+    UsageCache cache = new UsageCache(dao);
+    handler = new UsageMetricsHandler(dao, cache);
+    TreeWalker.walkAcceptedTree(dao.getNeo(), handler, cache);
+    NormalizerStats stats = handler.getStats(0, Lists.<String>newArrayList());
+    assertEquals(expected.getRoots(), stats.getRoots());
+    assertEquals(expected.getDepth(), stats.getDepth());
+    assertEquals(expected.getCountByRank(), stats.getCountByRank());
+    assertEquals(0, cache.size());
+  }
+
+  private void addTree() {
+    try (Transaction tx = beginTx()) {
+      Node n = addNode(Rank.KINGDOM, "Animalia", null);
+      n.addLabel(Labels.ROOT);
+
+      n = addNode(Rank.KINGDOM, "Plantae", null);
+      n.addLabel(Labels.ROOT);
+
+      n = addNode(Rank.PHYLUM, "Pinophyta", n);
+      n = addNode(Rank.CLASS, "Pinalaea", n);
+      n = addNode(Rank.ORDER, "Pinales", n);
+      addNode(Rank.FAMILY, "Araucariaceae", n);
+      n = addNode(Rank.FAMILY, "Pinaceae", n);
+      n = addNode(Rank.SUBFAMILY, "Abiedea", n);
+      addNode(Rank.GENUS, "Pinus", n);
+      n = addNode(Rank.GENUS, "Abies", n);
+      addNode(Rank.SPECIES, "Abies Alpina DC.", n);
+      addNode(Rank.SPECIES, "Abies balkan L.", n);
+      n =addNode(Rank.SPECIES, "Abies alba Mill.", n);
+      addNode(Rank.SUBSPECIES, "Abies alba Mill. subsp. alba", n);
+      addNode(Rank.SUBSPECIES, "Abies alba subsp. alpina Mill.", n);
+
+      tx.success();
+    }
+  }
+
   private void assertUsage(long id, Rank rank, LinneanClassificationKeys expected) {
     UsageFacts facts = dao.readFacts(id);
     for (Rank r : Rank.LINNEAN_RANKS) {
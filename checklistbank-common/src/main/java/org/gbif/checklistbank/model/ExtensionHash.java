@@ -0,0 +1,63 @@
+package org.gbif.checklistbank.model;
+
+import org.gbif.api.vocabulary.Extension;
+
+import java.util.Objects;
+
+/**
+ * Internal class used by mybatis layer to retrieve the content hash of a stored extension record.
+ */
+public class ExtensionHash {
+  private Extension extension;
+  private int key;
+  private Long hash;
+
+  public Extension getExtension() {
+    return extension;
+  }
+
+  public void setExtension(Extension extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return the primary key of the extension record
+   */
+  public int getKey() {
+    return key;
+  }
+
+  public void setKey(int key) {
+    this.key = key;
+  }
+
+  /**
+   * @return the content hash or null for records stored before hashes existed
+   */
+  public Long getHash() {
+    return hash;
+  }
+
+  public void setHash(Long hash) {
+    this.hash = hash;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(extension, key, hash);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    final ExtensionHash other = (ExtensionHash) obj;
+    return Objects.equals(this.extension, other.extension)
+        && Objects.equals(this.key, other.key)
+        && Objects.equals(this.hash, other.hash);
+  }
+}
@@ -53,6 +53,7 @@ public class NameUsageWritable implements LinneanClassificationKeys {
     private Date modified;
     private int numDescendants;
     private Set<NameUsageIssue> issues = Sets.newHashSet();
+    private Long hash;
 
     public Integer getKey() {
         return key;
@@ -292,6 +293,17 @@ public class NameUsageWritable implements LinneanClassificationKeys {
         this.sourceTaxonKey = sourceTaxonKey;
     }
 
+    /**
+     * @return content hash of the usage and its metrics used to detect unchanged usages during re-imports
+     */
+    public Long getHash() {
+        return hash;
+    }
+
+    public void setHash(Long hash) {
+        this.hash = hash;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof NameUsageWritable) {
@@ -312,7 +324,8 @@ public class NameUsageWritable implements LinneanClassificationKeys {
                     && Objects.equal(this.taxonID, that.taxonID)
                     && Objects.equal(this.sourceTaxonKey, that.sourceTaxonKey)
                     && Objects.equal(this.modified, that.modified) && Objects
-                    .equal(this.numDescendants, that.numDescendants) && Objects.equal(this.issues, that.issues);
+                    .equal(this.numDescendants, that.numDescendants) && Objects.equal(this.issues, that.issues)
+                    && Objects.equal(this.hash, that.hash);
         }
         return false;
     }
@@ -323,7 +336,7 @@ public class NameUsageWritable implements LinneanClassificationKeys {
                 .hashCode(key, datasetKey, constituentKey, nameKey, rank, parentKey, isSynonym, proParteKey, taxonomicStatus,
                         nomenclaturalStatus, basionymKey, kingdomKey, phylumKey, classKey, orderKey, familyKey, genusKey, subgenusKey,
                         speciesKey, publishedInKey, accordingToKey, origin, remarks, references, taxonID, sourceTaxonKey, modified, numDescendants,
-                        issues);
+                        issues, hash);
     }
 
 }
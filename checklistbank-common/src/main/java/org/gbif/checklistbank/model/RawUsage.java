@@ -14,6 +14,7 @@ public class RawUsage {
     private UUID datasetKey;
     private String json;
     private Date lastCrawled;
+    private Long hash;
 
     public Integer getUsageKey() {
         return usageKey;
@@ -47,6 +48,17 @@ public class RawUsage {
         this.json = json;
     }
 
+    /**
+     * @return content hash of the verbatim data and all extension records used to detect unchanged usages during re-imports
+     */
+    public Long getHash() {
+        return hash;
+    }
+
+    public void setHash(Long hash) {
+        this.hash = hash;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof RawUsage) {
@@ -54,14 +66,15 @@ public class RawUsage {
             return Objects.equal(this.usageKey, that.usageKey)
                     && Objects.equal(this.datasetKey, that.datasetKey)
                     && Objects.equal(this.lastCrawled, that.lastCrawled)
-                    && Objects.equal(this.json, that.json);
+                    && Objects.equal(this.json, that.json)
+                    && Objects.equal(this.hash, that.hash);
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(usageKey, datasetKey, json, lastCrawled);
+        return Objects.hashCode(usageKey, datasetKey, json, lastCrawled, hash);
     }
 
     @Override
@@ -71,6 +84,7 @@ public class RawUsage {
                 .add("datasetKey", datasetKey)
                 .add("json", json)
                 .add("lastCrawled", lastCrawled)
+                .add("hash", hash)
                 .toString();
     }
 }
@@ -0,0 +1,142 @@
+package org.gbif.checklistbank.postgres;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Encodes rows in the postgres text format to be loaded with the postgres jdbc copy command, e.g.
+ * COPY name_usage_sync (id, dataset_key, ...) FROM STDIN
+ *
+ * Null values are written as \N, collections as postgres array literals and enumerations by their name.
+ * This is the counterpart to the TabMapperBase which decodes copy results.
+ */
+public class TabEncoder {
+  private final StringBuilder sb = new StringBuilder();
+  private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+  private boolean rowStart = true;
+  private int rows;
+
+  /**
+   * Adds the next column value of the current row.
+   */
+  public TabEncoder add(Object value) {
+    if (!rowStart) {
+      sb.append('\t');
+    }
+    rowStart = false;
+    if (value == null) {
+      sb.append("\\N");
+    } else if (value instanceof Collection) {
+      appendArray((Collection<?>) value);
+    } else if (value instanceof Date) {
+      sb.append(dateFormat.format((Date) value));
+    } else if (value instanceof Enum) {
+      sb.append(((Enum<?>) value).name());
+    } else {
+      escape(value.toString());
+    }
+    return this;
+  }
+
+  /**
+   * Terminates the current row.
+   */
+  public void endRow() {
+    sb.append('\n');
+    rowStart = true;
+    rows++;
+  }
+
+  /**
+   * @return number of terminated rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * @return a reader over all terminated rows to be passed to the CopyManager
+   */
+  public Reader toReader() {
+    return new StringReader(sb.toString());
+  }
+
+  @Override
+  public String toString() {
+    return sb.toString();
+  }
+
+  private void appendArray(Collection<?> values) {
+    sb.append('{');
+    boolean first = true;
+    for (Object v : values) {
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      String x = v instanceof Enum ? ((Enum<?>) v).name() : v.toString();
+      // quote array elements and escape quotes and backslashes on both the array and the copy level
+      sb.append('"');
+      escape(x.replace("\\", "\\\\").replace("\"", "\\\""));
+      sb.append('"');
+    }
+    sb.append('}');
+  }
+
+  private void escape(String x) {
+    for (int i = 0; i < x.length(); i++) {
+      char c = x.charAt(i);
+      switch (c) {
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+  }
+
+  /**
+   * Reverts the backslash escaping of a single value from a copy result as decoded by the TabMapperBase.
+   */
+  public static String unescape(String x) {
+    if (x == null || x.indexOf('\\') < 0) {
+      return x;
+    }
+    StringBuilder sb = new StringBuilder(x.length());
+    for (int i = 0; i < x.length(); i++) {
+      char c = x.charAt(i);
+      if (c == '\\' && i + 1 < x.length()) {
+        char n = x.charAt(++i);
+        switch (n) {
+          case 't':
+            sb.append('\t');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          default:
+            sb.append(n);
+        }
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -1,5 +1,8 @@
 package org.gbif.checklistbank.service;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Persistence service dealing with simple reference citations.
  * This interface is restricted to the mybatis module only!
@@ -15,4 +18,16 @@ public interface CitationService {
      * Returns the key for an existing or newly inserted citation string.
      */
   Integer createOrGet(String citation, String doi, String link);
+
+  /**
+   * Batch version of createOrGet resolving all citation strings at once.
+   *
+   * @return keys for all non empty citations by their citation string
+   */
+  Map<String, Integer> createOrGet(Collection<String> citations);
+
+  /**
+   * Removes all cached citation keys, e.g. after a failed transaction might have rolled back newly inserted citations.
+   */
+  void invalidateCache();
 }
@@ -2,6 +2,8 @@ package org.gbif.checklistbank.service;
 
 import org.gbif.api.model.checklistbank.ParsedName;
 
+import java.util.List;
+
 /**
  * Persistence service dealing with parsed names.
  * This interface is restricted to the mybatis module only!
@@ -16,6 +18,14 @@ public interface ParsedNameService {
    */
   ParsedName createOrGet(ParsedName name, boolean update);
 
+  /**
+   * Batch version of createOrGet resolving all names of a list at once.
+   *
+   * @param update if true will update existing parsed names with the supplied versions
+   * @return the stored parsed names in the same order as the given names, null for empty names
+   */
+  List<ParsedName> createOrGet(List<ParsedName> names, boolean update);
+
   /**
    * Deletes all orphaned names without a name_usage linking to them
    *
@@ -29,4 +39,9 @@ public interface ParsedNameService {
    * @return number of changed parsed names
    */
   int reparseAll();
+
+  /**
+   * Removes all cached names, e.g. after a failed transaction might have rolled back newly inserted names.
+   */
+  void invalidateCache();
 }
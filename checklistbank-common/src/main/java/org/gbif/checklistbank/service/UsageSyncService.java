@@ -6,6 +6,7 @@ import org.gbif.api.model.checklistbank.ParsedName;
 import org.gbif.api.model.checklistbank.VerbatimNameUsage;
 import org.gbif.checklistbank.model.UsageExtensions;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import javax.annotation.Nullable;
@@ -17,6 +18,29 @@ public interface UsageSyncService {
 
   int syncUsage(boolean insert, NameUsage usage, ParsedName pn, NameUsageMetrics metrics);
 
+  /**
+   * Syncs a batch of usages with already assigned usage keys in a few set based statements.
+   * Usages with an existing key are updated, all others inserted with their given key.
+   * Self references of -1 are replaced with the usage key.
+   *
+   * @param usages list of usages with keys
+   * @param names list of names, same order and length as usages
+   * @param metrics list of metrics, same order and length as usages
+   */
+  void syncUsages(UUID datasetKey, List<NameUsage> usages, List<ParsedName> names, List<NameUsageMetrics> metrics);
+
+  /**
+   * @return map of taxonIDs to the existing usage key of a dataset
+   */
+  Map<String, Integer> listTaxonKeys(UUID datasetKey);
+
+  /**
+   * Reserves new usage keys to be used for inserts with syncUsages.
+   *
+   * @param size number of keys to reserve
+   */
+  List<Integer> nextKeys(int size);
+
   void syncUsageExtras(boolean insert, UUID datasetKey, int usageKey, @Nullable VerbatimNameUsage verbatim, @Nullable UsageExtensions extensions);
 
   void updateForeignKeys(int usageKey, Integer parentKey, Integer basionymKey);
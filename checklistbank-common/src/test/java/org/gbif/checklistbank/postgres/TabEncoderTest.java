@@ -0,0 +1,37 @@
+package org.gbif.checklistbank.postgres;
+
+import org.gbif.api.vocabulary.NameUsageIssue;
+import org.gbif.api.vocabulary.Rank;
+
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TabEncoderTest {
+
+  @Test
+  public void testEncode() throws Exception {
+    UUID uuid = UUID.fromString("d7dddbf4-2cf0-4f39-9b2a-bb099caae36c");
+    TabEncoder enc = new TabEncoder();
+    enc.add(1).add(uuid).add(null).add(Rank.SPECIES).add(true).endRow();
+    enc.add("Abies\talba\nMill.").add("C:\\dir").add(ImmutableList.of(NameUsageIssue.RANK_INVALID, NameUsageIssue.BACKBONE_MATCH_NONE)).endRow();
+    enc.add(ImmutableList.of("a\"b", "c\\d")).add(ImmutableList.of()).endRow();
+
+    assertEquals(3, enc.getRows());
+    assertEquals("1\t" + uuid + "\t\\N\tSPECIES\ttrue\n" +
+        "Abies\\talba\\nMill.\tC:\\\\dir\t{\"RANK_INVALID\",\"BACKBONE_MATCH_NONE\"}\n" +
+        "{\"a\\\\\"b\",\"c\\\\\\\\d\"}\t{}\n", enc.toString());
+  }
+
+  @Test
+  public void testUnescape() throws Exception {
+    assertNull(TabEncoder.unescape(null));
+    assertEquals("Abies", TabEncoder.unescape("Abies"));
+    assertEquals("Abies\talba\nMill.", TabEncoder.unescape("Abies\\talba\\nMill."));
+    assertEquals("C:\\dir", TabEncoder.unescape("C:\\\\dir"));
+  }
+}
@@ -5,18 +5,44 @@ import org.gbif.checklistbank.model.Citation;
 import org.gbif.checklistbank.service.CitationService;
 import org.gbif.checklistbank.service.mybatis.mapper.CitationMapper;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import org.apache.ibatis.exceptions.PersistenceException;
-import org.mybatis.guice.transactional.Transactional;
+import org.apache.ibatis.session.SqlSessionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Citation service keeping a bounded cache of citation keys by their citation text,
+ * as the same citations are repeated very often within and across datasets.
+ * Keys are only added to the cache once the transaction they were read or created in has been committed
+ * and expire after a while, as orphaned citations can be deleted by other processes.
+ */
 public class CitationServiceMyBatis implements CitationService {
     private static final Logger LOG = LoggerFactory.getLogger(ParsedNameServiceMyBatis.class);
+    private static final int CACHE_SIZE = 50000;
+    private static final int CACHE_EXPIRY_MINUTES = 30;
     private CitationMapper mapper;
+    private final Cache<String, Integer> cache = CacheBuilder.newBuilder()
+        .maximumSize(CACHE_SIZE)
+        .expireAfterWrite(CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .concurrencyLevel(8)
+        .build();
+
+    @Inject
+    @VisibleForTesting
+    SqlSessionManager sessionManager;
 
     @Inject
     CitationServiceMyBatis(CitationMapper mapper) {
@@ -43,17 +69,85 @@ public class CitationServiceMyBatis implements CitationService {
         }
     }
 
-    @Transactional
-    public Integer createOrGetThrowing(String citation, @Nullable String doi, @Nullable String link) {
-        Integer key = mapper.getByCitation(citation);
+    /**
+     * Joins the transaction of the caller if one exists, otherwise runs in a new one.
+     */
+    private Integer createOrGetThrowing(String citation, @Nullable String doi, @Nullable String link) {
+        Integer key = cache.getIfPresent(citation);
         if (key == null) {
-            Citation c = new Citation(citation);
-            c.setDoi(doi);
-            c.setLink(link);
-            mapper.insert(c);
-            key = c.getKey();
+            key = Transactions.inTransaction(sessionManager, () -> {
+                Integer k = mapper.getByCitation(citation);
+                if (k == null) {
+                    Citation c = new Citation(citation);
+                    c.setDoi(doi);
+                    c.setLink(link);
+                    mapper.insert(c);
+                    k = c.getKey();
+                }
+                final Integer committedKey = k;
+                Transactions.afterCommit(sessionManager, () -> cache.put(citation, committedKey));
+                return k;
+            });
         }
         return key;
     }
 
+    /**
+     * @return the cached key of a citation or null if not cached
+     */
+    @VisibleForTesting
+    Integer cached(String citation) {
+        return cache.getIfPresent(citation);
+    }
+
+    /**
+     * Resolves all uncached citations with a single lookup query and inserts all missing ones at once.
+     * Concurrently inserted citations are ignored by the insert and read afterwards, so there is no need for retries.
+     * Joins the transaction of the caller if one exists, otherwise runs in a new one.
+     */
+    @Override
+    public Map<String, Integer> createOrGet(Collection<String> citations) {
+        return Transactions.inTransaction(sessionManager, () -> createOrGetInTransaction(citations));
+    }
+
+    private Map<String, Integer> createOrGetInTransaction(Collection<String> citations) {
+        Map<String, Integer> keys = Maps.newHashMap();
+        Set<String> missing = Sets.newHashSet();
+        for (String citation : citations) {
+            if (!Strings.isNullOrEmpty(citation)) {
+                Integer key = cache.getIfPresent(citation);
+                if (key == null) {
+                    missing.add(citation);
+                } else {
+                    keys.put(citation, key);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            // keys read or created in this transaction, cached only once it got committed
+            final Map<String, Integer> resolved = Maps.newHashMap();
+            load(missing, resolved);
+            missing.removeAll(resolved.keySet());
+            if (!missing.isEmpty()) {
+                mapper.insertMissing(missing.toArray(new String[missing.size()]));
+                load(missing, resolved);
+            }
+            keys.putAll(resolved);
+            Transactions.afterCommit(sessionManager, () -> cache.putAll(resolved));
+        }
+        return keys;
+    }
+
+    private void load(Set<String> citations, Map<String, Integer> keys) {
+        for (Citation c : mapper.listByCitations(citations.toArray(new String[citations.size()]))) {
+            keys.put(c.getCitation(), c.getKey());
+        }
+    }
+
+    @Override
+    public void invalidateCache() {
+        LOG.debug("Invalidate {} cached citations", cache.size());
+        cache.invalidateAll();
+    }
+
 }
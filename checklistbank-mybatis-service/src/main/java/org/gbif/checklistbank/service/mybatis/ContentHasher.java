@@ -0,0 +1,90 @@
+package org.gbif.checklistbank.service.mybatis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * Computes stable content hashes of model objects to detect unchanged records during re-imports.
+ * Objects are serialized to json with all object properties sorted by name,
+ * so the hash does not depend on the field order of a class or the iteration order of hash based maps.
+ * Arrays keep their order as a reordered list is a real change of content, apart from the explicitly given
+ * properties holding sets which are sorted so their hash does not depend on the iteration order of the set.
+ * Properties holding volatile values like database keys or crawling dates can be excluded on all levels.
+ * The hasher is thread safe.
+ */
+public class ContentHasher {
+  private static final HashFunction HASH_FUNC = Hashing.murmur3_128();
+  private static final Ordering<Object> VALUE_ORDER = Ordering.usingToString();
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Set<String> setProperties;
+  private final Set<String> ignoredProperties;
+
+  /**
+   * @param setProperties names of properties holding sets on any level
+   * @param ignoredProperties names of properties to exclude from the hash on any level
+   */
+  public ContentHasher(Set<String> setProperties, String... ignoredProperties) {
+    mapper.configure(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS, false);
+    this.setProperties = ImmutableSet.copyOf(setProperties);
+    this.ignoredProperties = ImmutableSet.copyOf(ignoredProperties);
+  }
+
+  /**
+   * @return a 64 bit hash over the content of all given objects
+   */
+  public long hash(Object... objects) {
+    Hasher hasher = HASH_FUNC.newHasher();
+    for (Object obj : objects) {
+      if (obj != null) {
+        hasher.putString(normalize(mapper.valueToTree(obj), false).toString(), Charsets.UTF_8);
+      }
+      // separate objects so the hash of (a, null) differs from (null, a)
+      hasher.putByte((byte) 0);
+    }
+    return hasher.hash().asLong();
+  }
+
+  /**
+   * @param unordered true if the node is the value of a set property
+   */
+  private JsonNode normalize(JsonNode node, boolean unordered) {
+    if (node.isObject()) {
+      List<String> fields = Lists.newArrayList(node.getFieldNames());
+      Collections.sort(fields);
+      ObjectNode sorted = mapper.createObjectNode();
+      for (String field : fields) {
+        if (!ignoredProperties.contains(field)) {
+          sorted.put(field, normalize(node.get(field), setProperties.contains(field)));
+        }
+      }
+      return sorted;
+
+    } else if (node.isArray()) {
+      List<JsonNode> values = Lists.newArrayList();
+      for (JsonNode x : node) {
+        values.add(normalize(x, false));
+      }
+      if (unordered) {
+        Collections.sort(values, VALUE_ORDER);
+      }
+      ArrayNode array = mapper.createArrayNode();
+      array.addAll(values);
+      return array;
+    }
+    return node;
+  }
+}
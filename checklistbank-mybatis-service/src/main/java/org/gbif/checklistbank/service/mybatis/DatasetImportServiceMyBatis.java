@@ -1,5 +1,6 @@
 package org.gbif.checklistbank.service.mybatis;
 
+import org.gbif.api.model.Constants;
 import org.gbif.api.model.checklistbank.NameUsage;
 import org.gbif.api.model.checklistbank.NameUsageMetrics;
 import org.gbif.api.model.checklistbank.ParsedName;
@@ -15,18 +16,22 @@ import org.gbif.utils.concurrent.ExecutorUtils;
 import org.gbif.utils.concurrent.NamedThreadFactory;
 
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -49,6 +54,8 @@ public class DatasetImportServiceMyBatis implements DatasetImportService, AutoCl
   private final UsageSyncService syncService;
   private ExecutorService exec;
   private ConcurrentLinkedQueue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+  // existing usage keys by taxonID for each running import, released once the importer is gone
+  private final Cache<ImporterCallback, Map<String, Integer>> taxonKeys = CacheBuilder.newBuilder().weakKeys().build();
 
   @Inject
   public DatasetImportServiceMyBatis(UsageSyncService importService, @Mybatis Integer threads) {
@@ -57,6 +64,22 @@ public class DatasetImportServiceMyBatis implements DatasetImportService, AutoCl
     exec = Executors.newFixedThreadPool(threads, new NamedThreadFactory(NAME));
   }
 
+  /**
+   * @return map of taxonIDs to existing usage keys, loaded once per import
+   */
+  private Map<String, Integer> taxonKeys(ImporterCallback dao, final UUID datasetKey) {
+    try {
+      return taxonKeys.get(dao, new Callable<Map<String, Integer>>() {
+        @Override
+        public Map<String, Integer> call() throws Exception {
+          return syncService.listTaxonKeys(datasetKey);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to load existing usage keys for dataset " + datasetKey, e.getCause());
+    }
+  }
+
   private <T> Future<T> addTask(Callable<T> task) {
     Future<T> f = exec.submit(task);
     tasks.add(f);
@@ -69,6 +92,7 @@ public class DatasetImportServiceMyBatis implements DatasetImportService, AutoCl
     final ImporterCallback dao;
     private Map<Integer, Integer> usageKeys;
     private Set<Integer> inserts;
+    private final LinkedList<Integer> newKeys = Lists.newLinkedList();
     private int firstId = -1;
 
     /**
@@ -108,18 +132,19 @@ public class DatasetImportServiceMyBatis implements DatasetImportService, AutoCl
       return neoKeys;
     }
 
-    @Transactional(
-        exceptionMessage = "usage sync job failed",
-        executorType = ExecutorType.REUSE
-    )
+    /**
+     * Assigns usage keys to all usages of the batch without touching the database
+     * and syncs them all at once with a bulk copy.
+     * The keys are reported to the importer right away as usages further down the batch can refer to them.
+     */
     private void write(List<Integer> neoNodeIdbatch) throws Exception {
+      List<NameUsage> us = Lists.newArrayListWithCapacity(neoNodeIdbatch.size());
+      List<ParsedName> names = Lists.newArrayListWithCapacity(neoNodeIdbatch.size());
+      List<NameUsageMetrics> metrics = Lists.newArrayListWithCapacity(neoNodeIdbatch.size());
       for (Integer id : neoNodeIdbatch) {
         NameUsage u = dao.readUsage(id);
-        ParsedName pn = dao.readName(id);
-        NameUsageMetrics m = dao.readMetrics(id);
-
         boolean insert = dao.isInsert(u);
-        syncService.syncUsage(insert, u, pn, m);
+        assignKey(u);
 
         // remember usageKey and things about this record
         if (insert) {
@@ -128,6 +153,27 @@ public class DatasetImportServiceMyBatis implements DatasetImportService, AutoCl
         usageKeys.put(id, u.getKey());
         // tell main importer about the new usageKey so we can prepare usages with good foreign keys
         dao.reportUsageKey(id, u.getKey());
+
+        us.add(u);
+        names.add(dao.readName(id));
+        metrics.add(dao.readMetrics(id));
+      }
+      syncService.syncUsages(datasetKey, us, names, metrics);
+    }
+
+    /**
+     * Finds the previous usageKey based on the dataset specific taxonID, the source identifier for all non backbone usages.
+     * New usages get a key reserved from the postgres sequence.
+     */
+    private void assignKey(NameUsage u) {
+      if (!Constants.NUB_DATASET_KEY.equals(datasetKey)) {
+        u.setKey(taxonKeys(dao, datasetKey).get(u.getTaxonID()));
+      }
+      if (u.getKey() == null) {
+        if (newKeys.isEmpty()) {
+          newKeys.addAll(syncService.nextKeys(BATCH_SIZE));
+        }
+        u.setKey(newKeys.removeFirst());
       }
     }
   }
@@ -3,23 +3,65 @@ package org.gbif.checklistbank.service.mybatis;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
+import org.apache.commons.beanutils.BeanUtils;
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSessionManager;
 import org.gbif.api.exception.UnparsableException;
 import org.gbif.api.model.checklistbank.ParsedName;
 import org.gbif.api.service.checklistbank.NameParser;
+import org.gbif.checklistbank.postgres.TabEncoder;
 import org.gbif.checklistbank.service.ParsedNameService;
 import org.gbif.checklistbank.service.mybatis.mapper.ParsedNameMapper;
-import org.mybatis.guice.transactional.Transactional;
+import org.postgresql.PGConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsed name service keeping a bounded cache of stored names by their scientific name and rank,
+ * so frequently synced names do not need to be read from postgres again.
+ * The cache is shared by all import threads and cleared whenever names are deleted or reparsed in bulk.
+ * Names are only added to the cache once the transaction they were read or created in has been committed.
+ * As orphaned names can also be deleted by other processes cached names expire after a while.
+ */
 public class ParsedNameServiceMyBatis implements ParsedNameService {
   private static final Logger LOG = LoggerFactory.getLogger(ParsedNameServiceMyBatis.class);
+  private static final int CACHE_SIZE = 100000;
+  private static final int CACHE_EXPIRY_MINUTES = 30;
+  // columns of the name_sync staging table in the order written by insert
+  private static final String NAME_SYNC_COLUMNS = "scientific_name, canonical_name, type, " +
+      "genus_or_above, infra_generic, specific_epithet, infra_specific_epithet, cultivar_epithet, " +
+      "notho_type, rank, parsed_partially, parsed, authorship, year, year_int, bracket_authorship, bracket_year, " +
+      "nom_status, sensu, remarks, strain";
   private ParsedNameMapper mapper;
   private NameParser parser;
+  private final Cache<String, ParsedName> cache = CacheBuilder.newBuilder()
+      .maximumSize(CACHE_SIZE)
+      .expireAfterWrite(CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+      .concurrencyLevel(8)
+      .build();
+
+  @Inject
+  private SqlSessionManager sessionManager;
 
   @Inject
   ParsedNameServiceMyBatis(ParsedNameMapper mapper, NameParser parser) {
@@ -38,31 +80,213 @@ public class ParsedNameServiceMyBatis implements ParsedNameService {
     }
     Preconditions.checkNotNull(preParsed.getType(), preParsed.getScientificName() + " lacks name type");
 
+    ParsedName cached = fromCache(preParsed, update);
+    if (cached != null) {
+      return cached;
+    }
+
+    ParsedName pn;
     try {
-      return createOrGetThrowing(preParsed, update);
+      pn = createOrGetThrowing(preParsed, update);
     } catch (PersistenceException e) {
       // we have a unique constraint in the database which can throw an exception when we concurrently write the same name into the table
       // try to read and ignore exception if we can read the name
       LOG.warn("Inserting name >>>{}<<< failed, try to re-read", preParsed.getScientificName());
-      return createOrGetThrowing(preParsed, update);
+      pn = createOrGetThrowing(preParsed, update);
     }
+    cacheAfterCommit(cacheKey(preParsed), pn);
+    return pn;
   }
 
-  @Transactional
-  private ParsedName createOrGetThrowing(ParsedName preParsed, boolean update) throws PersistenceException {
-    ParsedName pn = mapper.getByName(preParsed.getScientificName(), preParsed.getRank());
-    if (pn == null) {
-      // try to write the name to postgres
-      mapper.create(preParsed);
-    } else if (update && !pn.equals(preParsed)) {
-      // is it different?
-      preParsed.setKey(pn.getKey());
-      mapper.update(preParsed);
-
-    } else {
-      return pn;
+  /**
+   * Caches the name once the current transaction has been committed, so other threads never see keys of rolled back names.
+   */
+  private void cacheAfterCommit(String key, ParsedName pn) {
+    final ParsedName copy = clone(pn);
+    Transactions.afterCommit(sessionManager, () -> cache.put(key, copy));
+  }
+
+  private static String cacheKey(ParsedName pn) {
+    return pn.getRank() + "|" + pn.getScientificName();
+  }
+
+  /**
+   * @return the cached name or null if not cached or an update is needed
+   */
+  private ParsedName fromCache(ParsedName preParsed, boolean update) {
+    ParsedName cached = cache.getIfPresent(cacheKey(preParsed));
+    if (cached != null) {
+      if (!update) {
+        return clone(cached);
+      }
+      // only an unchanged name can skip the update
+      preParsed.setKey(cached.getKey());
+      if (cached.equals(preParsed)) {
+        return preParsed;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Resolves all names not cached yet with a single lookup query and inserts all missing names at once,
+   * streaming them into a staging table with the postgres copy command.
+   * Concurrently inserted names are ignored by the insert and read afterwards, so there is no need for retries.
+   * Joins the transaction of the caller if one exists, otherwise runs in a new one.
+   */
+  @Override
+  public List<ParsedName> createOrGet(List<ParsedName> names, boolean update) {
+    return Transactions.inTransaction(sessionManager, () -> createOrGetInTransaction(names, update));
+  }
+
+  private List<ParsedName> createOrGetInTransaction(List<ParsedName> names, boolean update) {
+    List<ParsedName> result = Lists.newArrayList(Collections.<ParsedName>nCopies(names.size(), null));
+    // uncached names by their cache key and their positions in the list
+    Map<String, ParsedName> missing = Maps.newLinkedHashMap();
+    ListMultimap<String, Integer> positions = ArrayListMultimap.create();
+    for (int idx = 0; idx < names.size(); idx++) {
+      ParsedName preParsed = names.get(idx);
+      if (preParsed == null || Strings.isNullOrEmpty(preParsed.getScientificName())) {
+        continue;
+      }
+      Preconditions.checkNotNull(preParsed.getType(), preParsed.getScientificName() + " lacks name type");
+      ParsedName cached = fromCache(preParsed, update);
+      if (cached != null) {
+        result.set(idx, cached);
+      } else {
+        String key = cacheKey(preParsed);
+        if (!missing.containsKey(key)) {
+          missing.put(key, preParsed);
+        }
+        positions.put(key, idx);
+      }
+    }
+    if (missing.isEmpty()) {
+      return result;
+    }
+
+    Map<String, ParsedName> stored = listByNames(missing.values());
+    Set<String> created = Sets.newHashSet(missing.keySet());
+    created.removeAll(stored.keySet());
+    if (!created.isEmpty()) {
+      List<ParsedName> newNames = Lists.newArrayList();
+      for (String key : created) {
+        newNames.add(missing.get(key));
+      }
+      insert(newNames);
+      stored.putAll(listByNames(newNames));
+    }
+
+    // names read or created in this transaction, cached only once it got committed
+    final Map<String, ParsedName> resolved = Maps.newHashMap();
+    for (Map.Entry<String, ParsedName> e : missing.entrySet()) {
+      ParsedName preParsed = e.getValue();
+      ParsedName pn = stored.get(e.getKey());
+      if (pn == null) {
+        throw new IllegalStateException("Failed to create name " + preParsed.getScientificName());
+      }
+      if (update && !created.contains(e.getKey()) && !pn.equals(preParsed)) {
+        preParsed.setKey(pn.getKey());
+        mapper.update(preParsed);
+        pn = preParsed;
+      }
+      resolved.put(e.getKey(), clone(pn));
+      for (Integer idx : positions.get(e.getKey())) {
+        result.set(idx, pn);
+      }
+    }
+    Transactions.afterCommit(sessionManager, () -> cache.putAll(resolved));
+    return result;
+  }
+
+  /**
+   * @return existing names by their cache key
+   */
+  private Map<String, ParsedName> listByNames(Collection<ParsedName> names) {
+    String[] sciNames = new String[names.size()];
+    String[] ranks = new String[names.size()];
+    int idx = 0;
+    for (ParsedName pn : names) {
+      sciNames[idx] = pn.getScientificName();
+      ranks[idx] = pn.getRank() == null ? null : pn.getRank().name();
+      idx++;
+    }
+    Map<String, ParsedName> stored = Maps.newHashMap();
+    for (ParsedName pn : mapper.listByNames(sciNames, ranks)) {
+      String key = cacheKey(pn);
+      if (!stored.containsKey(key)) {
+        stored.put(key, pn);
+      }
+    }
+    return stored;
+  }
+
+  private void insert(List<ParsedName> names) {
+    TabEncoder rows = new TabEncoder();
+    for (ParsedName pn : names) {
+      rows.add(pn.getScientificName())
+          .add(pn.canonicalName())
+          .add(pn.getType())
+          .add(pn.getGenusOrAbove())
+          .add(pn.getInfraGeneric())
+          .add(pn.getSpecificEpithet())
+          .add(pn.getInfraSpecificEpithet())
+          .add(pn.getCultivarEpithet())
+          .add(pn.getNotho())
+          .add(pn.getRank())
+          .add(pn.isParsedPartially())
+          .add(pn.isParsed())
+          .add(pn.getAuthorship())
+          .add(pn.getYear())
+          .add(pn.getYearInt())
+          .add(pn.getBracketAuthorship())
+          .add(pn.getBracketYear())
+          .add(pn.getNomStatus())
+          .add(pn.getSensu())
+          .add(pn.getRemarks())
+          .add(pn.getStrain())
+          .endRow();
+    }
+    mapper.createSyncTable();
+    try {
+      sessionManager.getConnection().unwrap(PGConnection.class).getCopyAPI()
+          .copyIn("COPY name_sync (" + NAME_SYNC_COLUMNS + ") FROM STDIN WITH NULL '\\N'", rows.toReader());
+    } catch (SQLException | IOException e) {
+      throw new IllegalStateException("Failed to copy " + names.size() + " names into staging table", e);
     }
-    return preParsed;
+    mapper.insertFromSyncTable();
+    LOG.debug("Inserted {} new names", names.size());
+  }
+
+  private static ParsedName clone(ParsedName pn) {
+    ParsedName pn2 = new ParsedName();
+    try {
+      BeanUtils.copyProperties(pn2, pn);
+    } catch (Exception e) {
+      Throwables.propagate(e);
+    }
+    return pn2;
+  }
+
+  /**
+   * Joins the transaction of the caller if one exists, otherwise runs in a new one.
+   */
+  private ParsedName createOrGetThrowing(ParsedName preParsed, boolean update) throws PersistenceException {
+    return Transactions.inTransaction(sessionManager, () -> {
+      ParsedName pn = mapper.getByName(preParsed.getScientificName(), preParsed.getRank());
+      if (pn == null) {
+        // try to write the name to postgres
+        mapper.create(preParsed);
+      } else if (update && !pn.equals(preParsed)) {
+        // is it different?
+        preParsed.setKey(pn.getKey());
+        mapper.update(preParsed);
+
+      } else {
+        return pn;
+      }
+      return preParsed;
+    });
   }
 
   @Override
@@ -78,14 +302,23 @@ public class ParsedNameServiceMyBatis implements ParsedNameService {
         deletedAll = deletedAll + deleted;
       }
     }
+    // cached names might point to deleted records now
+    invalidateCache();
     return deletedAll;
   }
 
+  @Override
+  public void invalidateCache() {
+    LOG.debug("Invalidate {} cached names", cache.size());
+    cache.invalidateAll();
+  }
+
 
   @Override
   public int reparseAll() {
     ReparseHandler handler = new ReparseHandler();
     mapper.processNames(handler);
+    invalidateCache();
     LOG.info("Reparsed all {} names, {} changed, {} failed: hybrids={}, virus={}, placeholder={}, noname={}",
         handler.counter, handler.changed, handler.failed, handler.hybrids, handler.virus, handler.placeholder, handler.noname);
     return handler.changed;
@@ -0,0 +1,74 @@
+package org.gbif.checklistbank.service.mybatis;
+
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Explicit demarcation of transactions in the managed session of the current thread
+ * which allows to run code only once the data written has been committed.
+ * Mybatis-guice does not offer any hooks for this, so transactions needing after commit callbacks
+ * have to be started with {@link #inTransaction(SqlSessionManager, Supplier)} instead of the Transactional annotation.
+ */
+class Transactions {
+  private static final Logger LOG = LoggerFactory.getLogger(Transactions.class);
+  // callbacks of the transaction started by inTransaction, null if there is none
+  private static final ThreadLocal<List<Runnable>> AFTER_COMMIT = new ThreadLocal<>();
+
+  private Transactions() {
+  }
+
+  /**
+   * Runs the work in the managed session of the current thread.
+   * If no session was started yet a new one is started and committed afterwards, rolling back on any exception.
+   * Otherwise the work just joins the existing session.
+   */
+  static <T> T inTransaction(SqlSessionManager session, Supplier<T> work) {
+    if (session.isManagedSessionStarted()) {
+      return work.get();
+    }
+    final List<Runnable> callbacks = Lists.newArrayList();
+    AFTER_COMMIT.set(callbacks);
+    session.startManagedSession();
+    try {
+      T result = work.get();
+      session.commit(true);
+      for (Runnable callback : callbacks) {
+        callback.run();
+      }
+      return result;
+
+    } catch (RuntimeException e) {
+      LOG.debug("Rollback transaction", e);
+      session.rollback(true);
+      throw e;
+
+    } finally {
+      AFTER_COMMIT.remove();
+      session.close();
+    }
+  }
+
+  /**
+   * Runs the callback once the transaction of the current thread has been committed and never if it is rolled back.
+   * Without a managed session all statements are committed straight away, so the callback is run immediately.
+   * Inside a managed session not started by {@link #inTransaction(SqlSessionManager, Supplier)} the commit
+   * cannot be observed and the callback is dropped.
+   */
+  static void afterCommit(SqlSessionManager session, Runnable callback) {
+    if (!session.isManagedSessionStarted()) {
+      callback.run();
+    } else {
+      List<Runnable> callbacks = AFTER_COMMIT.get();
+      if (callbacks != null) {
+        callbacks.add(callback);
+      } else {
+        LOG.debug("Drop after commit callback of a transaction not started explicitly");
+      }
+    }
+  }
+}
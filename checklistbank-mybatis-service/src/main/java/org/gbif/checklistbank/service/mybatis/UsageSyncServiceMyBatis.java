@@ -4,30 +4,49 @@ import com.codahale.metrics.Meter;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
+import com.zaxxer.hikari.pool.ProxyConnection;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionManager;
 import org.apache.ibatis.session.TransactionIsolationLevel;
 import org.gbif.api.model.Constants;
 import org.gbif.api.model.checklistbank.*;
 import org.gbif.api.model.common.Identifier;
 import org.gbif.api.util.ClassificationUtils;
+import org.gbif.api.vocabulary.Extension;
 import org.gbif.api.vocabulary.IdentifierType;
 import org.gbif.api.vocabulary.NameUsageIssue;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.checklistbank.logging.LogContext;
+import org.gbif.checklistbank.model.ExtensionHash;
 import org.gbif.checklistbank.model.NameUsageWritable;
 import org.gbif.checklistbank.model.RawUsage;
 import org.gbif.checklistbank.model.UsageExtensions;
+import org.gbif.checklistbank.postgres.TabEncoder;
+import org.gbif.checklistbank.postgres.TabMapperBase;
 import org.gbif.checklistbank.service.CitationService;
 import org.gbif.checklistbank.service.ParsedNameService;
 import org.gbif.checklistbank.service.UsageSyncService;
 import org.gbif.checklistbank.service.mybatis.mapper.*;
 import org.mybatis.guice.transactional.Transactional;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -37,6 +56,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class UsageSyncServiceMyBatis implements UsageSyncService {
 
   private static final Logger LOG = LoggerFactory.getLogger(UsageSyncServiceMyBatis.class);
+  // columns of the name_usage_sync staging table in the order written by addUsageRow
+  private static final String USAGE_SYNC_COLUMNS = "id, dataset_key, constituent_key, name_fk, rank, parent_fk, is_synonym, status, " +
+      "nom_status, issues, name_published_in_fk, according_to_fk, origin, remarks, \"references\", taxon_id, source_taxon_key, " +
+      "modified, num_descendants, hash, pp_synonym_fk, basionym_fk, " +
+      "kingdom_fk, phylum_fk, class_fk, order_fk, family_fk, genus_fk, subgenus_fk, species_fk, nub_fk";
+  // columns of the name_usage_metrics_sync staging table in the order written by addMetricsRow
+  private static final String METRICS_SYNC_COLUMNS = "usage_fk, dataset_key, count_children, count_synonyms, " +
+      "count_p, count_c, count_o, count_f, count_g, count_sg, count_s";
 
   private final UsageMapper usageMapper;
   private final NameUsageMapper nameUsageMapper;
@@ -54,6 +81,13 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
   private final SpeciesProfileMapper speciesProfileMapper;
   private final TypeSpecimenMapper typeSpecimenMapper;
   private final VernacularNameMapper vernacularNameMapper;
+  private final UsageExtensionMapper extensionMapper;
+  // properties of the hashed model classes holding sets
+  private static final Set<String> HASHED_SET_PROPERTIES = ImmutableSet.of("issues", "nomenclaturalStatus");
+  // content hashes of usages incl their metrics, ignoring the usage key which is the same for all updates
+  private final ContentHasher usageHasher = new ContentHasher(HASHED_SET_PROPERTIES, "key", "hash");
+  // content hashes of verbatim and extension records, ignoring keys assigned by the importer and crawling dates
+  private final ContentHasher extHasher = new ContentHasher(HASHED_SET_PROPERTIES, "key", "taxonKey", "sourceTaxonKey", "lastCrawled", "synonyms");
   private final DatasetMetricsMapper datasetMetricsMapper;
   // global meter/counters across all datasets
   private final Meter meterUsages = new Meter();
@@ -61,13 +95,20 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
   private final AtomicInteger counterUsages = new AtomicInteger(0);
   private final AtomicInteger counterExtensions = new AtomicInteger(0);
 
+  @Inject
+  private DataSource ds;
+
+  @Inject
+  private SqlSessionManager sessionManager;
+
   @Inject
   UsageSyncServiceMyBatis(UsageMapper usageMapper, NameUsageMapper nameUsageMapper,
                           NameUsageMetricsMapper metricsMapper, NubRelMapper nubRelMapper, RawUsageMapper rawMapper,
                           ParsedNameService nameService, CitationService citationService, DescriptionMapper descriptionMapper,
                           DistributionMapper distributionMapper, IdentifierMapper identifierMapper, MultimediaMapper multimediaMapper,
                           ReferenceMapper referenceMapper, SpeciesProfileMapper speciesProfileMapper, TypeSpecimenMapper typeSpecimenMapper,
-                          VernacularNameMapper vernacularNameMapper, DatasetMetricsMapper datasetMetricsMapper) {
+                          VernacularNameMapper vernacularNameMapper, UsageExtensionMapper extensionMapper,
+                          DatasetMetricsMapper datasetMetricsMapper) {
     this.nameUsageMapper = nameUsageMapper;
     this.metricsMapper = metricsMapper;
     this.nameService = nameService;
@@ -83,6 +124,7 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
     this.speciesProfileMapper = speciesProfileMapper;
     this.typeSpecimenMapper = typeSpecimenMapper;
     this.vernacularNameMapper = vernacularNameMapper;
+    this.extensionMapper = extensionMapper;
     this.datasetMetricsMapper = datasetMetricsMapper;
   }
 
@@ -136,21 +178,210 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
   }
 
 
+  /**
+   * Syncs a batch of usages with already assigned usage keys to postgres.
+   * All rows are streamed with the postgres copy command into session scoped staging tables
+   * which are then merged into name_usage, name_usage_metrics and nub_rel with a few set based statements.
+   * Name and citation records of the entire batch are looked up and inserted beforehand with a few set based queries.
+   * The transaction is started explicitly so the name and citation caches only receive keys once they are committed.
+   */
+  @Override
+  public void syncUsages(UUID datasetKey, List<NameUsage> usages, List<ParsedName> names, List<NameUsageMetrics> metrics) {
+    Preconditions.checkNotNull(datasetKey, "datasetKey must exist");
+    Preconditions.checkArgument(usages.size() == names.size() && usages.size() == metrics.size(),
+        "Same number of usages, names and metrics required");
+    if (usages.isEmpty()) {
+      return;
+    }
+    try {
+      Transactions.inTransaction(sessionManager, () -> {
+        copyAndMerge(datasetKey, usages, names, metrics);
+        return null;
+      });
+    } catch (RuntimeException e) {
+      // cached names or citations might have been deleted as orphans in the meantime, failing the deferred foreign keys
+      nameService.invalidateCache();
+      citationService.invalidateCache();
+      throw new PersistenceException("Bulk usage sync failed for dataset " + datasetKey, e);
+    }
+    LOG.debug("Synced {} usages from dataset {}", usages.size(), datasetKey);
+
+    // count
+    meterUsages.mark(usages.size());
+    int cnt = counterUsages.addAndGet(usages.size());
+    if (cnt / 10000 != (cnt - usages.size()) / 10000) {
+      LogContext.startDataset(datasetKey);
+      LOG.info("Synced {} usages, mean rate={}", cnt, meterUsages.getMeanRate());
+      LogContext.endDataset();
+    }
+  }
+
+  private void copyAndMerge(UUID datasetKey, List<NameUsage> usages, List<ParsedName> names, List<NameUsageMetrics> metrics) {
+    final boolean isNub = Constants.NUB_DATASET_KEY.equals(datasetKey);
+
+    // lookup or insert all name and citation records of the chunk at once
+    List<ParsedName> storedNames = nameService.createOrGet(names, true);
+    Set<String> citations = Sets.newHashSet();
+    for (NameUsage u : usages) {
+      citations.add(u.getPublishedIn());
+      citations.add(u.getAccordingTo());
+    }
+    Map<String, Integer> citationKeys = citationService.createOrGet(citations);
+
+    TabEncoder usageRows = new TabEncoder();
+    TabEncoder metricRows = new TabEncoder();
+    Iterator<ParsedName> nIter = storedNames.iterator();
+    Iterator<NameUsageMetrics> mIter = metrics.iterator();
+    for (NameUsage u : usages) {
+      Preconditions.checkNotNull(u.getKey(), "usageKey must be assigned for bulk syncs");
+      ParsedName pn = nIter.next();
+      NameUsageMetrics m = mIter.next();
+      // update self references indicated by -1
+      updateSelfReferences(u);
+      NameUsageWritable uw = newWritable(datasetKey, u, m);
+      uw.setNameKey(pn.getKey());
+      uw.setPublishedInKey(u.getPublishedIn() == null ? null : citationKeys.get(u.getPublishedIn()));
+      uw.setAccordingToKey(u.getAccordingTo() == null ? null : citationKeys.get(u.getAccordingTo()));
+      uw.setHash(usageHash(uw, m, isNub ? null : u.getNubKey()));
+      addUsageRow(usageRows, uw, isNub ? null : u.getNubKey());
+      m.setKey(u.getKey());
+      addMetricsRow(metricRows, datasetKey, m);
+    }
+
+    // load staging tables using the connection of the current transaction
+    nameUsageMapper.createSyncTable();
+    metricsMapper.createSyncTable();
+    try {
+      CopyManager copy = sessionManager.getConnection().unwrap(PGConnection.class).getCopyAPI();
+      copy.copyIn("COPY name_usage_sync (" + USAGE_SYNC_COLUMNS + ") FROM STDIN WITH NULL '\\N'", usageRows.toReader());
+      copy.copyIn("COPY name_usage_metrics_sync (" + METRICS_SYNC_COLUMNS + ") FROM STDIN WITH NULL '\\N'", metricRows.toReader());
+    } catch (SQLException | IOException e) {
+      throw new IllegalStateException("Failed to copy " + usages.size() + " usages into staging tables", e);
+    }
+
+    // skip unchanged usages, only touching their last interpreted timestamp which is used to detect deleted usages
+    metricsMapper.removeUnchangedFromSyncTable();
+    int unchanged = nameUsageMapper.removeUnchangedFromSyncTable();
+    LOG.debug("Skipping {} unchanged usages out of {}", unchanged, usages.size());
+
+    // merge, updating existing records before inserting new ones
+    nameUsageMapper.updateFromSyncTable();
+    nameUsageMapper.insertFromSyncTable();
+    metricsMapper.updateFromSyncTable();
+    metricsMapper.insertFromSyncTable();
+    // update nub mapping for non backbone records
+    if (!isNub) {
+      nubRelMapper.deleteBySyncTable();
+      nubRelMapper.insertFromSyncTable();
+    }
+  }
+
+  private static void addUsageRow(TabEncoder rows, NameUsageWritable uw, @Nullable Integer nubKey) {
+    rows.add(uw.getKey())
+        .add(uw.getDatasetKey())
+        .add(uw.getConstituentKey())
+        .add(uw.getNameKey())
+        .add(uw.getRank())
+        .add(uw.getParentKey())
+        .add(uw.isSynonym())
+        .add(uw.getTaxonomicStatus())
+        .add(uw.getNomenclaturalStatus())
+        .add(uw.getIssues())
+        .add(uw.getPublishedInKey())
+        .add(uw.getAccordingToKey())
+        .add(uw.getOrigin())
+        .add(uw.getRemarks())
+        .add(uw.getReferences())
+        .add(uw.getTaxonID())
+        .add(uw.getSourceTaxonKey())
+        .add(uw.getModified())
+        .add(uw.getNumDescendants())
+        .add(uw.getHash())
+        .add(uw.getProParteKey())
+        .add(uw.getBasionymKey())
+        .add(uw.getKingdomKey())
+        .add(uw.getPhylumKey())
+        .add(uw.getClassKey())
+        .add(uw.getOrderKey())
+        .add(uw.getFamilyKey())
+        .add(uw.getGenusKey())
+        .add(uw.getSubgenusKey())
+        .add(uw.getSpeciesKey())
+        .add(nubKey)
+        .endRow();
+  }
+
+  private static void addMetricsRow(TabEncoder rows, UUID datasetKey, NameUsageMetrics m) {
+    rows.add(m.getKey())
+        .add(datasetKey)
+        .add(m.getNumChildren())
+        .add(m.getNumSynonyms())
+        .add(m.getNumPhylum())
+        .add(m.getNumClass())
+        .add(m.getNumOrder())
+        .add(m.getNumFamily())
+        .add(m.getNumGenus())
+        .add(m.getNumSubgenus())
+        .add(m.getNumSpecies())
+        .endRow();
+  }
+
+  /**
+   * Streams all taxonIDs of a dataset with the postgres copy command.
+   * For non unique taxonIDs the lowest usage key is kept.
+   */
+  @Override
+  public Map<String, Integer> listTaxonKeys(UUID datasetKey) {
+    final Map<String, Integer> keys = Maps.newHashMap();
+    try (Connection con = ds.getConnection()) {
+      PGConnection pgcon = ((ProxyConnection) con).unwrap(PGConnection.class);
+      TabMapperBase mapper = new TabMapperBase(2) {
+        @Override
+        protected void addRow(String[] row) {
+          String taxonID = TabEncoder.unescape(row[0]);
+          if (taxonID != null && !keys.containsKey(taxonID)) {
+            keys.put(taxonID, Integer.valueOf(row[1]));
+          }
+        }
+      };
+      pgcon.getCopyAPI().copyOut("COPY (SELECT taxon_id, id FROM name_usage WHERE dataset_key='" + datasetKey
+          + "' AND taxon_id IS NOT NULL ORDER BY id) TO STDOUT WITH NULL ''", mapper);
+      LOG.debug("Loaded {} existing taxonIDs for dataset {}", keys.size(), datasetKey);
+      return keys;
+
+    } catch (Exception e) {
+      LOG.error("Failed to load taxonIDs for dataset {}", datasetKey, e);
+      throw new RuntimeException("Exception while loading taxonIDs", e);
+    }
+  }
+
+  @Override
+  public List<Integer> nextKeys(int size) {
+    return nameUsageMapper.nextKeys(size);
+  }
+
   /**
    * TODO: update docs!!!
    */
   @Override
   public void syncUsageExtras(boolean insert, UUID datasetKey, int usageKey, @Nullable VerbatimNameUsage verbatim, @Nullable UsageExtensions extensions) {
-    // insert extension data
-    syncExtensions(usageKey, !insert, extensions);
+    // the content hash is stored together with the verbatim data, so only usages with verbatim data can be skipped
+    final long hash = extHasher.hash(verbatim, extensions);
+    if (!insert && verbatim != null && Objects.equals(hash, rawMapper.getHash(usageKey))) {
+      LOG.debug("Skip unchanged verbatim and extension data for usage {}", usageKey);
 
-    // update or insert verbatim
-    // we delete and insert instead of updates to avoid updating non existing records
-    // see http://dev.gbif.org/issues/browse/POR-2617
-    rawMapper.delete(usageKey);
+    } else {
+      // insert extension data
+      syncExtensions(usageKey, !insert, extensions);
+
+      // update or insert verbatim
+      // we delete and insert instead of updates to avoid updating non existing records
+      // see http://dev.gbif.org/issues/browse/POR-2617
+      rawMapper.delete(usageKey);
 
-    // insert verbatim
-    insertVerbatim(verbatim, datasetKey, usageKey);
+      // insert verbatim
+      insertVerbatim(verbatim, datasetKey, usageKey, hash);
+    }
 
     // count
     meterExtensions.mark();
@@ -175,6 +406,7 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
 
     // insert main usage, creating name and citation records before
     NameUsageWritable uw = toWritable(datasetKey, u, pn, metrics);
+    uw.setHash(usageHash(uw, metrics, isNub(datasetKey) ? null : u.getNubKey()));
     nameUsageMapper.insert(uw);
     u.setKey(uw.getKey());
 
@@ -194,81 +426,153 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
     return uw.getKey();
   }
 
-  private void insertVerbatim(@Nullable VerbatimNameUsage verbatim, UUID datasetKey, int usageKey) {
+  private void insertVerbatim(@Nullable VerbatimNameUsage verbatim, UUID datasetKey, int usageKey, long hash) {
     if (verbatim != null) {
       RawUsage raw = new RawUsage();
       raw.setUsageKey(usageKey);
       raw.setDatasetKey(datasetKey);
       raw.setJson(vParser.write(verbatim));
+      raw.setHash(hash);
       rawMapper.insert(raw);
     }
   }
 
+  /**
+   * Syncs all extension records of a usage, comparing the content hashes of the new records with the stored ones.
+   * Only new or modified records are inserted and only records not existing anymore are deleted,
+   * so an unchanged usage does not write to any of the extension tables.
+   *
+   * @param removeBefore if true compare with existing records, otherwise all records are inserted
+   */
   private void syncExtensions(final int usageKey, boolean removeBefore, UsageExtensions ext) {
+    ExtensionDiff diff = new ExtensionDiff();
     if (removeBefore) {
-      // remove all previous extension records
-      // remove all previous extension records
-      descriptionMapper.deleteByUsage(usageKey);
-      distributionMapper.deleteByUsage(usageKey);
-      identifierMapper.deleteByUsage(usageKey);
-      multimediaMapper.deleteByUsage(usageKey);
-      referenceMapper.deleteByUsage(usageKey);
-      speciesProfileMapper.deleteByUsage(usageKey);
-      typeSpecimenMapper.deleteByUsage(usageKey);
-      vernacularNameMapper.deleteByUsage(usageKey);
+      for (ExtensionHash eh : extensionMapper.listHashes(usageKey)) {
+        diff.add(eh);
+      }
     }
 
-    if (ext == null) return;
-
-    try {
-      for (Description d : ext.descriptions) {
-        Integer sk = citationService.createOrGet(d.getSource());
-        descriptionMapper.insert(usageKey, d, sk);
-      }
-      for (Distribution d : ext.distributions) {
-        distributionMapper.insert(usageKey, d, citationService.createOrGet(d.getSource()));
-      }
-      for (Identifier i : ext.identifiers) {
-        if (i.getType() == null) {
-          i.setType(IdentifierType.UNKNOWN);
+    if (ext != null) {
+      try {
+        for (Description d : ext.descriptions) {
+          long hash = extHasher.hash(d);
+          if (diff.isNew(Extension.DESCRIPTION, hash)) {
+            descriptionMapper.insert(usageKey, d, citationService.createOrGet(d.getSource()), hash);
+          }
         }
-        identifierMapper.insert(usageKey, i);
-      }
-      for (NameUsageMediaObject m : ext.media) {
-        multimediaMapper.insert(usageKey, m, citationService.createOrGet(m.getSource()));
-      }
-      for (Reference r : ext.referenceList) {
-        String citation = r.getCitation();
-        if (Strings.isNullOrEmpty(citation)) {
-          // try to build from pieces if full citation is not given!!!
-          citation = buildCitation(r);
+        for (Distribution d : ext.distributions) {
+          long hash = extHasher.hash(d);
+          if (diff.isNew(Extension.DISTRIBUTION, hash)) {
+            distributionMapper.insert(usageKey, d, citationService.createOrGet(d.getSource()), hash);
+          }
         }
-        if (!Strings.isNullOrEmpty(citation)) {
-          referenceMapper.insert(usageKey, citationService.createOrGet(citation, r.getDoi(), r.getLink()), r);
+        for (Identifier i : ext.identifiers) {
+          if (i.getType() == null) {
+            i.setType(IdentifierType.UNKNOWN);
+          }
+          long hash = extHasher.hash(i);
+          if (diff.isNew(Extension.IDENTIFIER, hash)) {
+            identifierMapper.insert(usageKey, i, hash);
+          }
         }
+        for (NameUsageMediaObject m : ext.media) {
+          long hash = extHasher.hash(m);
+          if (diff.isNew(Extension.MULTIMEDIA, hash)) {
+            multimediaMapper.insert(usageKey, m, citationService.createOrGet(m.getSource()), hash);
+          }
+        }
+        for (Reference r : ext.referenceList) {
+          String citation = r.getCitation();
+          if (Strings.isNullOrEmpty(citation)) {
+            // try to build from pieces if full citation is not given!!!
+            citation = buildCitation(r);
+          }
+          if (!Strings.isNullOrEmpty(citation)) {
+            long hash = extHasher.hash(r);
+            if (diff.isNew(Extension.REFERENCE, hash)) {
+              referenceMapper.insert(usageKey, citationService.createOrGet(citation, r.getDoi(), r.getLink()), r, hash);
+            }
+          }
+        }
+        for (SpeciesProfile s : ext.speciesProfiles) {
+          long hash = extHasher.hash(s);
+          if (diff.isNew(Extension.SPECIES_PROFILE, hash)) {
+            speciesProfileMapper.insert(usageKey, s, citationService.createOrGet(s.getSource()), hash);
+          }
+        }
+        for (TypeSpecimen t : ext.typeSpecimens) {
+          long hash = extHasher.hash(t);
+          if (diff.isNew(Extension.TYPES_AND_SPECIMEN, hash)) {
+            typeSpecimenMapper.insert(usageKey, t, citationService.createOrGet(t.getSource()), hash);
+          }
+        }
+        for (VernacularName v : ext.vernacularNames) {
+          long hash = extHasher.hash(v);
+          if (diff.isNew(Extension.VERNACULAR_NAME, hash)) {
+            vernacularNameMapper.insert(usageKey, v, citationService.createOrGet(v.getSource()), hash);
+          }
+        }
+
+      } catch (Exception e) {
+        LOG.error("Failed to sync extensions for usage {}", usageKey, e);
+        LOG.info("failed usage {}", ext);
+        LOG.info("failed usage descriptions {}", ext.descriptions);
+        LOG.info("failed usage distributions {}", ext.distributions);
+        LOG.info("failed usage identifiers {}", ext.identifiers);
+        LOG.info("failed usage media {}", ext.media);
+        LOG.info("failed usage references {}", ext.referenceList);
+        LOG.info("failed usage speciesProfiles {}", ext.speciesProfiles);
+        LOG.info("failed usage typeSpecimens {}", ext.typeSpecimens);
+        LOG.info("failed usage vernacularNames {}", ext.vernacularNames);
+        Throwables.propagate(e);
       }
-      for (SpeciesProfile s : ext.speciesProfiles) {
-        speciesProfileMapper.insert(usageKey, s, citationService.createOrGet(s.getSource()));
-      }
-      for (TypeSpecimen t : ext.typeSpecimens) {
-        typeSpecimenMapper.insert(usageKey, t, citationService.createOrGet(t.getSource()));
+    }
+
+    // remove all previous extension records that do not exist anymore
+    for (Map.Entry<Extension, List<Integer>> e : diff.obsolete().entrySet()) {
+      extensionMapper.deleteByKeys(e.getKey(), e.getValue());
+    }
+  }
+
+  /**
+   * Matches the content hashes of new extension records against the stored records of a single usage.
+   * Stored records without a hash never match and get replaced.
+   */
+  private static class ExtensionDiff {
+    private final Map<Extension, ListMultimap<Long, Integer>> stored = Maps.newEnumMap(Extension.class);
+
+    void add(ExtensionHash eh) {
+      if (!stored.containsKey(eh.getExtension())) {
+        stored.put(eh.getExtension(), ArrayListMultimap.<Long, Integer>create());
       }
-      for (VernacularName v : ext.vernacularNames) {
-        vernacularNameMapper.insert(usageKey, v, citationService.createOrGet(v.getSource()));
+      stored.get(eh.getExtension()).put(eh.getHash(), eh.getKey());
+    }
+
+    /**
+     * @return true if there is no unclaimed stored record with the same content, otherwise claims that record
+     */
+    boolean isNew(Extension extension, long hash) {
+      if (stored.containsKey(extension)) {
+        List<Integer> keys = stored.get(extension).get(hash);
+        if (!keys.isEmpty()) {
+          keys.remove(keys.size() - 1);
+          return false;
+        }
       }
+      return true;
+    }
 
-    } catch (Exception e) {
-      LOG.error("Failed to sync extensions for usage {}", usageKey, e);
-      LOG.info("failed usage {}", ext);
-      LOG.info("failed usage descriptions {}", ext.descriptions);
-      LOG.info("failed usage distributions {}", ext.distributions);
-      LOG.info("failed usage identifiers {}", ext.identifiers);
-      LOG.info("failed usage media {}", ext.media);
-      LOG.info("failed usage references {}", ext.referenceList);
-      LOG.info("failed usage speciesProfiles {}", ext.speciesProfiles);
-      LOG.info("failed usage typeSpecimens {}", ext.typeSpecimens);
-      LOG.info("failed usage vernacularNames {}", ext.vernacularNames);
-      Throwables.propagate(e);
+    /**
+     * @return keys of all stored records that have not been claimed by a new record
+     */
+    Map<Extension, List<Integer>> obsolete() {
+      Map<Extension, List<Integer>> obsolete = Maps.newEnumMap(Extension.class);
+      for (Map.Entry<Extension, ListMultimap<Long, Integer>> e : stored.entrySet()) {
+        if (!e.getValue().isEmpty()) {
+          obsolete.put(e.getKey(), Lists.newArrayList(e.getValue().values()));
+        }
+      }
+      return obsolete;
     }
   }
 
@@ -300,10 +604,9 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
   }
 
   /**
-   * Updates an existing usage record and all its related extensions.
-   * Checking whether a usage has changed is a bit of work and error prone so we always update currently.
-   * In the future we should try to update only when needed though. We would need to compare the usage itself,
-   * the raw data, the usage metrics and all extension data in the container though.
+   * Updates an existing usage record, its metrics and nub relation.
+   * A usage with an unchanged content hash is not updated, only its last interpreted timestamp is touched.
+   * The verbatim and extension data is compared separately in syncUsageExtras.
    *
    * @param u updated usage
    */
@@ -314,6 +617,11 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
     updateSelfReferences(u);
     // insert main usage, creating name and citation records before
     NameUsageWritable uw = toWritable(datasetKey, u, pn, metrics);
+    uw.setHash(usageHash(uw, metrics, isNub(datasetKey) ? null : u.getNubKey()));
+    if (nameUsageMapper.touchIfUnchanged(u.getKey(), uw.getHash()) > 0) {
+      LOG.debug("Skip unchanged usage {}", u.getKey());
+      return;
+    }
     nameUsageMapper.update(uw);
 
     // update usage metrics
@@ -329,6 +637,17 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
     }
   }
 
+  private static boolean isNub(UUID datasetKey) {
+    return Constants.NUB_DATASET_KEY.equals(datasetKey);
+  }
+
+  /**
+   * @return content hash of a writable usage incl its metrics and nub relation
+   */
+  private long usageHash(NameUsageWritable uw, NameUsageMetrics metrics, @Nullable Integer nubKey) {
+    return usageHasher.hash(uw, metrics, nubKey);
+  }
+
   private void updateSelfReferences(NameUsage u) {
     if (u.getBasionymKey() != null && u.getBasionymKey() == -1) {
       u.setBasionymKey(u.getKey());
@@ -354,6 +673,23 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
    * and populating the writable instance with these keys.
    */
   private NameUsageWritable toWritable(UUID datasetKey, NameUsage u, ParsedName pn, NameUsageMetrics metrics) {
+    NameUsageWritable uw = newWritable(datasetKey, u, metrics);
+
+    // lookup or insert name record
+    pn = nameService.createOrGet(pn, true);
+    uw.setNameKey(pn.getKey());
+
+    // lookup or insert citation records
+    uw.setPublishedInKey(citationService.createOrGet(u.getPublishedIn()));
+    uw.setAccordingToKey(citationService.createOrGet(u.getAccordingTo()));
+
+    return uw;
+  }
+
+  /**
+   * Converts a name usage into a writable name usage without any name or citation keys.
+   */
+  private static NameUsageWritable newWritable(UUID datasetKey, NameUsage u, NameUsageMetrics metrics) {
     NameUsageWritable uw = new NameUsageWritable();
 
     uw.setKey(u.getKey());
@@ -382,14 +718,6 @@ public class UsageSyncServiceMyBatis implements UsageSyncService {
     uw.setModified(u.getModified());
     uw.setIssues(u.getIssues());
 
-    // lookup or insert name record
-    pn = nameService.createOrGet(pn, true);
-    uw.setNameKey(pn.getKey());
-
-    // lookup or insert citation records
-    uw.setPublishedInKey(citationService.createOrGet(u.getPublishedIn()));
-    uw.setAccordingToKey(citationService.createOrGet(u.getAccordingTo()));
-
     return uw;
   }
 
@@ -66,6 +66,7 @@ public class InternalChecklistBankServiceMyBatisModule extends MyBatisModule {
     addAlias("DatasetMetrics").to(DatasetMetrics.class);
     addAlias("Description").to(Description.class);
     addAlias("Distribution").to(Distribution.class);
+    addAlias("ExtensionHash").to(ExtensionHash.class);
     addAlias("Identifier").to(Identifier.class);
     addAlias("NameUsage").to(NameUsage.class);
     addAlias("ParsedNameUsage").to(ParsedNameUsage.class);
@@ -106,6 +107,7 @@ public class InternalChecklistBankServiceMyBatisModule extends MyBatisModule {
     addMapperClass(SpeciesProfileMapper.class);
     addMapperClass(TypeSpecimenMapper.class);
     addMapperClass(UsageCountMapper.class);
+    addMapperClass(UsageExtensionMapper.class);
     addMapperClass(UsageMapper.class);
     addMapperClass(VernacularNameMapper.class);
   }
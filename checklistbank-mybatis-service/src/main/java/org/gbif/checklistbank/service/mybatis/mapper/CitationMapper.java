@@ -2,6 +2,8 @@ package org.gbif.checklistbank.service.mybatis.mapper;
 
 import org.gbif.checklistbank.model.Citation;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Param;
 
 public interface CitationMapper {
@@ -10,4 +12,14 @@ public interface CitationMapper {
 
   void insert(@Param("c") Citation citation);
 
+  /**
+   * @return all existing citations with their keys for the given citation strings
+   */
+  List<Citation> listByCitations(@Param("citations") String[] citations);
+
+  /**
+   * Inserts all given citations that do not exist yet, ignoring concurrently inserted ones.
+   */
+  void insertMissing(@Param("citations") String[] citations);
+
 }
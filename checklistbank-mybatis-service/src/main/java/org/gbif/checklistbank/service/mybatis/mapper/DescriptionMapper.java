@@ -18,5 +18,5 @@ public interface DescriptionMapper extends NameUsageComponentMapper<Description>
 
   List<TocEntry> listTocEntriesByUsage(@Param("usageKey") int usageKey);
 
-  void insert(@Param("key") int usageKey, @Param("obj") Description description, @Param("sourceKey") Integer sourceKey);
+  void insert(@Param("key") int usageKey, @Param("obj") Description description, @Param("sourceKey") Integer sourceKey, @Param("hash") Long hash);
 }
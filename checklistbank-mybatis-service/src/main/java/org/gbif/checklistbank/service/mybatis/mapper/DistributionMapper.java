@@ -13,6 +13,6 @@ import java.util.UUID;
  */
 public interface DistributionMapper extends NameUsageComponentMapper<Distribution> {
 
-  void insert(@Param("key") int usageKey, @Param("obj") Distribution distribution, @Param("sourceKey") Integer sourceKey);
+  void insert(@Param("key") int usageKey, @Param("obj") Distribution distribution, @Param("sourceKey") Integer sourceKey, @Param("hash") Long hash);
 
 }
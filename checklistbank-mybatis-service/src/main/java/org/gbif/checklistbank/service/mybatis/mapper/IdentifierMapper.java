@@ -20,5 +20,5 @@ public interface IdentifierMapper {
 
   void deleteByUsage(@Param("key") int usageKey);
 
-  void insert(@Param("key") int usageKey, @Param("obj") Identifier identifier);
+  void insert(@Param("key") int usageKey, @Param("obj") Identifier identifier, @Param("hash") Long hash);
 }
@@ -13,6 +13,6 @@ import java.util.UUID;
  */
 public interface MultimediaMapper extends NameUsageComponentMapper<NameUsageMediaObject> {
 
-  void insert(@Param("key") int usageKey, @Param("obj") NameUsageMediaObject mediaObject, @Param("sourceKey") Integer sourceKey);
+  void insert(@Param("key") int usageKey, @Param("obj") NameUsageMediaObject mediaObject, @Param("sourceKey") Integer sourceKey, @Param("hash") Long hash);
 
 }
@@ -87,6 +87,15 @@ public interface NameUsageMapper {
    */
   Integer maxUsageKey(@Param("uuid") UUID datasetKey);
 
+  /**
+   * Summarizes the current state of all usages in a dataset incl deleted records, i.e. their number, the maximum key
+   * and the latest interpretation and deletion timestamps.
+   * The value changes whenever usages of the dataset are added, reinterpreted or deleted.
+   *
+   * @return a string describing the current dataset state
+   */
+  String datasetState(@Param("uuid") UUID datasetKey);
+
   /**
    * Insert a new name usage, setting lastInterpretedDate to current date and assigning a new usage key.
    * If higher rank keys like kingdomKey are -1 this is interpreted that they should point to the newly inserted record
@@ -100,6 +109,45 @@ public interface NameUsageMapper {
    */
   void update(@Param("u") NameUsageWritable usage);
 
+  /**
+   * Reserves new usage keys from the name usage sequence.
+   *
+   * @param size number of keys to reserve
+   */
+  List<Integer> nextKeys(@Param("size") int size);
+
+  /**
+   * Updates the last interpreted timestamp of an existing, not deleted usage with the given content hash.
+   *
+   * @return 1 if the usage was unchanged, 0 otherwise
+   */
+  int touchIfUnchanged(@Param("key") int usageKey, @Param("hash") long hash);
+
+  /**
+   * Creates the session scoped staging table name_usage_sync if not yet existing.
+   * It has all name_usage columns plus the nub_fk and its rows are removed at the end of each transaction.
+   */
+  void createSyncTable();
+
+  /**
+   * Updates all existing usages with the values of the staging table.
+   * As in #update(NameUsageWritable usage) the deleted timestamp is removed.
+   */
+  void updateFromSyncTable();
+
+  /**
+   * Updates the last interpreted timestamp of all existing usages in the staging table with an unchanged content hash
+   * and removes them from the staging table.
+   *
+   * @return number of unchanged usages
+   */
+  int removeUnchangedFromSyncTable();
+
+  /**
+   * Inserts all usages of the staging table that do not exist yet, keeping their usage keys.
+   */
+  void insertFromSyncTable();
+
   void updateName(@Param("key") int usageKey, @Param("nkey") int nameKey);
 
   void updateForeignKeys(@Param("key") int usageKey, @Param("par") Integer parentKey, @Param("bas") Integer basionymKey);
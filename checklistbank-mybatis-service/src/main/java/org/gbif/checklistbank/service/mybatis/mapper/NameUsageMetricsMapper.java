@@ -13,4 +13,26 @@ public interface NameUsageMetricsMapper {
   void insert(@Param("uuid") UUID datasetKey, @Param("m") NameUsageMetrics metrics);
 
   void update(@Param("m") NameUsageMetrics metrics);
+
+  /**
+   * Creates the session scoped staging table name_usage_metrics_sync if not yet existing.
+   * Its rows are removed at the end of each transaction.
+   */
+  void createSyncTable();
+
+  /**
+   * Updates all existing metrics with the values of the staging table.
+   */
+  void updateFromSyncTable();
+
+  /**
+   * Removes the metrics of all existing usages with an unchanged content hash from the staging table.
+   * Needs to be called before the unchanged usages are removed from the name_usage_sync staging table.
+   */
+  void removeUnchangedFromSyncTable();
+
+  /**
+   * Inserts all metrics of the staging table that do not exist yet.
+   */
+  void insertFromSyncTable();
 }
@@ -12,4 +12,14 @@ public interface NubRelMapper {
 
   void deleteByDataset(@Param("uuid") UUID datasetKey);
 
+  /**
+   * Removes the nub relations of all usages in the name usage staging table.
+   */
+  void deleteBySyncTable();
+
+  /**
+   * Inserts the nub relations for all matched usages of the name usage staging table.
+   */
+  void insertFromSyncTable();
+
 }
@@ -62,4 +62,24 @@ public interface ParsedNameMapper {
   void processNames(ResultHandler<ParsedName> handler);
 
   void update(@Param("pn") ParsedName name);
+
+  /**
+   * Lists all existing names for pairs of scientific names and ranks.
+   * Null ranks only match names without a rank.
+   *
+   * @param names scientific names
+   * @param ranks rank names of the same length as names
+   */
+  List<ParsedName> listByNames(@Param("names") String[] names, @Param("ranks") String[] ranks);
+
+  /**
+   * Creates the session scoped staging table name_sync with all writable name columns if not yet existing.
+   * Its rows are removed at the end of each transaction.
+   */
+  void createSyncTable();
+
+  /**
+   * Inserts all names of the staging table that do not exist yet.
+   */
+  void insertFromSyncTable();
 }
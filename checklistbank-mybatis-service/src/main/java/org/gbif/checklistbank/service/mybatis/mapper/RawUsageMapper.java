@@ -16,6 +16,12 @@ public interface RawUsageMapper {
 
   void insert(@Param("r") RawUsage usage);
 
+  /**
+   * @param key usage key
+   * @return the stored content hash of the verbatim and extension data or null if not existing
+   */
+  Long getHash(@Param("key") int key);
+
   /**
    * @param key usage key
    */
@@ -13,6 +13,6 @@ import java.util.UUID;
  */
 public interface ReferenceMapper extends NameUsageComponentMapper<Reference> {
 
-  void insert(@Param("key") int usageKey, @Param("citationKey") int citationKey, @Param("obj") Reference reference);
+  void insert(@Param("key") int usageKey, @Param("citationKey") int citationKey, @Param("obj") Reference reference, @Param("hash") Long hash);
 
 }
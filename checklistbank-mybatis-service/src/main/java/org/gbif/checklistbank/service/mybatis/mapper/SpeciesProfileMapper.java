@@ -9,6 +9,6 @@ import org.apache.ibatis.annotations.Param;
  */
 public interface SpeciesProfileMapper extends NameUsageComponentMapper<SpeciesProfile> {
 
-  void insert(@Param("key") int usageKey, @Param("obj") SpeciesProfile speciesProfile, @Param("sourceKey") Integer sourceKey);
+  void insert(@Param("key") int usageKey, @Param("obj") SpeciesProfile speciesProfile, @Param("sourceKey") Integer sourceKey, @Param("hash") Long hash);
 
 }
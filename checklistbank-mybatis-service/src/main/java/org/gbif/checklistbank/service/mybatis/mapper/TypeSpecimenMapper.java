@@ -9,6 +9,6 @@ import org.apache.ibatis.annotations.Param;
  */
 public interface TypeSpecimenMapper extends NameUsageComponentMapper<TypeSpecimen> {
 
-  void insert(@Param("key") int usageKey, @Param("obj") TypeSpecimen typeSpecimen, @Param("sourceKey") Integer sourceKey);
+  void insert(@Param("key") int usageKey, @Param("obj") TypeSpecimen typeSpecimen, @Param("sourceKey") Integer sourceKey, @Param("hash") Long hash);
 
 }
@@ -0,0 +1,26 @@
+package org.gbif.checklistbank.service.mybatis.mapper;
+
+import org.gbif.api.vocabulary.Extension;
+import org.gbif.checklistbank.model.ExtensionHash;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * The MyBatis mapper dealing with the records of all 8 extension tables of a single usage at once.
+ */
+public interface UsageExtensionMapper {
+
+  /**
+   * @return the keys and content hashes of all extension records of a usage
+   */
+  List<ExtensionHash> listHashes(@Param("key") int usageKey);
+
+  /**
+   * Deletes extension records by their primary keys.
+   */
+  void deleteByKeys(@Param("extension") Extension extension, @Param("keys") Collection<Integer> keys);
+
+}
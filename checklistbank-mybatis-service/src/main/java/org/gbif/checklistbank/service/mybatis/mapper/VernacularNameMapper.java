@@ -23,6 +23,6 @@ public interface VernacularNameMapper extends NameUsageComponentMapper<Vernacula
    */
   VernacularName getByNubUsage(@Param("key") int usageKey, @Param("lang") String language);
 
-  void insert(@Param("key") int usageKey, @Param("obj") VernacularName vernacularName, @Param("sourceKey") Integer sourceKey);
+  void insert(@Param("key") int usageKey, @Param("obj") VernacularName vernacularName, @Param("sourceKey") Integer sourceKey, @Param("hash") Long hash);
 
 }
@@ -0,0 +1,45 @@
+package org.gbif.checklistbank.service.mybatis.postgres;
+
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedJdbcTypes;
+import org.apache.ibatis.type.MappedTypes;
+
+/**
+ * A mybatis type handler for string arrays, e.g. to pass many values as a single text[] parameter.
+ */
+@MappedJdbcTypes(JdbcType.OTHER)
+@MappedTypes(String[].class)
+public class StringArrayTypeHandler extends BaseTypeHandler<String[]> {
+
+  @Override
+  public void setNonNullParameter(PreparedStatement ps, int i, String[] parameter, JdbcType jdbcType) throws SQLException {
+    Array array = ps.getConnection().createArrayOf("text", parameter);
+    ps.setArray(i, array);
+  }
+
+  @Override
+  public String[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
+    return toArray(rs.getArray(columnName));
+  }
+
+  @Override
+  public String[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+    return toArray(rs.getArray(columnIndex));
+  }
+
+  @Override
+  public String[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+    return toArray(cs.getArray(columnIndex));
+  }
+
+  private static String[] toArray(Array array) throws SQLException {
+    return array == null ? null : (String[]) array.getArray();
+  }
+}
@@ -3,10 +3,16 @@ package org.gbif.checklistbank.service.mybatis;
 import org.gbif.checklistbank.service.CitationService;
 import org.gbif.utils.text.StringUtils;
 
+import java.util.Map;
+
+import com.google.common.collect.Lists;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 public class CitationServiceMyBatisIT extends MyBatisServiceITBase<CitationService> {
 
@@ -23,4 +29,44 @@ public class CitationServiceMyBatisIT extends MyBatisServiceITBase<CitationServi
         final Integer cid2 = service.createOrGet(citation);
         assertEquals(cid2, cid);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBatchCreateOrGet() throws Exception {
+        final Integer cid = service.createOrGet("Mill., Gard. Dict. ed. 8 (1768)");
+        Map<String, Integer> keys = service.createOrGet(Lists.newArrayList("Mill., Gard. Dict. ed. 8 (1768)",
+            "Link, Handbuch 2 (1831)", null, "", "Link, Handbuch 2 (1831)", "Tab\tand \\N"));
+        assertEquals(3, keys.size());
+        assertEquals(cid, keys.get("Mill., Gard. Dict. ed. 8 (1768)"));
+        assertNotNull(keys.get("Link, Handbuch 2 (1831)"));
+        assertNotEquals(cid, keys.get("Link, Handbuch 2 (1831)"));
+        assertEquals(keys.get("Link, Handbuch 2 (1831)"), service.createOrGet("Link, Handbuch 2 (1831)"));
+        assertEquals(keys.get("Tab\tand \\N"), service.createOrGet("Tab\tand \\N"));
+    }
+
+    /**
+     * Keys must only be cached once the transaction that created them has been committed.
+     */
+    @Test
+    public void testCacheAfterCommit() throws Exception {
+        final CitationServiceMyBatis impl = (CitationServiceMyBatis) service;
+
+        final String committed = "Mill., Gard. Dict. ed. 8 (1768)";
+        final Integer cid = service.createOrGet(committed);
+        assertNotNull(cid);
+        assertEquals(cid, impl.cached(committed));
+
+        final String rolledBack = "Link, Handbuch 2 (1831)";
+        try {
+            Transactions.inTransaction(impl.sessionManager, () -> {
+                assertNotNull(service.createOrGet(rolledBack));
+                // not visible to others before the commit
+                assertNull(impl.cached(rolledBack));
+                throw new IllegalStateException("rollback");
+            });
+            fail("transaction should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertNull(impl.cached(rolledBack));
+    }
+}
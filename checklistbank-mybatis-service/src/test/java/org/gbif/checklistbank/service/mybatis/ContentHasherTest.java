@@ -0,0 +1,94 @@
+package org.gbif.checklistbank.service.mybatis;
+
+import org.gbif.api.model.checklistbank.VernacularName;
+import org.gbif.api.vocabulary.Language;
+import org.gbif.api.vocabulary.NameUsageIssue;
+import org.gbif.checklistbank.model.NameUsageWritable;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ContentHasherTest {
+  private final ContentHasher hasher = new ContentHasher(ImmutableSet.of("issues"), "key", "taxonKey");
+
+  @Test
+  public void testHash() throws Exception {
+    VernacularName v1 = new VernacularName();
+    v1.setVernacularName("Silver fir");
+    v1.setLanguage(Language.ENGLISH);
+    v1.setTaxonKey(1);
+
+    VernacularName v2 = new VernacularName();
+    v2.setVernacularName("Silver fir");
+    v2.setLanguage(Language.ENGLISH);
+    v2.setTaxonKey(2);
+
+    // taxonKey is ignored
+    assertEquals(hasher.hash(v1), hasher.hash(v2));
+
+    v2.setVernacularName("European silver fir");
+    assertNotEquals(hasher.hash(v1), hasher.hash(v2));
+
+    assertEquals(hasher.hash(v1, v2), hasher.hash(v1, v2));
+    assertNotEquals(hasher.hash(v1, v2), hasher.hash(v2, v1));
+    assertNotEquals(hasher.hash(v1, null), hasher.hash(null, v1));
+  }
+
+  @Test
+  public void testSetOrder() throws Exception {
+    NameUsageWritable u1 = new NameUsageWritable();
+    u1.setKey(1);
+    u1.setIssues(Sets.newLinkedHashSet(ImmutableList.of(NameUsageIssue.RANK_INVALID, NameUsageIssue.BACKBONE_MATCH_NONE)));
+
+    NameUsageWritable u2 = new NameUsageWritable();
+    u2.setKey(2);
+    u2.setIssues(Sets.newLinkedHashSet(ImmutableList.of(NameUsageIssue.BACKBONE_MATCH_NONE, NameUsageIssue.RANK_INVALID)));
+
+    assertEquals(hasher.hash(u1), hasher.hash(u2));
+
+    u2.getIssues().add(NameUsageIssue.CHAINED_SYNOYM);
+    assertNotEquals(hasher.hash(u1), hasher.hash(u2));
+  }
+
+  @Test
+  public void testListOrder() throws Exception {
+    Map<String, Object> m1 = ImmutableMap.<String, Object>of("names", ImmutableList.of("Abies alba", "Picea abies"));
+    Map<String, Object> m2 = ImmutableMap.<String, Object>of("names", ImmutableList.of("Picea abies", "Abies alba"));
+
+    // a reordered list is a change
+    assertNotEquals(hasher.hash(m1), hasher.hash(m2));
+
+    // unless it holds a set
+    m1 = ImmutableMap.<String, Object>of("issues", ImmutableList.of("RANK_INVALID", "BACKBONE_MATCH_NONE"));
+    m2 = ImmutableMap.<String, Object>of("issues", ImmutableList.of("BACKBONE_MATCH_NONE", "RANK_INVALID"));
+    assertEquals(hasher.hash(m1), hasher.hash(m2));
+  }
+
+  @Test
+  public void testMapOrder() throws Exception {
+    Map<String, Object> m1 = Maps.newLinkedHashMap();
+    m1.put("name", "Abies alba");
+    m1.put("rank", "species");
+    m1.put("nested", ImmutableMap.of("key", 1, "x", "y"));
+
+    Map<String, Object> m2 = Maps.newLinkedHashMap();
+    m2.put("nested", ImmutableMap.of("x", "y", "key", 2));
+    m2.put("rank", "species");
+    m2.put("name", "Abies alba");
+
+    // nested keys are ignored too
+    assertEquals(hasher.hash(m1), hasher.hash(m2));
+
+    m2.put("rank", "genus");
+    assertNotEquals(hasher.hash(m1), hasher.hash(m2));
+  }
+}
@@ -8,6 +8,10 @@ import org.gbif.api.vocabulary.NameType;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.checklistbank.service.ParsedNameService;
 import org.gbif.nameparser.NameParserGbifV1;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -68,6 +72,34 @@ public class ParsedNameServiceMyBatisIT extends MyBatisServiceITBase<ParsedNameS
     assertEquals("hostilis", pn.getSpecificEpithet());
   }
 
+  @Test
+  public void testBatchCreateOrGet() throws Exception {
+    ParsedName existing = service.createOrGet(parse("Abies alba Mill."), true);
+
+    List<ParsedName> names = service.createOrGet(Lists.newArrayList(
+        parse("Abies alba Mill."),
+        parse("Picea abies (L.) H.Karst."),
+        null,
+        parse("×Abies Mill."),
+        parse("Picea abies (L.) H.Karst.")
+    ), true);
+    assertEquals(5, names.size());
+    assertEquals(existing.getKey(), names.get(0).getKey());
+    assertNotNull(names.get(1).getKey());
+    assertEquals("Picea abies (L.) H.Karst.", names.get(1).getScientificName());
+    assertEquals("Picea abies", names.get(1).canonicalName());
+    assertEquals("L.", names.get(1).getBracketAuthorship());
+    assertNull(names.get(2));
+    // null rank
+    assertNotNull(names.get(3).getKey());
+    assertEquals(NamePart.GENERIC, names.get(3).getNotho());
+    assertEquals(names.get(1).getKey(), names.get(4).getKey());
+
+    // the batch inserted names are found again
+    assertEquals(names.get(1).getKey(), service.createOrGet(parse("Picea abies (L.) H.Karst."), false).getKey());
+    assertEquals(names.get(3).getKey(), service.createOrGet(parse("×Abies Mill."), true).getKey());
+  }
+
   private ParsedName parse(String x) {
     try {
       return parser.parse(x, null);
@@ -84,6 +116,24 @@ public class ParsedNameServiceMyBatisIT extends MyBatisServiceITBase<ParsedNameS
     assertEquals(1, service.deleteOrphaned());
   }
 
+  /**
+   * Cached names must not survive the deletion of orphaned names.
+   */
+  @Test
+  public void testCachedOrphaned() throws Exception {
+    ParsedName pn = service.createOrGet(parse("Picea excelsa Link"), true);
+    assertNotNull(pn.getKey());
+    // read from cache
+    assertEquals(pn.getKey(), service.createOrGet(parse("Picea excelsa Link"), true).getKey());
+    assertEquals(pn.getKey(), service.createOrGet(parse("Picea excelsa Link"), false).getKey());
+
+    // the new name has no usage
+    assertEquals(2, service.deleteOrphaned());
+    ParsedName pn2 = service.createOrGet(parse("Picea excelsa Link"), false);
+    assertNotNull(pn2.getKey());
+    assertNotEquals(pn.getKey(), pn2.getKey());
+  }
+
   @Test
   public void testReparse() throws Exception {
     assertEquals(5, service.reparseAll());
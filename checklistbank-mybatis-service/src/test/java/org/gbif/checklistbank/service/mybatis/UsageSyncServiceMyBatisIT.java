@@ -10,8 +10,10 @@ import org.gbif.api.service.checklistbank.NameParser;
 import org.gbif.api.service.checklistbank.NameUsageService;
 import org.gbif.api.util.ClassificationUtils;
 import org.gbif.api.vocabulary.*;
+import org.gbif.checklistbank.model.ExtensionHash;
 import org.gbif.checklistbank.model.UsageExtensions;
 import org.gbif.checklistbank.service.UsageSyncService;
+import org.gbif.checklistbank.service.mybatis.mapper.UsageExtensionMapper;
 import org.gbif.checklistbank.service.mybatis.postgres.ClbDbTestRule;
 import org.gbif.dwc.terms.DwcTerm;
 import org.gbif.nameparser.NameParserGbifV1;
@@ -23,7 +25,9 @@ import java.util.Date;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 /**
  *
@@ -159,6 +163,149 @@ public class UsageSyncServiceMyBatisIT extends MyBatisServiceITBase<UsageSyncSer
     assertEquals(p.getKey(), u2.getNubKey());
   }
 
+  /**
+   * Re-syncing unchanged extensions must keep all extension records, changed ones only replace the modified records.
+   */
+  @Test
+  public void testSyncExtensionDiff() throws Exception {
+    NameUsage k = addHigher(1, null, null, "Plantae", Rank.KINGDOM);
+    UsageExtensionMapper extMapper = getInstance(UsageExtensionMapper.class);
+
+    UsageExtensions e = new UsageExtensions();
+    e.descriptions.add(buildDescription());
+    e.distributions.add(buildDistribution());
+    e.identifiers.add(buildIdentifier());
+    e.speciesProfiles.add(buildSpeciesProfile());
+    VernacularName v1 = buildVernacularName();
+    v1.setVernacularName("Weißtanne");
+    VernacularName v2 = buildVernacularName();
+    v2.setVernacularName("Silver fir");
+    e.vernacularNames.add(v1);
+    e.vernacularNames.add(v2);
+
+    service.syncUsageExtras(true, ClbDbTestRule.SQUIRRELS_DATASET_KEY, k.getKey(), null, e);
+    List<ExtensionHash> hashes = extMapper.listHashes(k.getKey());
+    assertEquals(6, hashes.size());
+
+    // unchanged
+    service.syncUsageExtras(false, ClbDbTestRule.SQUIRRELS_DATASET_KEY, k.getKey(), null, e);
+    assertEquals(Sets.newHashSet(hashes), Sets.newHashSet(extMapper.listHashes(k.getKey())));
+
+    // modify one vernacular name and remove the distribution
+    v2.setVernacularName("European silver fir");
+    e.distributions.clear();
+    service.syncUsageExtras(false, ClbDbTestRule.SQUIRRELS_DATASET_KEY, k.getKey(), null, e);
+    List<ExtensionHash> hashes2 = extMapper.listHashes(k.getKey());
+    assertEquals(5, hashes2.size());
+    assertEquals(4, Sets.intersection(Sets.newHashSet(hashes), Sets.newHashSet(hashes2)).size());
+    for (ExtensionHash eh : hashes2) {
+      assertNotEquals(Extension.DISTRIBUTION, eh.getExtension());
+    }
+  }
+
+  /**
+   * Unchanged verbatim and extension data must not be written again.
+   */
+  @Test
+  public void testSkipUnchangedExtras() throws Exception {
+    NameUsage k = addHigher(1, null, null, "Plantae", Rank.KINGDOM);
+    UsageExtensionMapper extMapper = getInstance(UsageExtensionMapper.class);
+
+    VerbatimNameUsage v = new VerbatimNameUsage();
+    v.setCoreField(DwcTerm.scientificName, "Plantae");
+    v.setCoreField(DwcTerm.taxonID, "Plantae");
+    UsageExtensions e = new UsageExtensions();
+    e.vernacularNames.add(buildVernacularName());
+    service.syncUsageExtras(true, ClbDbTestRule.SQUIRRELS_DATASET_KEY, k.getKey(), v, e);
+    List<ExtensionHash> hashes = extMapper.listHashes(k.getKey());
+    assertEquals(1, hashes.size());
+
+    // remove the vernacular name behind the back of the sync service which should not notice it
+    extMapper.deleteByKeys(Extension.VERNACULAR_NAME, Lists.newArrayList(hashes.get(0).getKey()));
+    v.setLastCrawled(new Date());
+    service.syncUsageExtras(false, ClbDbTestRule.SQUIRRELS_DATASET_KEY, k.getKey(), v, e);
+    assertEquals(0, extMapper.listHashes(k.getKey()).size());
+
+    // a modified verbatim record syncs all data again
+    v.setCoreField(DwcTerm.kingdom, "Plantae");
+    service.syncUsageExtras(false, ClbDbTestRule.SQUIRRELS_DATASET_KEY, k.getKey(), v, e);
+    assertEquals(1, extMapper.listHashes(k.getKey()).size());
+  }
+
+  /**
+   * Bulk sync a genus and species with reserved keys in one batch, then update both via their existing keys.
+   */
+  @Test
+  public void testSyncUsages() throws Exception {
+    NameUsage k = addHigher(1, null, null, "Plantae", Rank.KINGDOM);
+    assertEquals((Integer) 1, service.listTaxonKeys(ClbDbTestRule.SQUIRRELS_DATASET_KEY).get("Plantae"));
+
+    List<Integer> keys = service.nextKeys(2);
+    assertEquals(2, keys.size());
+
+    NameUsage g = new NameUsage();
+    g.setDatasetKey(ClbDbTestRule.SQUIRRELS_DATASET_KEY);
+    g.setKey(keys.get(0));
+    g.setTaxonID("g1");
+    g.setScientificName("Abies");
+    g.setRank(Rank.GENUS);
+    g.setTaxonomicStatus(TaxonomicStatus.ACCEPTED);
+    g.setOrigin(Origin.SOURCE);
+    g.setParentKey(k.getKey());
+    g.setKingdomKey(k.getKey());
+    g.setGenusKey(-1);
+    g.setRemarks("tab\tand \\ backslash");
+
+    NameUsage s = new NameUsage();
+    s.setDatasetKey(ClbDbTestRule.SQUIRRELS_DATASET_KEY);
+    s.setKey(keys.get(1));
+    s.setTaxonID("s1");
+    s.setScientificName("Abies alba Mill.");
+    s.setRank(Rank.SPECIES);
+    s.setTaxonomicStatus(TaxonomicStatus.ACCEPTED);
+    s.setOrigin(Origin.SOURCE);
+    s.setParentKey(g.getKey());
+    s.setKingdomKey(k.getKey());
+    s.setGenusKey(g.getKey());
+    s.setSpeciesKey(-1);
+    s.setAccordingTo("Chuck told me this");
+    s.getIssues().add(NameUsageIssue.CHAINED_SYNOYM);
+    s.getNomenclaturalStatus().add(NomenclaturalStatus.CONSERVED);
+    s.setNubKey(k.getKey());
+
+    NameUsageMetrics mg = new NameUsageMetrics();
+    mg.setNumSpecies(1);
+    NameUsageMetrics ms = new NameUsageMetrics();
+    service.syncUsages(ClbDbTestRule.SQUIRRELS_DATASET_KEY, Lists.newArrayList(g, s),
+        Lists.newArrayList(PARSER.parse(g.getScientificName(), g.getRank()), PARSER.parse(s.getScientificName(), s.getRank())),
+        Lists.newArrayList(mg, ms));
+
+    NameUsage g2 = uService.get(keys.get(0), null);
+    assertEquals(g.getRemarks(), g2.getRemarks());
+    assertEquals(keys.get(0), g2.getGenusKey());
+    assertEquals(k.getKey(), g2.getParentKey());
+
+    NameUsage s2 = uService.get(keys.get(1), null);
+    assertEquals(keys.get(0), s2.getParentKey());
+    assertEquals(keys.get(0), s2.getGenusKey());
+    assertEquals(keys.get(1), s2.getSpeciesKey());
+    assertEquals(s.getIssues(), s2.getIssues());
+    assertEquals(s.getNomenclaturalStatus(), s2.getNomenclaturalStatus());
+    assertEquals(s.getAccordingTo(), s2.getAccordingTo());
+    assertEquals(k.getKey(), s2.getNubKey());
+    assertEquals(1, uService.getMetrics(keys.get(0)).getNumSpecies());
+
+    // update existing usages
+    assertEquals(keys.get(1), service.listTaxonKeys(ClbDbTestRule.SQUIRRELS_DATASET_KEY).get("s1"));
+    s.setRemarks("updated");
+    s.setNubKey(null);
+    service.syncUsages(ClbDbTestRule.SQUIRRELS_DATASET_KEY, Lists.newArrayList(s),
+        Lists.newArrayList(PARSER.parse(s.getScientificName(), s.getRank())), Lists.newArrayList(ms));
+    s2 = uService.get(keys.get(1), null);
+    assertEquals("updated", s2.getRemarks());
+    assertNull(s2.getNubKey());
+  }
+
   /**
    * Makes sure all db enums are matching the API enum values
    */
@@ -53,4 +53,12 @@ public class NameUsageMapperWithDataIT extends MapperITBase<NameUsageMapper> {
     assertEquals(46, proc.counter);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testDatasetState() {
+    assertEquals("0:0::", mapper.datasetState(UUID.randomUUID()));
+    String state = mapper.datasetState(ClbDbTestRule.SQUIRRELS_DATASET_KEY);
+    assertTrue(state.startsWith("44:"));
+    assertEquals(state, mapper.datasetState(ClbDbTestRule.SQUIRRELS_DATASET_KEY));
+  }
+
+}
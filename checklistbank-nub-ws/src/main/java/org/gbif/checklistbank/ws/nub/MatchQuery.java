@@ -0,0 +1,147 @@
+package org.gbif.checklistbank.ws.nub;
+
+import org.gbif.api.model.common.LinneanClassification;
+
+import com.google.common.base.Strings;
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * A single name query as posted to the batch matching resource.
+ * Mirrors the query parameters of the GET /species/match resource.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MatchQuery {
+  private String name;
+  private String authorship;
+  private String rank;
+  private String kingdom;
+  private String phylum;
+  private String clazz;
+  private String order;
+  private String family;
+  private String genus;
+  private String subgenus;
+  private Boolean strict;
+  private Boolean verbose;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getAuthorship() {
+    return authorship;
+  }
+
+  public void setAuthorship(String authorship) {
+    this.authorship = authorship;
+  }
+
+  public String getRank() {
+    return rank;
+  }
+
+  public void setRank(String rank) {
+    this.rank = rank;
+  }
+
+  public String getKingdom() {
+    return kingdom;
+  }
+
+  public void setKingdom(String kingdom) {
+    this.kingdom = kingdom;
+  }
+
+  public String getPhylum() {
+    return phylum;
+  }
+
+  public void setPhylum(String phylum) {
+    this.phylum = phylum;
+  }
+
+  @JsonProperty("class")
+  public String getClazz() {
+    return clazz;
+  }
+
+  @JsonProperty("class")
+  public void setClazz(String clazz) {
+    this.clazz = clazz;
+  }
+
+  public String getOrder() {
+    return order;
+  }
+
+  public void setOrder(String order) {
+    this.order = order;
+  }
+
+  public String getFamily() {
+    return family;
+  }
+
+  public void setFamily(String family) {
+    this.family = family;
+  }
+
+  public String getGenus() {
+    return genus;
+  }
+
+  public void setGenus(String genus) {
+    this.genus = genus;
+  }
+
+  public String getSubgenus() {
+    return subgenus;
+  }
+
+  public void setSubgenus(String subgenus) {
+    this.subgenus = subgenus;
+  }
+
+  public Boolean getStrict() {
+    return strict;
+  }
+
+  public void setStrict(Boolean strict) {
+    this.strict = strict;
+  }
+
+  public Boolean getVerbose() {
+    return verbose;
+  }
+
+  public void setVerbose(Boolean verbose) {
+    this.verbose = verbose;
+  }
+
+  /**
+   * @return the scientific name with the separate authorship appended unless it is already part of the name
+   */
+  public String scientificName() {
+    if (name != null && !Strings.isNullOrEmpty(authorship) && !name.trim().endsWith(authorship.trim())) {
+      return name.trim() + " " + authorship.trim();
+    }
+    return name;
+  }
+
+  public LinneanClassification classification() {
+    Classification cl = new Classification();
+    cl.setKingdom(kingdom);
+    cl.setPhylum(phylum);
+    cl.setClazz(clazz);
+    cl.setOrder(order);
+    cl.setFamily(family);
+    cl.setGenus(genus);
+    cl.setSubgenus(subgenus);
+    return cl;
+  }
+}
@@ -1,8 +1,13 @@
 package org.gbif.checklistbank.ws.nub;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Queues;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.gbif.api.model.checklistbank.NameUsageMatch;
 import org.gbif.api.model.common.LinneanClassification;
 import org.gbif.api.util.VocabularyUtils;
@@ -12,24 +17,56 @@ import org.gbif.nub.lookup.NameUsageMatchingService2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @Path("/species")
 @Singleton
 public class NubResource {
 
   private static final Logger LOG = LoggerFactory.getLogger(NubResource.class);
+  public static final String BATCH_EXECUTOR = "checklistbank.nub.batch.executor";
+  public static final String BATCH_THREADS = "checklistbank.nub.batch.threads";
+  /**
+   * Maximum number of name queries accepted in a single batch request.
+   */
+  private static final int MAX_BATCH_SIZE = 10000;
+  /**
+   * Number of matches that can be pending per worker thread before the response writer blocks.
+   */
+  private static final int BATCH_WINDOW_PER_THREAD = 4;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    MAPPER.setSerializationInclusion(JsonSerialize.Inclusion.NON_NULL);
+  }
 
   private final NameUsageMatchingService2 matchingService;
+  private final ExecutorService batchExec;
+  private final int batchWindow;
 
   @Inject
-  public NubResource(NameUsageMatchingService2 matchingService) {
+  public NubResource(NameUsageMatchingService2 matchingService,
+                     @Named(BATCH_EXECUTOR) ExecutorService batchExec, @Named(BATCH_THREADS) Integer batchThreads) {
     this.matchingService = matchingService;
+    this.batchExec = batchExec;
+    this.batchWindow = batchThreads * BATCH_WINDOW_PER_THREAD;
   }
 
   @GET
@@ -52,6 +89,85 @@ public class NubResource {
     return matchingService.v2(matchingService.match(scientificName, r, classification, bool(strict), bool(verbose)));
   }
 
+  /**
+   * Matches a json array of name queries in one request.
+   * The queries are matched concurrently on a bounded worker pool and the resulting json array
+   * is streamed back with exactly one match per query in the original order.
+   * <pre>
+   * curl -X POST -H "Content-Type:application/json" --data-binary @names.json http://api.gbif.org/v1/species/match/batch
+   * </pre>
+   */
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("match/batch")
+  public Response matchBatch(final List<MatchQuery> queries) {
+    if (queries == null || queries.isEmpty()) {
+      throw badRequest("No name queries given");
+    }
+    if (queries.size() > MAX_BATCH_SIZE) {
+      throw badRequest("Too many name queries. Maximum batch size is " + MAX_BATCH_SIZE);
+    }
+    // parse ranks upfront so we fail before the streaming response has started
+    final Rank[] ranks = new Rank[queries.size()];
+    for (int idx = 0; idx < queries.size(); idx++) {
+      final String rank = queries.get(idx).getRank();
+      try {
+        ranks[idx] = parse(Rank.class, rank);
+      } catch (IllegalArgumentException e) {
+        throw badRequest("Invalid rank " + rank + " in name query " + idx);
+      }
+    }
+
+    StreamingOutput stream = new StreamingOutput() {
+      @Override
+      public void write(OutputStream out) throws IOException {
+        JsonGenerator jgen = MAPPER.getJsonFactory().createJsonGenerator(out);
+        jgen.writeStartArray();
+        Deque<Future<NameUsageMatch>> pending = Queues.newArrayDeque();
+        try {
+          for (int idx = 0; idx < queries.size(); idx++) {
+            if (pending.size() >= batchWindow) {
+              MAPPER.writeValue(jgen, next(pending));
+            }
+            final MatchQuery q = queries.get(idx);
+            final Rank r = ranks[idx];
+            pending.add(batchExec.submit(() ->
+                matchingService.match(q.scientificName(), r, q.classification(), bool(q.getStrict()), bool(q.getVerbose()))
+            ));
+          }
+          while (!pending.isEmpty()) {
+            MAPPER.writeValue(jgen, next(pending));
+          }
+        } finally {
+          for (Future<NameUsageMatch> f : pending) {
+            f.cancel(true);
+          }
+        }
+        jgen.writeEndArray();
+        jgen.flush();
+        LOG.debug("Matched batch of {} names", queries.size());
+      }
+    };
+    return Response.ok(stream).build();
+  }
+
+  private static NameUsageMatch next(Deque<Future<NameUsageMatch>> pending) throws IOException {
+    try {
+      return pending.poll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Batch matching interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Batch matching failed", e.getCause());
+    }
+  }
+
+  private static WebApplicationException badRequest(String message) {
+    return new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+        .entity(message).type(MediaType.TEXT_PLAIN).build());
+  }
+
   private <T extends Enum> T parse(Class<T> clazz, String value) throws IllegalArgumentException {
     if (!Strings.isNullOrEmpty(value)) {
       return VocabularyUtils.lookupEnum(value, clazz);
@@ -59,7 +175,7 @@ public class NubResource {
     return null;
   }
 
-  private boolean bool(Boolean bool) {
+  private static boolean bool(Boolean bool) {
     return bool == null ? false : bool;
   }
 
@@ -3,10 +3,15 @@ package org.gbif.checklistbank.ws.nub;
 
 import com.google.common.collect.Lists;
 import com.google.inject.Module;
+import com.google.inject.name.Names;
 import org.gbif.api.model.Constants;
+import org.gbif.checklistbank.config.MetricModule;
 import org.gbif.checklistbank.service.mybatis.guice.ChecklistBankServiceMyBatisModule;
 import org.gbif.checklistbank.utils.CloseableUtils;
+import org.gbif.checklistbank.utils.PropertiesUtils;
 import org.gbif.nub.lookup.NubMatchingModule;
+import org.gbif.utils.concurrent.ExecutorUtils;
+import org.gbif.utils.concurrent.NamedThreadFactory;
 import org.gbif.utils.file.properties.PropertiesUtil;
 import org.gbif.ws.app.ConfUtils;
 import org.gbif.ws.server.guice.GbifServletListener;
@@ -18,12 +23,18 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class NubWsListener extends GbifServletListener {
   private static final String APP_CONF_FILE = "checklistbank.properties";
   private static final String INDEX_DIR = "checklistbank.nub.indexDir";
   private static final String NUB_DATASET_KEY = "checklistbank.nub.datasetKey";
+  private static final String CACHE_SIZE = "checklistbank.nub.cacheSize";
+  private static final String REBUILD_HOURS = "checklistbank.nub.rebuildHours";
   private List<Closeable> toBeClosed = Lists.newArrayList();
+  private ExecutorService batchExec;
 
   public NubWsListener() throws IOException {
     super(PropertiesUtil.readFromFile(ConfUtils.getAppConfFile(APP_CONF_FILE)), NubResource.class.getPackage().getName(), false);
@@ -37,10 +48,23 @@ public class NubWsListener extends GbifServletListener {
     modules.add(clbMod);
     toBeClosed.add(clbMod);
 
+    modules.add(new MetricModule(properties));
+
     UUID datasetKey = UUID.fromString(properties.getProperty(NUB_DATASET_KEY, Constants.NUB_DATASET_KEY.toString()));
-    NubMatchingModule nubMod = new NubMatchingModule(new File(properties.getProperty(INDEX_DIR)), datasetKey);
+    int cacheSize = PropertiesUtils.getIntProp(properties, CACHE_SIZE, NubMatchingModule.DEFAULT_CACHE_SIZE);
+    int rebuildHours = PropertiesUtils.getIntProp(properties, REBUILD_HOURS, 0);
+    NubMatchingModule nubMod = new NubMatchingModule(new File(properties.getProperty(INDEX_DIR)), datasetKey, cacheSize, rebuildHours);
     modules.add(nubMod);
     toBeClosed.add(nubMod);
+    // bounded worker pool for batch matching requests
+    final int batchThreads = PropertiesUtils.getIntProp(properties, NubResource.BATCH_THREADS,
+        Runtime.getRuntime().availableProcessors());
+    batchExec = Executors.newFixedThreadPool(batchThreads, new NamedThreadFactory("nub-batch-match"));
+    modules.add(binder -> {
+      binder.bind(ExecutorService.class).annotatedWith(Names.named(NubResource.BATCH_EXECUTOR)).toInstance(batchExec);
+      binder.bind(Integer.class).annotatedWith(Names.named(NubResource.BATCH_THREADS)).toInstance(batchThreads);
+    });
+
     // use the line below to run the webservice locally with the json test index data from the nub module
     // modules.add(new NubMatchingTestModule());
     return modules;
@@ -49,6 +73,9 @@ public class NubWsListener extends GbifServletListener {
   @Override
   public void contextDestroyed(ServletContextEvent servletContextEvent) {
     super.contextDestroyed(servletContextEvent);
+    if (batchExec != null) {
+      ExecutorUtils.stop(batchExec, 10, TimeUnit.SECONDS);
+    }
     // close modules
     CloseableUtils.close(toBeClosed);
   }
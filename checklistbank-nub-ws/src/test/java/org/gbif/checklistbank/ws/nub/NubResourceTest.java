@@ -0,0 +1,109 @@
+package org.gbif.checklistbank.ws.nub;
+
+import org.gbif.api.model.checklistbank.NameUsageMatch;
+import org.gbif.api.model.common.LinneanClassification;
+import org.gbif.api.vocabulary.Rank;
+import org.gbif.nub.lookup.NameUsageMatchingService2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.common.collect.Lists;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class NubResourceTest {
+  private NameUsageMatchingService2 service;
+  private ExecutorService exec;
+  private NubResource resource;
+
+  @Before
+  public void init() {
+    service = mock(NameUsageMatchingService2.class);
+    when(service.match(eq("Abies alba Mill."), eq(Rank.SPECIES), any(LinneanClassification.class), anyBoolean(), anyBoolean()))
+        .thenReturn(match(1, "Abies alba Mill."));
+    when(service.match(eq("Abies"), (Rank) eq(null), any(LinneanClassification.class), anyBoolean(), anyBoolean()))
+        .thenReturn(match(2, "Abies"));
+    exec = Executors.newFixedThreadPool(2);
+    resource = new NubResource(service, exec, 2);
+  }
+
+  @After
+  public void shutdown() {
+    exec.shutdownNow();
+  }
+
+  @Test
+  public void testMatchBatch() throws Exception {
+    List<MatchQuery> queries = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      queries.add(i % 2 == 0 ? query("Abies alba", "Mill.", "species") : query("Abies", null, null));
+    }
+
+    Response resp = resource.matchBatch(queries);
+    assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) resp.getEntity()).write(out);
+    JsonNode json = new ObjectMapper().readTree(out.toString("UTF-8"));
+    assertEquals(20, json.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i % 2 == 0 ? 1 : 2, json.get(i).get("usageKey").getIntValue());
+    }
+  }
+
+  @Test
+  public void testMatchBatchEmpty() throws Exception {
+    assertBadRequest(Collections.<MatchQuery>emptyList());
+    assertBadRequest(null);
+  }
+
+  @Test
+  public void testMatchBatchBadRank() throws Exception {
+    assertBadRequest(Lists.newArrayList(query("Abies alba", null, "species"), query("Abies", null, "gattung")));
+  }
+
+  private void assertBadRequest(List<MatchQuery> queries) {
+    try {
+      resource.matchBatch(queries);
+      fail("Bad request expected");
+    } catch (WebApplicationException e) {
+      assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), e.getResponse().getStatus());
+    }
+    verifyZeroInteractions(service);
+  }
+
+  private static MatchQuery query(String name, String authorship, String rank) {
+    MatchQuery q = new MatchQuery();
+    q.setName(name);
+    q.setAuthorship(authorship);
+    q.setRank(rank);
+    return q;
+  }
+
+  private static NameUsageMatch match(int key, String name) {
+    NameUsageMatch m = new NameUsageMatch();
+    m.setUsageKey(key);
+    m.setScientificName(name);
+    m.setMatchType(NameUsageMatch.MatchType.EXACT);
+    return m;
+  }
+}
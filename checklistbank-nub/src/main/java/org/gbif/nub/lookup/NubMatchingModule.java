@@ -1,10 +1,12 @@
 package org.gbif.nub.lookup;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.PrivateModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.name.Names;
 import org.gbif.api.model.Constants;
 import org.gbif.api.service.checklistbank.NameUsageMatchingService;
 import org.gbif.checklistbank.service.mybatis.mapper.NameUsageMapper;
@@ -12,6 +14,7 @@ import org.gbif.checklistbank.utils.CloseableUtils;
 import org.gbif.nub.lookup.fuzzy.HigherTaxaComparator;
 import org.gbif.nub.lookup.fuzzy.NubIndex;
 import org.gbif.nub.lookup.fuzzy.NubMatchingServiceImpl;
+import org.gbif.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,15 +23,23 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Guice module setting up all dependencies to expose the NubMatching service.
- * Requires a NameUsageMapper and a ClbConfiguration instance to be injectable
+ * Requires a NameUsageMapper, a ClbConfiguration and the shared MetricRegistry, e.g. from the MetricModule, to be bound.
+ * The match cache metrics are exposed in that registry.
+ * Optionally the nub index can be rebuilt periodically in the background without interrupting the service.
  */
 public class NubMatchingModule extends PrivateModule implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(NubMatchingModule.class);
+  public static final int DEFAULT_CACHE_SIZE = 100000;
   private final File indexDir;
   private final UUID nubDatasetKey;
+  private final int cacheSize;
+  private final int rebuildHours;
   private List<AutoCloseable> toBeClosed = Lists.newArrayList();
 
   /**
@@ -41,7 +52,7 @@ public class NubMatchingModule extends PrivateModule implements Closeable {
   /**
    * Creates a file based nub index which is built in case the index does not yet exist.
    *
-   * @param indexDir the directory to keep the lucene index in. If existing the index will be reused
+   * @param indexDir the directory to keep the lucene index in. If complete and up to date the index will be reused
    */
   private NubMatchingModule(File indexDir) {
     this(indexDir, Constants.NUB_DATASET_KEY);
@@ -50,16 +61,43 @@ public class NubMatchingModule extends PrivateModule implements Closeable {
   /**
    * Creates a file based nub index which is built in case the index does not yet exist.
    *
-   * @param indexDir      the directory to keep the lucene index in. If existing the index will be reused
+   * @param indexDir      the directory to keep the lucene index in. If complete and up to date the index will be reused
    * @param nubDatasetKey the dataset key to use for populating the nub index
    */
   public NubMatchingModule(File indexDir, UUID nubDatasetKey) {
+    this(indexDir, nubDatasetKey, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a file based nub index which is built in case the index does not yet exist.
+   *
+   * @param indexDir      the directory to keep the lucene index in. If complete and up to date the index will be reused
+   * @param nubDatasetKey the dataset key to use for populating the nub index
+   * @param cacheSize     maximum number of match results to cache, zero to disable the match cache
+   */
+  public NubMatchingModule(File indexDir, UUID nubDatasetKey, int cacheSize) {
+    this(indexDir, nubDatasetKey, cacheSize, 0);
+  }
+
+  /**
+   * Creates a file based nub index which is built in case the index does not yet exist.
+   *
+   * @param indexDir      the directory to keep the lucene index in. If complete and up to date the index will be reused
+   * @param nubDatasetKey the dataset key to use for populating the nub index
+   * @param cacheSize     maximum number of match results to cache, zero to disable the match cache
+   * @param rebuildHours  interval in hours to rebuild the nub index in the background, zero to never rebuild
+   */
+  public NubMatchingModule(File indexDir, UUID nubDatasetKey, int cacheSize, int rebuildHours) {
     this.indexDir = indexDir;
     this.nubDatasetKey = nubDatasetKey;
+    this.cacheSize = cacheSize;
+    this.rebuildHours = rebuildHours;
   }
 
   @Override
   protected void configure() {
+    requireBinding(MetricRegistry.class);
+    bindConstant().annotatedWith(Names.named(NubMatchingServiceImpl.CACHE_SIZE)).to(cacheSize);
     bind(NubMatchingServiceImpl.class).asEagerSingleton();
 
     bind(NameUsageMatchingService.class).to(NubMatchingServiceImpl.class);
@@ -82,16 +120,48 @@ public class NubMatchingModule extends PrivateModule implements Closeable {
       LOG.info("Lucene file index initialized at {}", indexDir.getAbsolutePath());
     }
     toBeClosed.add(index);
+    if (rebuildHours > 0) {
+      scheduleRebuilds(index, mapper);
+    }
     return index;
   }
 
+  private void scheduleRebuilds(NubIndex index, NameUsageMapper mapper) {
+    LOG.info("Rebuild nub index every {} hours", rebuildHours);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("nub-index-rebuild"));
+    scheduler.scheduleWithFixedDelay(() -> {
+      if (NubIndex.checksum(mapper, nubDatasetKey).equals(index.getChecksum())) {
+        LOG.info("Dataset {} unchanged, no need to rebuild the nub index", nubDatasetKey);
+        return;
+      }
+      // rebuilt file indices are moved into the configured directory once complete
+      try {
+        index.rebuild(mapper, nubDatasetKey);
+      } catch (Exception e) {
+        LOG.error("Failed to rebuild nub index, keep using the existing one", e);
+      }
+    }, rebuildHours, rebuildHours, TimeUnit.HOURS);
+    // stop rebuilds before the index gets closed
+    toBeClosed.add(0, scheduler::shutdownNow);
+  }
+
+  /**
+   * Provides the synonym dictionaries bundled with the library right away
+   * and refreshes them from rs.gbif.org in the background, so startup never waits for the network.
+   */
   @Provides
   @Singleton
   public static HigherTaxaComparator provideSynonyms() {
     HigherTaxaComparator comp = new HigherTaxaComparator();
-    LOG.info("Start loading synonym dictionaries from rs.gbif.org ...");
-    comp.loadOnlineDicts();
-    LOG.info("Online synonym dictionaries loaded");
+    comp.loadBundledDicts();
+    LOG.info("Bundled synonym dictionaries loaded with {} entries", comp.size());
+    Thread refresh = new Thread(() -> {
+      LOG.info("Start refreshing synonym dictionaries from rs.gbif.org ...");
+      comp.loadOnlineDicts();
+      LOG.info("Synonym dictionaries refreshed with {} entries", comp.size());
+    }, "synonym-dicts-refresh");
+    refresh.setDaemon(true);
+    refresh.start();
     return comp;
   }
 
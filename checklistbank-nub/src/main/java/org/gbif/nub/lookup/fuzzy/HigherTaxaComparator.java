@@ -24,7 +24,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -32,6 +34,7 @@ import java.util.regex.Pattern;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
@@ -47,6 +50,10 @@ import org.slf4j.LoggerFactory;
  * The class uses file based dictionaries which are hosted on http://rs.gbif.org/dictionaries/synonyms/
  * and which are maintained with OpenRefine based on real data found in occurrence and checklist records in github:
  * https://github.com/gbif/rs.gbif.org/tree/master/dictionaries/synonyms
+ *
+ * A snapshot of the dictionaries is bundled on the classpath and used whenever rs.gbif.org cannot be reached.
+ * All dictionary keys are normalized once when loaded, so lookups only have to normalize the query name.
+ * Reloading replaces entire dictionaries at once, so dictionaries can be refreshed while lookups are running.
  */
 public class HigherTaxaComparator {
   private final static Map<Rank, String> SYNONYM_FILENAMES = Maps.newHashMap();
@@ -57,11 +64,18 @@ public class HigherTaxaComparator {
     SYNONYM_FILENAMES.put(Rank.ORDER, "order.txt");
     SYNONYM_FILENAMES.put(Rank.FAMILY, "family.txt");
   }
-  private static final Set<String> NON_NAMES = Sets.newHashSet();
+  private static volatile Set<String> NON_NAMES = ImmutableSet.of();
+  private static final Pattern REMOVE_NON_LETTERS = Pattern.compile("[\\W\\d]+");
+  /**
+   * Classpath folder with a bundled snapshot of all rs.gbif.org dictionaries.
+   */
+  public static final String BUNDLED_DICTS = "org/gbif/nub/dicts";
+  private static final int TIMEOUT_MS = 10000;
 
   private Logger log = LoggerFactory.getLogger(HigherTaxaComparator.class);
-  private Map<Rank, Map<String, String>> syn = Maps.newHashMap();
-  private Map<String, Kingdom> kingdoms = Maps.newHashMap();
+  // copy on write maps, never modified once published
+  private volatile EnumMap<Rank, Map<String, String>> syn = Maps.newEnumMap(Rank.class);
+  private volatile Map<String, Kingdom> kingdoms = Maps.newHashMap();
 
   /**
    *
@@ -118,8 +132,9 @@ public class HigherTaxaComparator {
     if (higherTaxon == null) {
       return null;
     }
+    final String normedHT = norm(higherTaxon);
     for (Rank r : syn.keySet()) {
-      String result = lookup(higherTaxon, r);
+      String result = lookupNormed(higherTaxon, normedHT, r);
       if (result != null) {
         return result;
       }
@@ -140,14 +155,23 @@ public class HigherTaxaComparator {
     if (higherTaxon == null) {
       return null;
     }
-    if (isBlacklisted(higherTaxon)) {
-      return null;
-    }
-    if (syn.containsKey(rank)) {
-      String normedHT = norm(higherTaxon);
-      Map<String, String> x = syn.get(rank);
-      if (syn.get(rank).containsKey(normedHT)) {
-        return syn.get(rank).get(normedHT);
+    return lookupNormed(higherTaxon, norm(higherTaxon), rank);
+  }
+
+  /**
+   * @param normedHT the already normalized higher taxon
+   */
+  private String lookupNormed(String higherTaxon, String normedHT, Rank rank) {
+    if (normedHT != null) {
+      if (NON_NAMES.contains(normedHT)) {
+        return null;
+      }
+      Map<String, String> synonyms = syn.get(rank);
+      if (synonyms != null) {
+        String accepted = synonyms.get(normedHT);
+        if (accepted != null) {
+          return accepted;
+        }
       }
     }
     return higherTaxon;
@@ -172,7 +196,6 @@ public class HigherTaxaComparator {
    */
   @VisibleForTesting
   protected static String norm(String x) {
-    Pattern REMOVE_NON_LETTERS = Pattern.compile("[\\W\\d]+");
     x = Strings.nullToEmpty(x);
     x = REMOVE_NON_LETTERS.matcher(x).replaceAll(" ");
     x = StringUtils.normalizeSpace(x).toUpperCase();
@@ -198,14 +221,30 @@ public class HigherTaxaComparator {
    * @return
    */
   private Map<String, String> readSynonymUrl(Rank rank, String file) {
-    try {
-      URL url = RsGbifOrg.synonymUrl(file);
-      log.debug("Reading " + url.toString());
-      return readSynonymStream(rank, url.openStream());
+    URL url = RsGbifOrg.synonymUrl(file);
+    log.debug("Reading " + url.toString());
+    try (InputStream in = openUrl(url)) {
+      Map<String, String> synonyms = FileUtils.streamToMap(in, 0, 1, true);
+      log.debug("loaded " + synonyms.size() + " synonyms for " + rank);
+      return synonyms;
     } catch (IOException e) {
-      log.warn("Cannot read synonym map from " + file + ". Use empty map instead.", e);
+      log.warn("Cannot read synonym map from {}. Use bundled snapshot instead: {}", url, e.getMessage());
     }
-    return Maps.newHashMap();
+    return readSynonymStream(rank, openBundled(file));
+  }
+
+  /**
+   * Opens an url with connect and read timeouts so a slow host cannot stall the startup.
+   */
+  private static InputStream openUrl(URL url) throws IOException {
+    URLConnection con = url.openConnection();
+    con.setConnectTimeout(TIMEOUT_MS);
+    con.setReadTimeout(TIMEOUT_MS);
+    return con.getInputStream();
+  }
+
+  private static InputStream openBundled(String file) {
+    return HigherTaxaComparator.class.getClassLoader().getResourceAsStream(BUNDLED_DICTS + "/" + file);
   }
 
   /**
@@ -227,12 +266,14 @@ public class HigherTaxaComparator {
    * Reads blacklisted names from rs.gbif.org
    */
   private void readOnlineBlacklist() {
-    try {
-      URL url = RsGbifOrg.authorityUrl(RsGbifOrg.FILENAME_BLACKLIST);
-      log.debug("Reading " + url.toString());
-      readBlacklistStream(url.openStream());
+    URL url = RsGbifOrg.authorityUrl(RsGbifOrg.FILENAME_BLACKLIST);
+    log.debug("Reading " + url.toString());
+    try (InputStream in = openUrl(url)) {
+      NON_NAMES = ImmutableSet.copyOf(FileUtils.streamToSet(in));
+      log.debug("loaded " + NON_NAMES.size() + " blacklisted names");
     } catch (IOException e) {
-      log.warn("Cannot read online blacklist.", e);
+      log.warn("Cannot read online blacklist. Use bundled snapshot instead: {}", e.getMessage());
+      readBlacklistStream(openBundled(RsGbifOrg.FILENAME_BLACKLIST));
     }
   }
 
@@ -252,11 +293,11 @@ public class HigherTaxaComparator {
    * Reads blacklisted names from stream
    */
   private void readBlacklistStream(InputStream in) {
-    NON_NAMES.clear();
     try {
-      NON_NAMES.addAll(FileUtils.streamToSet(in));
+      NON_NAMES = ImmutableSet.copyOf(FileUtils.streamToSet(in));
     } catch (IOException e) {
       log.warn("Cannot read blacklist. Use empty set instead.", e);
+      NON_NAMES = ImmutableSet.of();
     } finally {
       Closeables.closeQuietly(in);
     }
@@ -298,8 +339,20 @@ public class HigherTaxaComparator {
     readBlacklistStream(blackIn);
   }
 
+  /**
+   * Reads the synonym dicts bundled with this library, a snapshot of the rs.gbif.org dictionaries.
+   */
+  public void loadBundledDicts() {
+    try {
+      loadClasspathDicts(BUNDLED_DICTS);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read bundled dictionaries", e);
+    }
+  }
+
   /**
    * Reloads all synonym files found on rs.gbif.org replacing existing mappings.
+   * Files that cannot be read from rs.gbif.org are taken from the bundled snapshot instead.
    */
   public void loadOnlineDicts() {
     log.info("Reloading dictionary files from rs.gbif.org ...");
@@ -337,30 +390,31 @@ public class HigherTaxaComparator {
       }
     }
 
-    syn.put(rank, synonymsNormed);
+    EnumMap<Rank, Map<String, String>> syn2 = new EnumMap<>(syn);
+    syn2.put(rank, synonymsNormed);
+    syn = syn2;
     log.debug("Loaded " + synonyms.size() + " " + rank.name() + " synonyms ");
 
     // also insert kingdom enum lookup in case of kingdom synonyms
     if (Rank.KINGDOM == rank) {
-      Map<String, String> map = syn.get(Rank.KINGDOM);
-      if (map != null) {
-        for (String syn : map.keySet()) {
-          Kingdom k = null;
-          String key = map.get(syn);
-          if (key != null) {
-            key = key.toLowerCase();
-            key = StringUtils.capitalize(key);
-            try {
-              k = Kingdom.valueOf(key);
-            } catch (Exception e) {
-            }
+      Map<String, Kingdom> kingdoms2 = Maps.newHashMap(kingdoms);
+      for (String syn : synonymsNormed.keySet()) {
+        Kingdom k = null;
+        String key = synonymsNormed.get(syn);
+        if (key != null) {
+          key = key.toLowerCase();
+          key = StringUtils.capitalize(key);
+          try {
+            k = Kingdom.valueOf(key);
+          } catch (Exception e) {
           }
-          this.kingdoms.put(norm(syn), k);
         }
+        kingdoms2.put(norm(syn), k);
       }
       for (Kingdom k : Kingdom.values()) {
-        this.kingdoms.put(norm(k.name()), k);
+        kingdoms2.put(norm(k.name()), k);
       }
+      kingdoms = kingdoms2;
     }
 
   }
@@ -370,8 +424,8 @@ public class HigherTaxaComparator {
    */
   public int size() {
     int all = 0;
-    for (Rank r : syn.keySet()) {
-      all += size(r);
+    for (Map<String, String> synonyms : syn.values()) {
+      all += synonyms.size();
     }
     return all;
   }
@@ -380,10 +434,8 @@ public class HigherTaxaComparator {
    * @return the number of entries for a given rank
    */
   public int size(Rank rank) {
-    if (syn.containsKey(rank)) {
-      return syn.get(rank).size();
-    }
-    return 0;
+    Map<String, String> synonyms = syn.get(rank);
+    return synonyms == null ? 0 : synonyms.size();
   }
 
   public Kingdom toKingdom(String kingdom) {
@@ -3,13 +3,17 @@ package org.gbif.nub.lookup.fuzzy;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.gbif.api.model.Constants;
 import org.gbif.api.model.checklistbank.NameUsage;
 import org.gbif.api.model.checklistbank.NameUsageMatch;
@@ -26,12 +30,26 @@ import org.gbif.nameparser.NameParserGbifV1;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -45,12 +63,20 @@ import java.util.UUID;
  * For the entire nub with roughly 4.5 million usages this index requires 4GB of heap memory if the RAMDirectory is used.
  * The memory mapped file index uses very little heap memory and instead all available memory should be given to the OS
  * to enabling caching on the file system level.
+ * A file index is marked complete with a commit marker that holds a checksum of the dataset state it was built from.
+ * As long as the dataset does not change the index is reused read-only, e.g. across restarts or by several servers.
+ * <p>
+ * A new index can be rebuilt in the background while the current one keeps serving requests.
+ * Once complete the searcher is swapped atomically. Searches in flight keep a reference to the old reader
+ * which is only closed once the last of them has finished.
+ * A rebuilt file index is written to a temporary sibling of the configured directory and renamed into its place
+ * while holding a file lock, so the configured directory only ever holds a complete index.
  */
 public class NubIndex implements AutoCloseable {
   private static final Logger LOG = LoggerFactory.getLogger(NubIndex.class);
 
   /**
-   * Type for a stored IntField with max precision to minimize memory usage as we dont need range queries.
+   * Type for an unstored IntField with max precision to minimize memory usage as we dont need range queries.
    */
   private static final FieldType INT_FIELD_MAX_PRECISION = new FieldType();
 
@@ -60,10 +86,22 @@ public class NubIndex implements AutoCloseable {
     INT_FIELD_MAX_PRECISION.setIndexOptions(IndexOptions.DOCS);
     INT_FIELD_MAX_PRECISION.setNumericType(FieldType.NumericType.INT);
     INT_FIELD_MAX_PRECISION.setNumericPrecisionStep(Integer.MAX_VALUE);
-    INT_FIELD_MAX_PRECISION.setStored(true);
+    INT_FIELD_MAX_PRECISION.setStored(false);
     INT_FIELD_MAX_PRECISION.freeze();
   }
 
+  /**
+   * Increase whenever the index structure changes to force existing file indices to be rebuilt.
+   */
+  private static final int FORMAT_VERSION = 2;
+  private static final String COMMIT_MARKER = "nubindex.commit";
+  private static final String MARKER_CHECKSUM = "checksum";
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final String BUILD_SUFFIX = ".build-";
+  private static final String RETIRED_SUFFIX = ".retired-";
+  // file locks are held by the entire JVM, so threads using the same lock file need to be serialized in addition
+  private static final ConcurrentMap<File, Object> BUILD_LOCKS = new ConcurrentHashMap<>();
+
   private static final String FIELD_ID = "id";
   private static final String FIELD_ACCEPTED_ID = "accid";
   private static final String FIELD_CANONICAL_NAME = "canonical";
@@ -91,8 +129,48 @@ public class NubIndex implements AutoCloseable {
 
   private static final ScientificNameAnalyzer analyzer = new ScientificNameAnalyzer();
   private static final NameParser parser = new NameParserGbifV1();
-  private final Directory index;
-  private final IndexSearcher searcher;
+  private volatile IndexState state;
+  private volatile boolean closed = false;
+  // incremented with every swapped in index
+  private volatile long generation = 0;
+  private final List<Runnable> swapListeners = new CopyOnWriteArrayList<>();
+  // optional directory of a file based index which is reused by rebuilds
+  private final File home;
+
+  /**
+   * A directory with its open reader and searcher.
+   * The readers reference count tracks the index itself plus all searches in flight.
+   */
+  private static class IndexState {
+    private final DirectoryReader reader;
+    private final IndexSearcher searcher;
+    // optional checksum of the dataset state the index was built from
+    private final String checksum;
+    // directory this instance has moved aside and which is removed once the reader is closed
+    private volatile File retired;
+
+    IndexState(Directory dir, @Nullable String checksum) throws IOException {
+      this.checksum = checksum;
+      reader = DirectoryReader.open(dir);
+      searcher = new IndexSearcher(reader);
+      reader.addReaderClosedListener(r -> {
+        try {
+          dir.close();
+        } catch (IOException e) {
+          LOG.warn("Failed to close nub index directory", e);
+        }
+        if (retired != null) {
+          LOG.info("Remove retired nub index directory {}", retired);
+          FileUtils.deleteQuietly(retired);
+        }
+      });
+    }
+  }
+
+  @FunctionalInterface
+  private interface LockedAction<T> {
+    T run() throws IOException;
+  }
 
   private static void load(Directory d, NameUsageMapper mapper, UUID nubDatasetKey) throws IOException {
     LOG.info("Start building a new nub index from checklist {}", nubDatasetKey);
@@ -109,9 +187,10 @@ public class NubIndex implements AutoCloseable {
   }
 
   public static NubIndex newMemoryIndex(NameUsageMapper mapper) throws IOException {
+    final String checksum = checksum(mapper, Constants.NUB_DATASET_KEY);
     RAMDirectory dir = new RAMDirectory();
     load(dir, mapper, Constants.NUB_DATASET_KEY);
-    return new NubIndex(dir);
+    return new NubIndex(new IndexState(dir, checksum), null);
   }
 
   public static NubIndex newMemoryIndex(Iterable<NameUsageMatch> usages) throws IOException {
@@ -135,33 +214,263 @@ public class NubIndex implements AutoCloseable {
 
   /**
    * Creates a nub index for the backbone by loading it from the lucene index dir if it exists.
-   * If it is not existing a new index directory will be built using the UsageService with given threads.
-   * If the indexDir is null the index is never written to the filesytem but just kept in memory.
+   * An existing index is only reused if it has been completely built from the current state of the dataset.
+   * Otherwise a new index is built using the mapper in a sibling directory and renamed into place once complete.
+   * A file lock is held while checking and building the index, so processes sharing the directory wait for each other
+   * instead of building the same index twice.
    *
-   * @param indexDir directory to use as the lucence index directory. If null the index is only kept in memory.
+   * @param indexDir directory to use as the lucence index directory
    */
   public static NubIndex newFileIndex(File indexDir, NameUsageMapper mapper, UUID nubDatasetKey) throws IOException {
-    MMapDirectory dir;
-    if (indexDir.exists()) {
-      Preconditions.checkArgument(indexDir.isDirectory(), "Given index directory exists but is not a directory");
-      // load existing index from disk
-      LOG.info("Loading existing nub index from disk: {}", indexDir.getAbsoluteFile());
-      dir = new MMapDirectory(indexDir.toPath());
+    Preconditions.checkArgument(!indexDir.exists() || indexDir.isDirectory(), "Given index directory exists but is not a directory");
+    final String checksum = checksum(mapper, nubDatasetKey);
+    return withLock(indexDir, () -> {
+      String committed = readCommitMarker(indexDir);
+      if (checksum.equals(committed)) {
+        LOG.info("Loading existing nub index from disk: {}", indexDir.getAbsoluteFile());
+      } else {
+        if (indexDir.exists()) {
+          LOG.info("Existing nub index at {} is {}. Rebuild index", indexDir.getAbsoluteFile(), committed == null ? "incomplete" : "outdated");
+        }
+        // the replaced index is not used by this instance. Other processes still reading it keep their open files
+        FileUtils.deleteQuietly(buildAndPromote(indexDir, mapper, nubDatasetKey, checksum));
+      }
+      return new NubIndex(open(indexDir, checksum), indexDir);
+    });
+  }
 
-    } else {
-      // persistent new memory mapped file based index and then populate it
-      LOG.info("Creating new nub index directory at {}", indexDir.getAbsoluteFile());
-      FileUtils.forceMkdir(indexDir);
-      dir = new MMapDirectory(indexDir.toPath());
-      load(dir, mapper, nubDatasetKey);
+  /**
+   * Opens a complete index directory read-only. No lucene lock is needed so other processes can share it.
+   */
+  private static IndexState open(File indexDir, String checksum) throws IOException {
+    return new IndexState(new MMapDirectory(indexDir.toPath(), NoLockFactory.INSTANCE), checksum);
+  }
+
+  /**
+   * Runs the given action while holding an exclusive lock on a file next to the index directory,
+   * so only a single thread or process at a time can build or replace the index in it.
+   */
+  private static <T> T withLock(File indexDir, LockedAction<T> action) throws IOException {
+    File lockFile = sibling(indexDir, LOCK_SUFFIX);
+    FileUtils.forceMkdir(lockFile.getParentFile());
+    synchronized (BUILD_LOCKS.computeIfAbsent(lockFile.getCanonicalFile(), f -> new Object())) {
+      try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+           FileLock lock = channel.lock()) {
+        return action.run();
+      }
     }
-    return new NubIndex(dir);
+  }
+
+  /**
+   * Builds a complete index in a new sibling directory and then renames it into the place of the given index directory.
+   * The existing index directory is renamed aside before, so it stays readable by open readers.
+   * Must only be called while holding the lock.
+   *
+   * @return the directory holding the replaced index or null if there was none
+   */
+  private static File buildAndPromote(File indexDir, NameUsageMapper mapper, UUID nubDatasetKey, String checksum) throws IOException {
+    removeStaleBuilds(indexDir);
+    final File tmp = sibling(indexDir, BUILD_SUFFIX + System.currentTimeMillis());
+    LOG.info("Building new nub index in {}", tmp);
+    FileUtils.forceMkdir(tmp);
+    try {
+      try (Directory dir = new MMapDirectory(tmp.toPath())) {
+        load(dir, mapper, nubDatasetKey);
+      }
+      writeCommitMarker(tmp, checksum);
+
+      File retired = null;
+      if (indexDir.exists()) {
+        retired = sibling(indexDir, RETIRED_SUFFIX + System.currentTimeMillis());
+        Files.move(indexDir.toPath(), retired.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      try {
+        Files.move(tmp.toPath(), indexDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        // put the previous index back in place
+        if (retired != null) {
+          Files.move(retired.toPath(), indexDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        throw e;
+      }
+      LOG.info("Moved new nub index into {}", indexDir.getAbsoluteFile());
+      return retired;
+
+    } catch (IOException | RuntimeException e) {
+      FileUtils.deleteQuietly(tmp);
+      throw e;
+    }
+  }
+
+  /**
+   * Removes leftovers of builds that have been interrupted, e.g. by a crash.
+   * Must only be called while holding the lock.
+   */
+  private static void removeStaleBuilds(File indexDir) {
+    File[] stale = indexDir.getAbsoluteFile().getParentFile().listFiles(
+        (dir, name) -> name.startsWith(indexDir.getName() + BUILD_SUFFIX)
+    );
+    if (stale != null) {
+      for (File f : stale) {
+        LOG.info("Remove incomplete nub index build {}", f);
+        FileUtils.deleteQuietly(f);
+      }
+    }
+  }
+
+  private static File sibling(File indexDir, String suffix) {
+    return new File(indexDir.getAbsoluteFile().getParentFile(), indexDir.getName() + suffix);
+  }
+
+  /**
+   * @return a checksum of the current state of the dataset in postgres used to detect outdated indices
+   */
+  public static String checksum(NameUsageMapper mapper, UUID datasetKey) {
+    return Hashing.md5()
+        .hashString(FORMAT_VERSION + "|" + datasetKey + "|" + mapper.datasetState(datasetKey), StandardCharsets.UTF_8)
+        .toString();
+  }
+
+  /**
+   * @return the dataset checksum of a completely built index or null if the commit marker is missing
+   */
+  private static String readCommitMarker(File indexDir) throws IOException {
+    File marker = new File(indexDir, COMMIT_MARKER);
+    if (!marker.exists()) {
+      return null;
+    }
+    Properties p = new Properties();
+    try (InputStream in = new FileInputStream(marker)) {
+      p.load(in);
+    }
+    return p.getProperty(MARKER_CHECKSUM);
+  }
+
+  /**
+   * Marks an index as completely built. Must only be called once the index writer was closed.
+   * The marker is synced to disk under a temporary name first and then renamed atomically,
+   * so a crash never leaves a partially written marker behind.
+   */
+  private static void writeCommitMarker(File indexDir, String checksum) throws IOException {
+    Properties p = new Properties();
+    p.setProperty(MARKER_CHECKSUM, checksum);
+    File tmp = new File(indexDir, COMMIT_MARKER + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(tmp)) {
+      p.store(out, "Complete nub index");
+      out.getFD().sync();
+    }
+    Files.move(tmp.toPath(), new File(indexDir, COMMIT_MARKER).toPath(), StandardCopyOption.ATOMIC_MOVE);
   }
 
   public NubIndex(Directory d) throws IOException {
-    index = d;
-    DirectoryReader reader = DirectoryReader.open(index);
-    searcher = new IndexSearcher(reader);
+    this(new IndexState(d, null), null);
+  }
+
+  private NubIndex(IndexState state, @Nullable File home) {
+    this.state = state;
+    this.home = home;
+  }
+
+  /**
+   * @return the checksum of the dataset state the current index was built from or null if unknown
+   */
+  @Nullable
+  public String getChecksum() {
+    return state.checksum;
+  }
+
+  /**
+   * @return the generation of the current index which changes whenever a rebuilt index was swapped in
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Builds a new index from the given dataset and swaps it in once it is complete.
+   * The current index keeps serving requests until then.
+   * <p>
+   * A memory index is rebuilt in memory. A file index is rebuilt next to its directory and then moved into its place,
+   * unless another process has already done so for the same dataset state.
+   */
+  public void rebuild(NameUsageMapper mapper, UUID nubDatasetKey) throws IOException {
+    final String checksum = checksum(mapper, nubDatasetKey);
+    if (home == null) {
+      RAMDirectory dir = new RAMDirectory();
+      load(dir, mapper, nubDatasetKey);
+      swap(new IndexState(dir, checksum), null);
+
+    } else {
+      withLock(home, () -> {
+        File retired = null;
+        if (checksum.equals(readCommitMarker(home))) {
+          LOG.info("Nub index at {} was already rebuilt by another process", home.getAbsoluteFile());
+        } else {
+          retired = buildAndPromote(home, mapper, nubDatasetKey, checksum);
+        }
+        swap(open(home, checksum), retired);
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Atomically replaces the current index with the given one.
+   * The old index is closed as soon as all searches still using it have completed.
+   *
+   * @param retired optional directory of the replaced index to be removed from disk once the old index is closed
+   */
+  private void swap(IndexState next, @Nullable File retired) throws IOException {
+    IndexState old;
+    synchronized (this) {
+      if (closed) {
+        next.reader.decRef();
+        FileUtils.deleteQuietly(retired);
+        throw new IllegalStateException("Nub index was closed during rebuild");
+      }
+      old = state;
+      state = next;
+      generation++;
+    }
+    // release the initial reference of the outdated index
+    old.retired = retired;
+    old.reader.decRef();
+    LOG.info("Swapped nub index searcher with {} documents", next.reader.numDocs());
+    for (Runnable l : swapListeners) {
+      l.run();
+    }
+  }
+
+  /**
+   * Registers a listener that gets called whenever a rebuilt index was swapped in,
+   * e.g. to invalidate caches of previous match results.
+   */
+  public void addSwapListener(Runnable listener) {
+    swapListeners.add(listener);
+  }
+
+  /**
+   * @return the current searcher with its reader reference count incremented. Needs to be released after use!
+   */
+  private IndexState acquire() {
+    while (true) {
+      IndexState s = state;
+      if (s.reader.tryIncRef()) {
+        return s;
+      }
+      // the reader was just retired, use the new one unless we are closed
+      if (closed) {
+        throw new IllegalStateException("Nub index is closed");
+      }
+    }
+  }
+
+  private static void release(IndexState s) {
+    try {
+      s.reader.decRef();
+    } catch (IOException e) {
+      LOG.warn("Failed to release nub index reader", e);
+    }
   }
 
 
@@ -169,12 +478,11 @@ public class NubIndex implements AutoCloseable {
 
     Query q = NumericRangeQuery.newIntRange(NubIndex.FIELD_ID, Integer.MAX_VALUE, usageID, usageID, true, true);
 
+    IndexState s = acquire();
     try {
-      IndexSearcher searcher = obtainSearcher();
-      TopDocs docs = searcher.search(q, 3);
+      TopDocs docs = s.searcher.search(q, 3);
       if (docs.totalHits > 0) {
-        Document doc = searcher.doc(docs.scoreDocs[0].doc);
-        NameUsageMatch match = fromDoc(doc);
+        NameUsageMatch match = fromDoc(s.reader, docs.scoreDocs[0].doc);
         match.setConfidence(100);
         return match;
 
@@ -183,6 +491,8 @@ public class NubIndex implements AutoCloseable {
       }
     } catch (IOException e) {
       LOG.error("Cannot load usage {} from lucene index", usageID, e.getMessage());
+    } finally {
+      release(s);
     }
 
     return null;
@@ -219,12 +529,12 @@ public class NubIndex implements AutoCloseable {
 
   private List<NameUsageMatch> search(Query q, String name, boolean fuzzySearch, int maxMatches) {
     List<NameUsageMatch> results = Lists.newArrayList();
+    IndexState s = acquire();
     try {
-      IndexSearcher searcher = obtainSearcher();
-      TopDocs docs = searcher.search(q, maxMatches);
+      TopDocs docs = s.searcher.search(q, maxMatches);
       if (docs.totalHits > 0) {
         for (ScoreDoc sdoc : docs.scoreDocs) {
-          NameUsageMatch match = fromDoc(searcher.doc(sdoc.doc));
+          NameUsageMatch match = fromDoc(s.reader, sdoc.doc);
           if (name.equalsIgnoreCase(match.getCanonicalName())) {
             match.setMatchType(NameUsageMatch.MatchType.EXACT);
             results.add(match);
@@ -242,34 +552,40 @@ public class NubIndex implements AutoCloseable {
 
     } catch (IOException e) {
       LOG.error("lucene search error", e);
+    } finally {
+      release(s);
     }
     return results;
   }
 
-  private IndexSearcher obtainSearcher() {
-    return searcher;
-  }
-
   /**
-   * Builds a NameUsageMatch instance from a lucene Document and populates all fields but the matching specifics
-   * i.e. confidence and matchType.
+   * Builds a NameUsageMatch instance from the doc values columns of a lucene document
+   * and populates all fields but the matching specifics i.e. confidence and matchType.
+   * Reading doc values avoids decompressing entire stored field blocks for every hit.
+   *
+   * @param docId the top level document id as returned by searches
    */
-  private static NameUsageMatch fromDoc(Document doc) {
+  private static NameUsageMatch fromDoc(IndexReader reader, int docId) throws IOException {
+    final List<LeafReaderContext> leaves = reader.leaves();
+    final LeafReaderContext ctx = leaves.get(ReaderUtil.subIndex(docId, leaves));
+    final LeafReader leaf = ctx.reader();
+    final int doc = docId - ctx.docBase;
+
     NameUsageMatch u = new NameUsageMatch();
-    u.setUsageKey(toInt(doc, FIELD_ID));
-    u.setAcceptedUsageKey(toInteger(doc, FIELD_ACCEPTED_ID));
+    u.setUsageKey(toInteger(leaf, FIELD_ID, doc));
+    u.setAcceptedUsageKey(toInteger(leaf, FIELD_ACCEPTED_ID, doc));
 
-    u.setScientificName(doc.get(FIELD_SCIENTIFIC_NAME));
-    u.setCanonicalName(doc.get(FIELD_CANONICAL_NAME));
+    u.setScientificName(toBinaryString(leaf, FIELD_SCIENTIFIC_NAME, doc));
+    u.setCanonicalName(toBinaryString(leaf, FIELD_CANONICAL_NAME, doc));
 
     // higher ranks
     for (Rank r : HIGHER_RANK_FIELD_MAP.keySet()) {
-      ClassificationUtils.setHigherRank(u, r, doc.get(HIGHER_RANK_FIELD_MAP.get(r)), toInteger(doc,
-          HIGHER_RANK_ID_FIELD_MAP.get(r)));
+      ClassificationUtils.setHigherRank(u, r, toSortedString(leaf, HIGHER_RANK_FIELD_MAP.get(r), doc),
+          toInteger(leaf, HIGHER_RANK_ID_FIELD_MAP.get(r), doc));
     }
 
-    u.setRank(Rank.values()[toInt(doc, FIELD_RANK)]);
-    u.setStatus(TaxonomicStatus.values()[toInt(doc, FIELD_STATUS)]);
+    u.setRank(Rank.values()[toInteger(leaf, FIELD_RANK, doc)]);
+    u.setStatus(TaxonomicStatus.values()[toInteger(leaf, FIELD_STATUS, doc)]);
 
     return u;
   }
@@ -294,41 +610,44 @@ public class NubIndex implements AutoCloseable {
 
     // use custom precision step as we do not need range queries and prefer to save memory usage instead
     doc.add(new IntField(FIELD_ID, key, INT_FIELD_MAX_PRECISION));
+    // all values needed to build a match are kept in doc values columns instead of stored fields
+    doc.add(new NumericDocValuesField(FIELD_ID, key));
 
-    // we only store accepted key, no need to index it
+    // we only keep the accepted key, no need to index it
     if (acceptedKey != null) {
-      doc.add(new StoredField(FIELD_ACCEPTED_ID, acceptedKey));
+      doc.add(new NumericDocValuesField(FIELD_ACCEPTED_ID, acceptedKey));
     }
 
     // analyzed name field - this is what we search upon
-    doc.add(new TextField(FIELD_CANONICAL_NAME, canonical, Field.Store.YES));
+    doc.add(new TextField(FIELD_CANONICAL_NAME, canonical, Field.Store.NO));
+    doc.add(new BinaryDocValuesField(FIELD_CANONICAL_NAME, new BytesRef(canonical)));
 
-    // store full name and classification only to return a full match object for hits
-    doc.add(new StoredField(FIELD_SCIENTIFIC_NAME, sciname));
+    // keep full name and classification only to return a full match object for hits
+    doc.add(new BinaryDocValuesField(FIELD_SCIENTIFIC_NAME, new BytesRef(sciname)));
 
-    // store ids as doc int values, not searchable
+    // keep ids as numeric doc values, not searchable
     if (clKeys != null) {
       for (Rank r : HIGHER_RANK_ID_FIELD_MAP.keySet()) {
         Integer hrk = clKeys.getHigherRankKey(r);
         if (hrk != null) {
-          doc.add(new StoredField(HIGHER_RANK_ID_FIELD_MAP.get(r), hrk));
+          doc.add(new NumericDocValuesField(HIGHER_RANK_ID_FIELD_MAP.get(r), hrk));
         }
       }
     }
 
-    // store higher ranks, not searchable
+    // keep higher ranks as sorted doc values which deduplicates the few distinct higher taxa, not searchable
     if (cl != null) {
       for (Rank r : HIGHER_RANK_FIELD_MAP.keySet()) {
         String hr = cl.getHigherRank(r);
         if (hr != null) {
-          doc.add(new StoredField(HIGHER_RANK_FIELD_MAP.get(r), hr));
+          doc.add(new SortedDocValuesField(HIGHER_RANK_FIELD_MAP.get(r), new BytesRef(hr)));
         }
       }
     }
 
-    // store rank if existing as ordinal int
-    // this lucene index is not persistent, so not risk in changing ordinal numbers
-    doc.add(new StoredField(FIELD_RANK, rank == null ? Rank.UNRANKED.ordinal() : rank.ordinal()));
+    // keep rank if existing as ordinal int
+    // persistent indices are rebuilt whenever the backbone changes, so little risk in changing ordinal numbers
+    doc.add(new NumericDocValuesField(FIELD_RANK, rank == null ? Rank.UNRANKED.ordinal() : rank.ordinal()));
 
     // allow only 3 values for status: accepted, doubtful and synonym
     if (status == null) {
@@ -336,26 +655,49 @@ public class NubIndex implements AutoCloseable {
     } else if (status.isSynonym()) {
       status = TaxonomicStatus.SYNONYM;
     }
-    doc.add(new StoredField(FIELD_STATUS, status.ordinal()));
+    doc.add(new NumericDocValuesField(FIELD_STATUS, status.ordinal()));
 
 
     return doc;
   }
 
-  private static int toInt(Document doc, String field) {
-    return (int) doc.getField(field).numericValue();
+  private static Integer toInteger(LeafReader reader, String field, int doc) throws IOException {
+    Bits docsWithField = reader.getDocsWithField(field);
+    if (docsWithField != null && docsWithField.get(doc)) {
+      return (int) reader.getNumericDocValues(field).get(doc);
+    }
+    return null;
   }
 
-  private static Integer toInteger(Document doc, String field) {
-    IndexableField f = doc.getField(field);
-    if (f != null) {
-      return (Integer) f.numericValue();
+  private static String toBinaryString(LeafReader reader, String field, int doc) throws IOException {
+    Bits docsWithField = reader.getDocsWithField(field);
+    if (docsWithField != null && docsWithField.get(doc)) {
+      return reader.getBinaryDocValues(field).get(doc).utf8ToString();
     }
     return null;
   }
 
+  private static String toSortedString(LeafReader reader, String field, int doc) throws IOException {
+    SortedDocValues dv = reader.getSortedDocValues(field);
+    if (dv != null && dv.getOrd(doc) >= 0) {
+      return dv.get(doc).utf8ToString();
+    }
+    return null;
+  }
+
+  /**
+   * Closes the index. Searches still in flight will complete before the underlying directory gets closed.
+   */
   @Override
   public void close() throws Exception {
-    index.close();
+    IndexState s;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      s = state;
+    }
+    s.reader.decRef();
   }
 }
@@ -1,10 +1,15 @@
 package org.gbif.nub.lookup.fuzzy;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.*;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.gbif.api.exception.UnparsableException;
@@ -33,6 +38,7 @@ import java.util.regex.Pattern;
 public class NubMatchingServiceImpl implements NameUsageMatchingService, NameUsageMatchingService2 {
 
   private static final Logger LOG = LoggerFactory.getLogger(NubMatchingServiceImpl.class);
+  public static final String CACHE_SIZE = "checklistbank.nub.cacheSize";
   private static final int MIN_CONFIDENCE = 80;
   private static final int MIN_CONFIDENCE_FOR_HIGHER_MATCHES = 90;
   private static final Set<Kingdom> VAGUE_KINGDOMS = ImmutableSet.of(Kingdom.ARCHAEA, Kingdom.BACTERIA, Kingdom.FUNGI, Kingdom.CHROMISTA, Kingdom.PROTOZOA, Kingdom.INCERTAE_SEDIS);
@@ -67,21 +73,63 @@ public class NubMatchingServiceImpl implements NameUsageMatchingService, NameUsa
   }
 
   private final AuthorComparator authComp;
+  // optional cache of final match results, null if disabled
+  private final Cache<MatchKey, NameUsageMatch> cache;
 
   protected enum MatchingMode {FUZZY, STRICT, HIGHER}
 
   /**
+   * Creates a matching service without a match cache.
+   *
    * @param nubIndex
    * @param htComp
    * @param parser
    */
-  @Inject
   public NubMatchingServiceImpl(NubIndex nubIndex, HigherTaxaComparator htComp, NameParser parser) {
+    this(nubIndex, htComp, parser, 0, new MetricRegistry());
+  }
+
+  /**
+   * @param nubIndex
+   * @param htComp
+   * @param parser
+   * @param cacheSize maximum number of match results to keep in the cache. Zero or below disables the cache.
+   * @param registry the shared metrics registry to expose cache hit, miss & eviction counts
+   */
+  @Inject
+  public NubMatchingServiceImpl(NubIndex nubIndex, HigherTaxaComparator htComp, NameParser parser,
+                                @Named(CACHE_SIZE) int cacheSize, MetricRegistry registry) {
     this.nubIndex = nubIndex;
     this.htComp = htComp;
     this.parser = parser;
     authComp = AuthorComparator.createWithAuthormap();
     initHackMap();
+    if (cacheSize > 0) {
+      LOG.info("Use match cache with a maximum of {} entries", cacheSize);
+      cache = CacheBuilder.newBuilder()
+          .maximumSize(cacheSize)
+          .recordStats()
+          .build();
+      registerCacheMetrics(registry);
+      // cached results are outdated once a rebuilt index is in place
+      nubIndex.addSwapListener(cache::invalidateAll);
+    } else {
+      cache = null;
+    }
+  }
+
+  private void registerCacheMetrics(MetricRegistry registry) {
+    registerGauge(registry, "hits", () -> cache.stats().hitCount());
+    registerGauge(registry, "misses", () -> cache.stats().missCount());
+    registerGauge(registry, "evictions", () -> cache.stats().evictionCount());
+    registerGauge(registry, "size", () -> cache.size());
+  }
+
+  private static void registerGauge(MetricRegistry registry, String name, Gauge<Long> gauge) {
+    final String regName = MetricRegistry.name(NubMatchingServiceImpl.class, "cache", name);
+    // replace gauges of previous service instances
+    registry.remove(regName);
+    registry.register(regName, gauge);
   }
 
   private void initHackMap() {
@@ -170,32 +218,79 @@ public class NubMatchingServiceImpl implements NameUsageMatchingService, NameUsa
     match.setAlternatives(alts);
   }
 
-  // Wrapper method doing the time tracking and logging only.
+  /**
+   * Wrapper method doing the time tracking, logging and caching only.
+   * Cached matches are never handed out directly, every caller receives its own copy.
+   */
   @Override
   public NameUsageMatch match(String scientificName, @Nullable Rank rank, @Nullable LinneanClassification classification, boolean strict, boolean verbose) {
     StopWatch watch = new StopWatch();
     watch.start();
 
-    NameUsageMatch match = matchInternal(scientificName, rank, classification, strict, verbose);
+    if (classification == null) {
+      classification = new NameUsageMatch();
+    } else {
+      cleanClassification(classification);
+    }
+
+    NameUsageMatch match;
+    if (cache == null) {
+      match = matchInternal(scientificName, rank, classification, strict, verbose);
+
+    } else {
+      // keyed by the index generation so a match computed against a retired index never gets served
+      MatchKey key = new MatchKey(nubIndex.getGeneration(), scientificName, rank, classification, strict, verbose);
+      match = cache.getIfPresent(key);
+      if (match == null) {
+        match = matchInternal(scientificName, rank, classification, strict, verbose);
+        cache.put(key, copy(match));
+      } else {
+        match = copy(match);
+      }
+    }
 
     LOG.debug("{} Match of scientific name >{}< to {} [{}] in {}", match.getMatchType(), scientificName, match.getUsageKey(), match.getScientificName(), watch.toString());
     return match;
   }
 
+  /**
+   * @return a deep copy of a match including all its alternatives
+   */
+  @VisibleForTesting
+  static NameUsageMatch copy(NameUsageMatch m) {
+    NameUsageMatch c = new NameUsageMatch();
+    c.setUsageKey(m.getUsageKey());
+    c.setAcceptedUsageKey(m.getAcceptedUsageKey());
+    c.setScientificName(m.getScientificName());
+    c.setCanonicalName(m.getCanonicalName());
+    c.setRank(m.getRank());
+    c.setStatus(m.getStatus());
+    c.setConfidence(m.getConfidence());
+    c.setNote(m.getNote());
+    c.setMatchType(m.getMatchType());
+    ClassificationUtils.copyLinneanClassification(m, c);
+    ClassificationUtils.copyLinneanClassificationKeys(m, c);
+    if (m.getAlternatives() != null) {
+      List<NameUsageMatch> alts = Lists.newArrayListWithCapacity(m.getAlternatives().size());
+      for (NameUsageMatch alt : m.getAlternatives()) {
+        alts.add(copy(alt));
+      }
+      c.setAlternatives(alts);
+    }
+    return c;
+  }
+
   /**
    * Real method doing the work
+   *
+   * @param classification cleaned classification, never null
    */
-  private NameUsageMatch matchInternal(String scientificName, @Nullable Rank rank, @Nullable LinneanClassification classification, boolean strict, boolean verbose) {
+  private NameUsageMatch matchInternal(String scientificName, @Nullable Rank rank, LinneanClassification classification, boolean strict, boolean verbose) {
 
     ParsedName pn = null;
     NameType queryNameType;
     MatchingMode mainMatchingMode = strict ? MatchingMode.STRICT : MatchingMode.FUZZY;
 
-    if (classification == null) {
-      classification = new NameUsageMatch();
-    } else {
-      cleanClassification(classification);
-    }
     try {
       // use name parser to make the name a canonical one
       // we build the name with flags manually as we wanna exclude indet. names such as "Abies spec." and rather match them to Abies only
@@ -736,6 +831,51 @@ public class NubMatchingServiceImpl implements NameUsageMatchingService, NameUsa
   }
 
 
+  /**
+   * Cache key for match results based on the whitespace normalized query name and the cleaned classification.
+   */
+  private static class MatchKey {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private final long generation;
+    private final String name;
+    private final Rank rank;
+    private final List<String> classification;
+    private final boolean strict;
+    private final boolean verbose;
+    private final int hash;
+
+    MatchKey(long generation, String scientificName, @Nullable Rank rank, LinneanClassification cl, boolean strict, boolean verbose) {
+      this.generation = generation;
+      this.name = scientificName == null ? null : WHITESPACE.matcher(scientificName.trim()).replaceAll(" ");
+      this.rank = rank;
+      this.classification = Lists.newArrayList();
+      for (Rank r : Rank.LINNEAN_RANKS) {
+        classification.add(Strings.emptyToNull(cl.getHigherRank(r)));
+      }
+      this.strict = strict;
+      this.verbose = verbose;
+      this.hash = Objects.hash(generation, name, rank, classification, strict, verbose);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      MatchKey that = (MatchKey) o;
+      return generation == that.generation &&
+          strict == that.strict &&
+          verbose == that.verbose &&
+          rank == that.rank &&
+          Objects.equals(name, that.name) &&
+          Objects.equals(classification, that.classification);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
   /**
    * Ordering based on match confidence and scientific name secondly.
    */
@@ -33,6 +33,16 @@ public interface IdLookup extends Iterable<LookupUsage>, AutoCloseable {
    */
   List<LookupUsage> match(String canonicalName);
 
+  /**
+   * Same as the full match method above, but selecting from the given homonyms as returned by match(canonicalName)
+   * instead of reading them from the lookup again.
+   * This allows to match many usages sharing the same canonical name with a single homonym lookup.
+   * The given homonyms list is not modified.
+   *
+   * @return the matching usage or null
+   */
+  LookupUsage match(List<LookupUsage> homonyms, String canonicalName, @Nullable String authorship, @Nullable String year, Rank rank, TaxonomicStatus status, Kingdom kingdom);
+
   /**
    * @return the number of known usage keys incl deleted ones
    */
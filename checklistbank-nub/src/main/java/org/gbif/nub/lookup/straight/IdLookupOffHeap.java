@@ -0,0 +1,405 @@
+package org.gbif.nub.lookup.straight;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.gbif.api.model.Constants;
+import org.gbif.api.vocabulary.Kingdom;
+import org.gbif.api.vocabulary.Rank;
+import org.gbif.api.vocabulary.TaxonomicStatus;
+import org.gbif.checklistbank.config.ClbConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An id lookup that keeps all usages in flat, primitive off-heap arrays instead of kryo serialized lists in MapDB.
+ * <p>
+ * Each usage is stored as a fixed size record of ints in a direct buffer, strings are kept as length prefixed UTF-8
+ * bytes in a separate direct buffer and homonyms are chained via a next pointer in the record.
+ * An open addressing hash table over the normalized canonical names points to the first and last record of each chain,
+ * so a lookup only decodes the homonyms of a single canonical name and no deserialization of entire lists is needed.
+ * <p>
+ * All data lives outside the java heap and is therefore bounded by -XX:MaxDirectMemorySize rather than -Xmx.
+ * Loading is single threaded, but once loaded concurrent reads are safe as only absolute buffer reads are used.
+ * <p>
+ * This is the lookup used for all backbones loaded freshly from postgres.
+ * Persistent snapshots that need to survive restarts still use the MapDB based IdLookupImpl.
+ */
+public class IdLookupOffHeap extends IdLookupBase {
+  private static final Logger LOG = LoggerFactory.getLogger(IdLookupOffHeap.class);
+  private static final Rank[] RANKS = Rank.values();
+  private static final TaxonomicStatus[] STATI = TaxonomicStatus.values();
+  private static final Kingdom[] KINGDOMS = Kingdom.values();
+
+  // record layout in ints
+  private static final int REC_KEY = 0;
+  private static final int REC_CANONICAL = 1;
+  private static final int REC_AUTHORSHIP = 2;
+  private static final int REC_YEAR = 3;
+  private static final int REC_RANK = 4;
+  private static final int REC_STATUS = 5;
+  private static final int REC_KINGDOM = 6;
+  private static final int REC_DELETED = 7;
+  private static final int REC_PROPARTE = 8;
+  private static final int REC_NEXT = 9;
+  private static final int REC_SIZE = 10;
+
+  // hash slot layout in ints
+  private static final int SLOT_HASH = 0;
+  private static final int SLOT_NORM = 1;
+  private static final int SLOT_HEAD = 2;
+  private static final int SLOT_TAIL = 3;
+  private static final int SLOT_SIZE = 4;
+
+  private static final int NULL = -1;
+  private static final int DEFAULT_EXPECTED_USAGES = 1024;
+  // a single direct buffer is limited to 2GB
+  private static final long MAX_BYTES = Integer.MAX_VALUE;
+  private static final long MAX_INTS = MAX_BYTES / 4;
+
+  private IntBuffer records;
+  private int recordCount = 0;
+  private ByteBuffer strings;
+  private int stringsSize = 0;
+  private IntBuffer proParte;
+  private int proParteSize = 0;
+  // slot head & tail are stored as record index + 1 so that a zeroed slot is empty
+  private IntBuffer slots;
+  private int slotCapacity;
+  private int slotCount = 0;
+
+  public IdLookupOffHeap() {
+    this(DEFAULT_EXPECTED_USAGES);
+  }
+
+  /**
+   * @param expectedUsages number of usages to presize the buffers for
+   */
+  public IdLookupOffHeap(int expectedUsages) {
+    Preconditions.checkArgument(expectedUsages > 0, "Expected usages must be positive");
+    records = allocateInts((long) expectedUsages * REC_SIZE);
+    strings = allocateBytes((long) expectedUsages * 32);
+    proParte = allocateInts(64);
+    // smallest power of 2 keeping the table at most half full
+    final long capacity = Long.highestOneBit((long) expectedUsages * 2 - 1) << 1;
+    slots = allocateInts(capacity * SLOT_SIZE);
+    slotCapacity = (int) capacity;
+  }
+
+  /**
+   * Creates a new lookup presized for the current number of backbone usages and loads them from checklistbank.
+   */
+  public static IdLookupOffHeap backbone(ClbConfiguration clb, boolean includeDeleted) throws SQLException, IOException {
+    final int expected = countUsages(clb, includeDeleted);
+    LOG.info("Presize id lookup for {} nub usages", expected);
+    return new IdLookupOffHeap(Math.max(expected, 1)).load(clb, includeDeleted);
+  }
+
+  private static int countUsages(ClbConfiguration clb, boolean includeDeleted) throws SQLException {
+    try (Connection c = clb.connect();
+         Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("SELECT count(*) FROM name_usage"
+             + " WHERE dataset_key = '" + Constants.NUB_DATASET_KEY + "'" + (includeDeleted ? "" : " AND deleted is null"))
+    ) {
+      rs.next();
+      return (int) Math.min(rs.getLong(1), Integer.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Loads idlookup with explicit list of known ids.
+   */
+  @Override
+  public IdLookupOffHeap load(Iterable<LookupUsage> usages) {
+    super.load(usages);
+    return this;
+  }
+
+  /**
+   * Loads known usages from checklistbank backbone.
+   */
+  @Override
+  public IdLookupOffHeap load(ClbConfiguration clb, boolean includeDeleted) throws SQLException, IOException {
+    super.load(clb, includeDeleted);
+    return this;
+  }
+
+  @Override
+  protected void store(String canonical, List<LookupUsage> homonyms) {
+    final byte[] norm = canonical.getBytes(StandardCharsets.UTF_8);
+    final int hash = hash(norm);
+    final int slot = findSlot(norm, hash);
+    final int base = slot * SLOT_SIZE;
+    // chain the new records
+    final int first = recordCount;
+    for (LookupUsage u : homonyms) {
+      int rec = writeRecord(u);
+      if (rec > first) {
+        records.put((rec - 1) * REC_SIZE + REC_NEXT, rec);
+      }
+    }
+    final int last = recordCount - 1;
+    if (slots.get(base + SLOT_HEAD) == 0) {
+      slots.put(base + SLOT_HASH, hash);
+      slots.put(base + SLOT_NORM, writeBytes(norm));
+      slots.put(base + SLOT_HEAD, first + 1);
+      slots.put(base + SLOT_TAIL, last + 1);
+      if (++slotCount * 2 > slotCapacity) {
+        resizeSlots();
+      }
+    } else {
+      int tail = slots.get(base + SLOT_TAIL) - 1;
+      records.put(tail * REC_SIZE + REC_NEXT, first);
+      slots.put(base + SLOT_TAIL, last + 1);
+    }
+  }
+
+  @Override
+  protected List<LookupUsage> homonyms(@Nullable String canonical) {
+    if (canonical == null) return null;
+    final byte[] norm = canonical.getBytes(StandardCharsets.UTF_8);
+    final int base = findSlot(norm, hash(norm)) * SLOT_SIZE;
+    int rec = slots.get(base + SLOT_HEAD) - 1;
+    if (rec < 0) return null;
+    List<LookupUsage> hits = new ArrayList<>();
+    while (rec != NULL) {
+      hits.add(readRecord(rec));
+      rec = records.get(rec * REC_SIZE + REC_NEXT);
+    }
+    return hits;
+  }
+
+  @Override
+  public Iterator<LookupUsage> iterator() {
+    return new Iterator<LookupUsage>() {
+      private int rec = 0;
+
+      @Override
+      public boolean hasNext() {
+        return rec < recordCount;
+      }
+
+      @Override
+      public LookupUsage next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return readRecord(rec++);
+      }
+    };
+  }
+
+  /**
+   * Releases the references to all off-heap buffers.
+   * The native memory is freed once the buffers are garbage collected.
+   */
+  @Override
+  public void close() {
+    records = null;
+    strings = null;
+    proParte = null;
+    slots = null;
+  }
+
+  /**
+   * @return the number of bytes currently allocated off-heap
+   */
+  public long offHeapBytes() {
+    return 4L * (records.capacity() + proParte.capacity() + slots.capacity()) + strings.capacity();
+  }
+
+  /**
+   * @return index of the slot holding the given normalized name or the empty slot it should be inserted into
+   */
+  private int findSlot(byte[] norm, int hash) {
+    final int mask = slotCapacity - 1;
+    int slot = hash & mask;
+    while (true) {
+      final int base = slot * SLOT_SIZE;
+      if (slots.get(base + SLOT_HEAD) == 0
+          || (slots.get(base + SLOT_HASH) == hash && bytesEqual(slots.get(base + SLOT_NORM), norm))) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void resizeSlots() {
+    final IntBuffer old = slots;
+    final int oldCapacity = slotCapacity;
+    slots = allocateInts(2L * oldCapacity * SLOT_SIZE);
+    slotCapacity = oldCapacity * 2;
+    final int mask = slotCapacity - 1;
+    for (int s = 0; s < oldCapacity; s++) {
+      final int oldBase = s * SLOT_SIZE;
+      if (old.get(oldBase + SLOT_HEAD) != 0) {
+        int slot = old.get(oldBase + SLOT_HASH) & mask;
+        while (slots.get(slot * SLOT_SIZE + SLOT_HEAD) != 0) {
+          slot = (slot + 1) & mask;
+        }
+        for (int i = 0; i < SLOT_SIZE; i++) {
+          slots.put(slot * SLOT_SIZE + i, old.get(oldBase + i));
+        }
+      }
+    }
+  }
+
+  private int writeRecord(LookupUsage u) {
+    final int rec = recordCount;
+    records = ensureCapacity(records, (rec + 1L) * REC_SIZE);
+    final int base = rec * REC_SIZE;
+    records.put(base + REC_KEY, u.getKey());
+    records.put(base + REC_CANONICAL, writeString(u.getCanonical()));
+    records.put(base + REC_AUTHORSHIP, writeString(u.getAuthorship()));
+    records.put(base + REC_YEAR, writeString(u.getYear()));
+    records.put(base + REC_RANK, u.getRank() == null ? NULL : u.getRank().ordinal());
+    records.put(base + REC_STATUS, u.getStatus() == null ? NULL : u.getStatus().ordinal());
+    records.put(base + REC_KINGDOM, u.getKingdom() == null ? NULL : u.getKingdom().ordinal());
+    records.put(base + REC_DELETED, u.isDeleted() ? 1 : 0);
+    records.put(base + REC_PROPARTE, writeProParte(u.getProParteKeys()));
+    records.put(base + REC_NEXT, NULL);
+    recordCount++;
+    return rec;
+  }
+
+  private LookupUsage readRecord(int rec) {
+    final int base = rec * REC_SIZE;
+    final int rank = records.get(base + REC_RANK);
+    final int status = records.get(base + REC_STATUS);
+    final int kingdom = records.get(base + REC_KINGDOM);
+    return new LookupUsage(
+        records.get(base + REC_KEY),
+        readProParte(records.get(base + REC_PROPARTE)),
+        readString(records.get(base + REC_CANONICAL)),
+        readString(records.get(base + REC_AUTHORSHIP)),
+        readString(records.get(base + REC_YEAR)),
+        rank == NULL ? null : RANKS[rank],
+        status == NULL ? null : STATI[status],
+        kingdom == NULL ? null : KINGDOMS[kingdom],
+        records.get(base + REC_DELETED) == 1
+    );
+  }
+
+  private int writeProParte(@Nullable Int2IntMap keys) {
+    if (keys == null || keys.isEmpty()) return NULL;
+    final int off = proParteSize;
+    proParte = ensureCapacity(proParte, off + 1L + 2L * keys.size());
+    proParte.put(off, keys.size());
+    int idx = off + 1;
+    for (Int2IntMap.Entry e : keys.int2IntEntrySet()) {
+      proParte.put(idx++, e.getIntKey());
+      proParte.put(idx++, e.getIntValue());
+    }
+    proParteSize = idx;
+    return off;
+  }
+
+  private Int2IntMap readProParte(int off) {
+    if (off == NULL) return null;
+    final int size = proParte.get(off);
+    Int2IntMap keys = new Int2IntOpenHashMap(size);
+    for (int i = 0; i < size; i++) {
+      keys.put(proParte.get(off + 1 + 2 * i), proParte.get(off + 2 + 2 * i));
+    }
+    return keys;
+  }
+
+  private int writeString(@Nullable String x) {
+    return x == null ? NULL : writeBytes(x.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private int writeBytes(byte[] bytes) {
+    final int off = stringsSize;
+    final long required = off + 4L + bytes.length;
+    if (required > strings.capacity()) {
+      ByteBuffer bigger = allocateBytes(grow(strings.capacity(), required, MAX_BYTES));
+      ByteBuffer src = strings.duplicate();
+      src.position(0).limit(stringsSize);
+      bigger.put(src);
+      strings = bigger;
+    }
+    strings.putInt(off, bytes.length);
+    ByteBuffer dest = strings.duplicate();
+    dest.position(off + 4);
+    dest.put(bytes);
+    stringsSize = (int) required;
+    return off;
+  }
+
+  private String readString(int off) {
+    if (off == NULL) return null;
+    final byte[] bytes = new byte[strings.getInt(off)];
+    ByteBuffer src = strings.duplicate();
+    src.position(off + 4);
+    src.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private boolean bytesEqual(int off, byte[] bytes) {
+    if (strings.getInt(off) != bytes.length) return false;
+    for (int i = 0; i < bytes.length; i++) {
+      if (strings.get(off + 4 + i) != bytes[i]) return false;
+    }
+    return true;
+  }
+
+  private static int hash(byte[] bytes) {
+    int h = 0;
+    for (byte b : bytes) {
+      h = 31 * h + b;
+    }
+    // spread bits as we use a power of 2 table with a simple mask
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the new capacity doubling the current one, but at least the required and at most the max capacity
+   * @throws IllegalStateException if the required capacity exceeds the max
+   */
+  private static long grow(long capacity, long required, long max) {
+    if (required > max) {
+      throw new IllegalStateException("Off heap id lookup buffer cannot grow beyond " + max + " entries");
+    }
+    return Math.min(max, Math.max(required, capacity * 2));
+  }
+
+  private static ByteBuffer allocateBytes(long size) {
+    if (size > MAX_BYTES) {
+      throw new IllegalStateException("Off heap id lookup buffer cannot grow beyond " + MAX_BYTES + " bytes");
+    }
+    return ByteBuffer.allocateDirect((int) size);
+  }
+
+  private static IntBuffer allocateInts(long size) {
+    if (size > MAX_INTS) {
+      throw new IllegalStateException("Off heap id lookup buffer cannot grow beyond " + MAX_INTS + " ints");
+    }
+    return allocateBytes(size * 4).asIntBuffer();
+  }
+
+  private static IntBuffer ensureCapacity(IntBuffer buf, long required) {
+    if (required <= buf.capacity()) {
+      return buf;
+    }
+    IntBuffer bigger = allocateInts(grow(buf.capacity(), required, MAX_INTS));
+    IntBuffer src = buf.duplicate();
+    src.clear();
+    bigger.put(src);
+    return bigger;
+  }
+}
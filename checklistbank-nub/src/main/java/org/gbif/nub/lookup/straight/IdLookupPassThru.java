@@ -34,6 +34,11 @@ public class IdLookupPassThru implements IdLookup {
     return Lists.newArrayList();
   }
 
+  @Override
+  public LookupUsage match(List<LookupUsage> homonyms, String canonicalName, @Nullable String authorship, @Nullable String year, Rank rank, TaxonomicStatus status, Kingdom kingdom) {
+    return null;
+  }
+
   @Override
   public int size() {
     return 0;
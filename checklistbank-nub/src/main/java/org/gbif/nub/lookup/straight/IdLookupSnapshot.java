@@ -0,0 +1,88 @@
+package org.gbif.nub.lookup.straight;
+
+import org.gbif.api.model.Constants;
+import org.gbif.checklistbank.config.ClbConfiguration;
+import org.gbif.checklistbank.service.mybatis.mapper.NameUsageMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens a persistent IdLookupImpl snapshot of the backbone that is tagged with the backbones last modification.
+ * Only if the snapshot is missing, incomplete or stale the lookup gets reloaded from postgres and the snapshot rewritten.
+ */
+public class IdLookupSnapshot {
+  private static final Logger LOG = LoggerFactory.getLogger(IdLookupSnapshot.class);
+  /**
+   * Increase whenever the stored format of the lookup changes to force a reload of existing snapshots.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private IdLookupSnapshot() {
+  }
+
+  /**
+   * Opens a valid existing snapshot or (re)creates it from the backbone in postgres.
+   *
+   * @param clb            the checklistbank postgres configuration
+   * @param mapper         name usage mapper used to read the current backbone state
+   * @param file           the snapshot file
+   * @param includeDeleted whether to also load deleted backbone usages
+   */
+  public static IdLookupImpl open(ClbConfiguration clb, NameUsageMapper mapper, File file, boolean includeDeleted) throws SQLException, IOException {
+    final String version = version(mapper, includeDeleted);
+    if (file.exists()) {
+      IdLookupImpl lookup = null;
+      try {
+        lookup = IdLookupImpl.persistent(file);
+        if (version.equals(lookup.getVersion())) {
+          LOG.info("Use existing id lookup snapshot {} with {} usages, version {}", file, lookup.size(), version);
+          return lookup;
+        }
+        LOG.info("Id lookup snapshot {} with version {} is stale. Current backbone version is {}", file, lookup.getVersion(), version);
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to open id lookup snapshot {}", file, e);
+      }
+      close(lookup);
+      Files.delete(file.toPath());
+    }
+
+    LOG.info("Create new id lookup snapshot {} with version {}", file, version);
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    IdLookupImpl lookup = IdLookupImpl.persistent(file);
+    try {
+      lookup.load(clb, includeDeleted);
+      lookup.snapshot(version);
+    } catch (SQLException | IOException | RuntimeException e) {
+      close(lookup);
+      throw e;
+    }
+    return lookup;
+  }
+
+  /**
+   * Builds the version tag of the current backbone in postgres.
+   * It is based on the same dataset state used to detect stale nub indices,
+   * so it changes whenever backbone usages are added, reinterpreted or deleted.
+   */
+  static String version(NameUsageMapper mapper, boolean includeDeleted) {
+    return FORMAT_VERSION + "-" + (includeDeleted ? "all" : "current") + "-" + mapper.datasetState(Constants.NUB_DATASET_KEY);
+  }
+
+  private static void close(IdLookupImpl lookup) {
+    if (lookup != null) {
+      try {
+        lookup.close();
+      } catch (Exception e) {
+        LOG.warn("Failed to close id lookup", e);
+      }
+    }
+  }
+}
@@ -1,8 +1,9 @@
 package org.gbif.nub.mapdb;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import javax.annotation.Nullable;
 
+import com.codahale.metrics.Histogram;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -17,36 +18,61 @@ import org.mapdb.serializer.GroupSerializerObjectArray;
 
 /**
  * A mapDB serializer that uses kryo under the hood to quickly serialize objects into the mapdb data output/input.
+ * Every thread reuses its own kryo output buffer which grows with the largest object serialized so far.
+ * Buffers that had to grow beyond MAX_BUFFER_SIZE are dropped again to not keep the memory of a single huge object.
  * @param <T> the class to serialize
  */
 public class MapDbObjectSerializer<T> extends GroupSerializerObjectArray<T> {
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
     private final KryoPool pool;
     private final int bufferSize;
+    private final ThreadLocal<Output> outputs;
     private final Class<T> clazz;
+    private final Histogram sizes;
 
   public MapDbObjectSerializer(Class<T> clazz, KryoFactory kryoFactory) {
     this(clazz, new KryoPool.Builder(kryoFactory).softReferences().build(), 256);
   }
 
   public MapDbObjectSerializer(Class<T> clazz, KryoPool pool, int bufferSize) {
-        this.pool = pool;
-        this.clazz = clazz;
-        this.bufferSize = bufferSize;
-    }
+    this(clazz, pool, bufferSize, null);
+  }
+
+  /**
+   * @param bufferSize initial size of the kryo buffer in bytes
+   * @param sizes optional histogram to record the serialized size of all objects
+   */
+  public MapDbObjectSerializer(Class<T> clazz, KryoPool pool, int bufferSize, @Nullable Histogram sizes) {
+    this.pool = pool;
+    this.clazz = clazz;
+    this.bufferSize = Math.min(bufferSize, MAX_BUFFER_SIZE);
+    this.sizes = sizes;
+    outputs = ThreadLocal.withInitial(this::newOutput);
+  }
+
+  private Output newOutput() {
+    // unlimited growing buffer, written directly without intermediate copies
+    return new Output(bufferSize, -1);
+  }
 
   @Override
   public void serialize(@NotNull DataOutput2 out, @NotNull T value) throws IOException {
     Kryo kryo = pool.borrow();
+    Output output = outputs.get();
     try {
-      ByteArrayOutputStream buffer = new ByteArrayOutputStream(bufferSize);
-      Output output = new Output(buffer, bufferSize);
+      output.clear();
       kryo.writeObject(output, value);
-      output.close();
-      byte[] bytes = buffer.toByteArray();
-      DataIO.packInt(out, bytes.length);
-      out.write(bytes);
+      final int size = output.position();
+      DataIO.packInt(out, size);
+      out.write(output.getBuffer(), 0, size);
+      if (sizes != null) {
+        sizes.update(size);
+      }
     } finally {
       pool.release(kryo);
+      if (output.getBuffer().length > MAX_BUFFER_SIZE) {
+        outputs.remove();
+      }
     }
   }
 
@@ -64,6 +90,13 @@ public class MapDbObjectSerializer<T> extends GroupSerializerObjectArray<T> {
     }
   }
 
+  /**
+   * @return the size of the kryo buffer of the current thread
+   */
+  int getBufferSize() {
+    return outputs.get().getBuffer().length;
+  }
+
   @Override
     public boolean isTrusted() {
         return true;
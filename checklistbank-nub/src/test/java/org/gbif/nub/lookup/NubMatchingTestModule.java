@@ -5,6 +5,7 @@ import com.google.common.collect.Maps;
 import com.google.inject.PrivateModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.name.Names;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.gbif.api.model.checklistbank.NameUsageMatch;
@@ -36,7 +37,7 @@ public class NubMatchingTestModule extends PrivateModule {
 
   @Override
   protected void configure() {
-
+    bindConstant().annotatedWith(Names.named(NubMatchingServiceImpl.CACHE_SIZE)).to(0);
     bind(NameUsageMatchingService.class).to(NubMatchingServiceImpl.class).asEagerSingleton();
     expose(NameUsageMatchingService.class);
   }
@@ -58,7 +59,7 @@ public class NubMatchingTestModule extends PrivateModule {
   public static HigherTaxaComparator provideSynonyms() throws IOException {
     LOG.info("Loading synonym dictionaries from classpath ...");
     HigherTaxaComparator syn = new HigherTaxaComparator();
-    syn.loadClasspathDicts("dicts");
+    syn.loadBundledDicts();
     return syn;
   }
 
@@ -33,14 +33,24 @@ public class HigherTaxaComparatorTest {
   @Test
   public void testReloading() throws IOException {
     HigherTaxaComparator htl = new HigherTaxaComparator();
-    htl.loadClasspathDicts("dicts");
+    htl.loadClasspathDicts(HigherTaxaComparator.BUNDLED_DICTS);
     assertTrue(htl.size() > 10);
   }
 
+  @Test
+  public void testBundledDicts() {
+    HigherTaxaComparator htl = new HigherTaxaComparator();
+    htl.loadBundledDicts();
+    assertTrue(htl.size() > 10);
+    assertEquals("Animalia", htl.lookup("Metazoa", Rank.KINGDOM));
+    assertEquals("Animalia", htl.lookup("metazoa"));
+    assertTrue(htl.isBlacklisted("Incertae sedis"));
+  }
+
   @Test
   public void testKingdoms() throws IOException {
     HigherTaxaComparator htl = new HigherTaxaComparator();
-    htl.loadClasspathDicts("dicts");
+    htl.loadClasspathDicts(HigherTaxaComparator.BUNDLED_DICTS);
     // Animalia varieties
     assertEquals("Animalia", htl.lookup("Animalia", Rank.KINGDOM));
     assertEquals("Animalia", htl.lookup("Anamalia", Rank.KINGDOM));
@@ -53,7 +63,7 @@ public class HigherTaxaComparatorTest {
   @Test
   public void testBlacklist() throws IOException {
     HigherTaxaComparator htl = new HigherTaxaComparator();
-    htl.loadClasspathDicts("dicts");
+    htl.loadClasspathDicts(HigherTaxaComparator.BUNDLED_DICTS);
 
     assertFalse(htl.isBlacklisted("Animals"));
     assertFalse(htl.isBlacklisted("Abies indeterminata"));
@@ -1,25 +1,41 @@
 package org.gbif.nub.lookup.fuzzy;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.gbif.api.model.Constants;
 import org.gbif.api.model.checklistbank.NameUsageMatch;
 import org.gbif.api.service.checklistbank.NameParser;
 import org.gbif.api.util.VocabularyUtils;
 import org.gbif.api.vocabulary.Rank;
 import org.gbif.api.vocabulary.TaxonomicStatus;
+import org.gbif.checklistbank.model.ParsedNameUsage;
+import org.gbif.checklistbank.service.mybatis.mapper.NameUsageMapper;
 import org.gbif.nameparser.NameParserGbifV1;
 import org.gbif.utils.file.csv.CSVReader;
 import org.gbif.utils.file.csv.CSVReaderFactory;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class NubIndexTest {
 
@@ -28,7 +44,7 @@ public class NubIndexTest {
   @BeforeClass
   public static void buildMatcher() throws IOException {
     HigherTaxaComparator syn = new HigherTaxaComparator();
-    syn.loadClasspathDicts("dicts");
+    syn.loadBundledDicts();
     index = NubIndex.newMemoryIndex(readTestNames());
   }
 
@@ -73,6 +89,11 @@ public class NubIndexTest {
     assertEquals(Rank.SPECIES, m.getRank());
     assertFalse(m.isSynonym());
     assertNull(m.getAcceptedUsageKey());
+    assertEquals("Abies alba", m.getCanonicalName());
+    assertEquals("Plantae", m.getKingdom());
+    assertEquals("Piceaceae", m.getFamily());
+    assertNull(m.getOrder());
+    assertNull(m.getKingdomKey());
 
     m = index.matchByName("Abies alba", true, 2).get(0);
     assertEquals(abiesAlbaKey, m.getUsageKey());
@@ -105,6 +126,122 @@ public class NubIndexTest {
     // synonym matching
     m = index.matchByName("Picea abies", false, 2).get(0);
     assertTrue(m.isSynonym());
+    assertEquals((Integer) 7, m.getAcceptedUsageKey());
 
   }
+
+  /**
+   * @return a mapper streaming a single usage for any dataset
+   */
+  private static NameUsageMapper mapper(int key, String name) {
+    ParsedNameUsage u = new ParsedNameUsage();
+    u.setKey(key);
+    u.setScientificName(name);
+    u.setRank(Rank.SPECIES);
+    u.setTaxonomicStatus(TaxonomicStatus.ACCEPTED);
+
+    NameUsageMapper mapper = mock(NameUsageMapper.class);
+    doAnswer(invocation -> {
+      @SuppressWarnings("unchecked")
+      ResultHandler<ParsedNameUsage> handler = (ResultHandler<ParsedNameUsage>) invocation.getArguments()[1];
+      DefaultResultContext<ParsedNameUsage> ctx = new DefaultResultContext<>();
+      ctx.nextResultObject(u);
+      handler.handleResult(ctx);
+      return null;
+    }).when(mapper).processDataset(any(), any());
+    return mapper;
+  }
+
+  @Test
+  public void testRebuild() throws Exception {
+    NubIndex idx = NubIndex.newMemoryIndex(readTestNames());
+    final AtomicInteger swaps = new AtomicInteger();
+    idx.addSwapListener(swaps::incrementAndGet);
+    assertNotNull(idx.matchByUsageId(7));
+    assertEquals(0L, idx.getGeneration());
+
+    // memory rebuild
+    idx.rebuild(mapper(1000, "Larix decidua Mill."), Constants.NUB_DATASET_KEY);
+    assertEquals(1, swaps.get());
+    assertEquals(1L, idx.getGeneration());
+    assertNull(idx.matchByUsageId(7));
+    assertEquals((Integer) 1000, idx.matchByName("Larix decidua", false, 2).get(0).getUsageKey());
+    idx.close();
+  }
+
+  @Test
+  public void testRebuildFileIndex() throws Exception {
+    File tmp = Files.createTempDirectory("nubidx").toFile();
+    try {
+      File dir = new File(tmp, "idx");
+      NameUsageMapper mapper = mapper(1000, "Larix decidua Mill.");
+      when(mapper.datasetState(any())).thenReturn("1:1000:2018-01-01");
+      NubIndex idx = NubIndex.newFileIndex(dir, mapper, Constants.NUB_DATASET_KEY);
+
+      // the rebuilt index replaces the one in the configured directory
+      NameUsageMapper mapper2 = mapper(1001, "Larix kaempferi (Lamb.) Carrière");
+      when(mapper2.datasetState(any())).thenReturn("1:1001:2018-02-01");
+      idx.rebuild(mapper2, Constants.NUB_DATASET_KEY);
+      assertEquals(1L, idx.getGeneration());
+      assertNull(idx.matchByUsageId(1000));
+      assertEquals((Integer) 1001, idx.matchByUsageId(1001).getUsageKey());
+      // the retired directory is gone once no search uses it anymore
+      assertEquals(ImmutableSet.of("idx", "idx.lock"), ImmutableSet.copyOf(tmp.list()));
+      idx.close();
+
+      // the configured directory is kept on close and reused with the rebuilt index
+      assertTrue(dir.exists());
+      idx = NubIndex.newFileIndex(dir, mapper2, Constants.NUB_DATASET_KEY);
+      assertEquals((Integer) 1001, idx.matchByUsageId(1001).getUsageKey());
+      idx.close();
+      verify(mapper2, times(1)).processDataset(any(), any());
+
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  @Test
+  public void testReuseFileIndex() throws Exception {
+    File tmp = Files.createTempDirectory("nubidx").toFile();
+    try {
+      File dir = new File(tmp, "idx");
+      NameUsageMapper mapper = mapper(1000, "Larix decidua Mill.");
+      when(mapper.datasetState(any())).thenReturn("1:1000:2018-01-01");
+
+      NubIndex idx = NubIndex.newFileIndex(dir, mapper, Constants.NUB_DATASET_KEY);
+      final String checksum = idx.getChecksum();
+      assertNotNull(checksum);
+      idx.close();
+
+      // unchanged state, reuse index
+      idx = NubIndex.newFileIndex(dir, mapper, Constants.NUB_DATASET_KEY);
+      assertEquals(checksum, idx.getChecksum());
+      assertEquals((Integer) 1000, idx.matchByUsageId(1000).getUsageKey());
+      idx.close();
+      verify(mapper, times(1)).processDataset(any(), any());
+
+      // changed dataset, rebuild
+      when(mapper.datasetState(any())).thenReturn("1:1000:2018-02-01");
+      idx = NubIndex.newFileIndex(dir, mapper, Constants.NUB_DATASET_KEY);
+      assertNotEquals(checksum, idx.getChecksum());
+      idx.close();
+      verify(mapper, times(2)).processDataset(any(), any());
+
+      // incomplete index without commit marker, rebuild
+      assertTrue(new File(dir, "nubindex.commit").delete());
+      // leftover of a crashed build
+      File crashed = new File(tmp, "idx.build-1");
+      FileUtils.touch(new File(crashed, "_0.cfs"));
+      idx = NubIndex.newFileIndex(dir, mapper, Constants.NUB_DATASET_KEY);
+      idx.close();
+      verify(mapper, times(3)).processDataset(any(), any());
+      assertTrue(new File(dir, "nubindex.commit").exists());
+      assertFalse(crashed.exists());
+      assertEquals(ImmutableSet.of("idx", "idx.lock"), ImmutableSet.copyOf(tmp.list()));
+
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package org.gbif.nub.lookup.fuzzy;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Joiner;
 import org.apache.commons.lang.math.IntRange;
 import org.gbif.api.model.checklistbank.NameUsageMatch;
@@ -681,5 +682,33 @@ public class NubMatchingServiceImplIT {
     assertMatch("Iberus gualterianus minor Serradell", cl, 4564258, new IntRange(90, 99));
   }
 
+  @Test
+  public void testMatchCache() throws IOException {
+    MetricRegistry registry = new MetricRegistry();
+    NubMatchingServiceImpl cached = new NubMatchingServiceImpl(NubMatchingTestModule.provideIndex(),
+        NubMatchingTestModule.provideSynonyms(), new NameParserGbifV1(), 10, registry);
+
+    LinneanClassification cl = new NameUsageMatch();
+    cl.setFamily("Helicidae");
+    NameUsageMatch m1 = cached.match("Iberus gualterianus minor Serradell", null, cl, false, false);
+    assertEquals((Integer) 4564258, m1.getUsageKey());
 
+    cl = new NameUsageMatch();
+    cl.setFamily("Helicidae");
+    // whitespace differences are normalized away
+    NameUsageMatch m2 = cached.match(" Iberus  gualterianus minor Serradell", null, cl, false, false);
+    assertEquals(m1, m2);
+    // callers get their own copy which they can modify without changing the cached match
+    assertNotSame(m1, m2);
+    m2.setNote("modified");
+    m2.setUsageKey(1);
+    assertEquals(m1, cached.match("Iberus gualterianus minor Serradell", null, cl, false, false));
+
+    // different classification is not cached yet
+    NameUsageMatch m3 = cached.match("Iberus gualterianus minor Serradell", null, new NameUsageMatch(), false, false);
+    assertNotSame(m1, m3);
+
+    assertEquals(2L, registry.getGauges().get(MetricRegistry.name(NubMatchingServiceImpl.class, "cache", "hits")).getValue());
+    assertEquals(2L, registry.getGauges().get(MetricRegistry.name(NubMatchingServiceImpl.class, "cache", "misses")).getValue());
+  }
 }
@@ -23,7 +23,7 @@ public class NubMatchingServiceImplLegacyIT {
   @BeforeClass
   public static void buildMatcher() throws IOException {
     HigherTaxaComparator syn = new HigherTaxaComparator();
-    syn.loadClasspathDicts("dicts");
+    syn.loadBundledDicts();
 
     NubIndex index = NubIndex.newMemoryIndex(NubIndexTest.readTestNames());
 
@@ -3,15 +3,19 @@ package org.gbif.nub.lookup.straight;
 import org.gbif.api.vocabulary.Kingdom;
 import org.gbif.api.vocabulary.Rank;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.gbif.api.vocabulary.TaxonomicStatus.*;
 import static org.gbif.api.vocabulary.Rank.*;
@@ -22,11 +26,19 @@ public class IdLookupImplTest {
 
   @Before
   public void init() {
-    l = newTestLookup();
+    l = newLookup(testUsages());
+  }
+
+  protected IdLookup newLookup(Collection<LookupUsage> usages) {
+    return IdLookupImpl.temp().load(usages);
   }
 
   public static IdLookup newTestLookup() {
-    Collection<LookupUsage> usages = Lists.newArrayList(
+    return IdLookupImpl.temp().load(testUsages());
+  }
+
+  static Collection<LookupUsage> testUsages() {
+    return Lists.newArrayList(
         new LookupUsage(1,  "Animalia", null, null, KINGDOM, ACCEPTED, ANIMALIA, false),
         new LookupUsage(2,  "Oenanthe", "Vieillot", "1816", GENUS, ACCEPTED, ANIMALIA, false),
         new LookupUsage(3,  "Oenanthe", "Linnaeus", "1753", GENUS, ACCEPTED, PLANTAE, false),
@@ -44,7 +56,6 @@ public class IdLookupImplTest {
         new LookupUsage(15, "Carex comosa × Carex lupulina", null, null, SPECIES, ACCEPTED, PLANTAE, true),
         new LookupUsage(16, "Aeropyrum coil-shaped virus", null, null, UNRANKED, ACCEPTED, VIRUSES, true)
     );
-    return IdLookupImpl.temp().load(usages);
   }
 
   @Test
@@ -116,4 +127,63 @@ public class IdLookupImplTest {
     assertNull(l.match("Aeropyrum coil-shaped virus", null, null, UNRANKED, ACCEPTED, FUNGI));
 
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testMatchHomonyms() throws Exception {
+    List<LookupUsage> hits = ImmutableList.copyOf(l.match("Oenanthe"));
+    assertEquals(2, l.match(hits, "Oenanthe", null, null, GENUS, ACCEPTED, ANIMALIA).getKey());
+    assertEquals(2, l.match(hits, "Oenanthe", "Vieillot", null, GENUS, ACCEPTED, ANIMALIA).getKey());
+    assertEquals(3, l.match(hits, "Oenanthe", null, null, GENUS, ACCEPTED, PLANTAE).getKey());
+    assertNull(l.match(hits, "Oenanthe", null, null, GENUS, ACCEPTED, INCERTAE_SEDIS));
+    assertNull(l.match(hits, "Oenanthe", "Camelot", null, GENUS, ACCEPTED, ANIMALIA));
+    // the given homonyms are reused
+    assertEquals(l.match("Oenanthe").size(), hits.size());
+
+    assertNull(l.match(ImmutableList.<LookupUsage>of(), "Oenanthe", null, null, GENUS, ACCEPTED, ANIMALIA));
+  }
+
+  /**
+   * Homonyms are grouped by consecutive runs during loading.
+   * Make sure interleaved homonyms still end up in the same group.
+   */
+  @Test
+  public void testInterleavedHomonyms() throws Exception {
+    IdLookup l2 = newLookup(Lists.newArrayList(
+        new LookupUsage(1, "Oenanthe", "Vieillot", "1816", GENUS, ACCEPTED, ANIMALIA, false),
+        new LookupUsage(2, "Oenanthe", "Linnaeus", "1753", GENUS, ACCEPTED, PLANTAE, false),
+        new LookupUsage(3, "Abies", null, null, GENUS, ACCEPTED, PLANTAE, false),
+        new LookupUsage(4, "Œnanthe", null, null, GENUS, ACCEPTED, FUNGI, true),
+        new LookupUsage(5, "Abies", null, null, GENUS, DOUBTFUL, PLANTAE, true)
+    ));
+    assertEquals(5, l2.size());
+    assertEquals(2, l2.deletedIds());
+    assertEquals(3, l2.match("Oenanthe").size());
+    assertEquals(2, l2.match("Abies").size());
+    assertEquals(4, l2.match("Oenanthe", null, null, GENUS, ACCEPTED, FUNGI).getKey());
+    l2.close();
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    File f = File.createTempFile("idlookup", ".db");
+    f.delete();
+    try {
+      IdLookupImpl lookup = IdLookupImpl.persistent(f).load(testUsages());
+      assertNull(lookup.getVersion());
+      lookup.snapshot("1-test");
+      lookup.close();
+
+      lookup = IdLookupImpl.persistent(f);
+      assertEquals("1-test", lookup.getVersion());
+      assertEquals(16, lookup.size());
+      assertEquals(9, lookup.deletedIds());
+      assertEquals(16, lookup.getKeyMax());
+      assertEquals(7, lookup.match("Rodentia", ORDER, ANIMALIA).getKey());
+      lookup.close();
+
+    } finally {
+      f.delete();
+      assertFalse(f.exists());
+    }
+  }
+}
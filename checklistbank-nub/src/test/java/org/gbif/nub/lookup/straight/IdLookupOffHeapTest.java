@@ -0,0 +1,134 @@
+package org.gbif.nub.lookup.straight;
+
+import org.gbif.api.vocabulary.Rank;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.junit.Test;
+
+import static org.gbif.api.vocabulary.Kingdom.ANIMALIA;
+import static org.gbif.api.vocabulary.Kingdom.PLANTAE;
+import static org.gbif.api.vocabulary.Rank.GENUS;
+import static org.gbif.api.vocabulary.Rank.SPECIES;
+import static org.gbif.api.vocabulary.TaxonomicStatus.ACCEPTED;
+import static org.gbif.api.vocabulary.TaxonomicStatus.SYNONYM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs all IdLookupImplTest tests against the off heap implementation and adds some storage specific ones.
+ */
+public class IdLookupOffHeapTest extends IdLookupImplTest {
+
+  @Override
+  protected IdLookup newLookup(Collection<LookupUsage> usages) {
+    return new IdLookupOffHeap(4).load(usages);
+  }
+
+  @Test
+  public void testRoundtrip() throws Exception {
+    Int2IntMap pp = new Int2IntOpenHashMap();
+    pp.put(100, 101);
+    pp.put(200, -201);
+    LookupUsage u = new LookupUsage(99, pp, "Abies alba", "Miller", "1768", SPECIES, SYNONYM, PLANTAE, true);
+    LookupUsage u2 = new LookupUsage(98, "Abies alba", null, null, null, null, null, false);
+
+    IdLookupOffHeap lookup = new IdLookupOffHeap().load(Lists.newArrayList(u, u2));
+    assertEquals(2, lookup.size());
+    assertEquals(1, lookup.deletedIds());
+    assertEquals(101, lookup.getKeyMax());
+
+    List<LookupUsage> hits = lookup.match("Abies  alba");
+    assertEquals(2, hits.size());
+    LookupUsage hit = hits.get(0);
+    assertEquals(u, hit);
+    assertEquals(pp, hit.getProParteKeys());
+    assertEquals("Miller", hit.getAuthorship());
+    assertEquals("1768", hit.getYear());
+    assertTrue(hit.isDeleted());
+
+    hit = hits.get(1);
+    assertEquals(98, hit.getKey());
+    assertNull(hit.getProParteKeys());
+    assertNull(hit.getAuthorship());
+    assertNull(hit.getRank());
+    assertNull(hit.getStatus());
+    assertNull(hit.getKingdom());
+
+    assertTrue(lookup.match("Abies").isEmpty());
+    lookup.close();
+  }
+
+  /**
+   * Make sure the buffers and hash table grow correctly beyond their initial size.
+   */
+  @Test
+  public void testGrowth() throws Exception {
+    List<LookupUsage> usages = Lists.newArrayList();
+    for (int i = 1; i <= 10000; i++) {
+      usages.add(new LookupUsage(i, "Genus" + (i % 2500), "Author" + i, null, GENUS, ACCEPTED, ANIMALIA, false));
+    }
+    IdLookupOffHeap lookup = new IdLookupOffHeap(1).load(usages);
+    assertEquals(10000, lookup.size());
+    assertEquals(10000, lookup.getKeyMax());
+    for (int g = 0; g < 2500; g++) {
+      assertEquals(4, lookup.match("Genus" + g).size());
+    }
+    assertEquals(1234, lookup.match("Genus1234", "Author1234", null, GENUS, ACCEPTED, ANIMALIA).getKey());
+    assertNull(lookup.match("Genus1234", Rank.FAMILY, ANIMALIA));
+
+    Set<Integer> keys = Sets.newHashSet();
+    for (LookupUsage u : lookup) {
+      keys.add(u.getKey());
+    }
+    assertEquals(10000, keys.size());
+    assertTrue(keys.contains(1));
+    assertTrue(keys.contains(10000));
+    lookup.close();
+  }
+
+  /**
+   * Homonyms of the same normalized name must be stored as a single group even if they are not adjacent in the source.
+   */
+  @Test
+  public void testScatteredHomonyms() throws Exception {
+    final Map<String, Integer> stored = Maps.newHashMap();
+    IdLookupOffHeap lookup = new IdLookupOffHeap(4) {
+      @Override
+      protected void store(String canonical, List<LookupUsage> homonyms) {
+        stored.merge(canonical, 1, Integer::sum);
+        super.store(canonical, homonyms);
+      }
+    };
+    lookup.load(Lists.newArrayList(
+        new LookupUsage(1, "Abies alba", "Mill.", null, SPECIES, ACCEPTED, PLANTAE, false),
+        new LookupUsage(2, "Picea abies", null, null, SPECIES, ACCEPTED, PLANTAE, false),
+        new LookupUsage(3, "Abies  alba", "L.", null, SPECIES, SYNONYM, PLANTAE, false),
+        new LookupUsage(4, "Abies alba", null, null, SPECIES, ACCEPTED, ANIMALIA, false)
+    ));
+    assertEquals(2, stored.size());
+    for (int count : stored.values()) {
+      assertEquals(1, count);
+    }
+    assertEquals(3, lookup.match("Abies alba").size());
+    assertEquals(1, lookup.match("Picea abies").size());
+    lookup.close();
+  }
+
+  /**
+   * Buffer sizes beyond the 2GB limit of direct buffers must fail instead of overflowing.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testTooLarge() throws Exception {
+    new IdLookupOffHeap(Integer.MAX_VALUE);
+  }
+}
@@ -5,16 +5,25 @@ import org.gbif.api.vocabulary.Rank;
 import org.gbif.nub.lookup.straight.LookupKryoFactory;
 import org.gbif.nub.lookup.straight.LookupUsage;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import com.google.common.base.Strings;
 import org.junit.Test;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
 import org.mapdb.Serializer;
 import org.mapdb.serializer.SerializerJava;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class MapDbObjectSerializerTest {
 
@@ -58,6 +67,36 @@ public class MapDbObjectSerializerTest {
 
   }
 
+  @Test
+  public void testGrowingBuffer() throws Exception {
+    Histogram sizes = new MetricRegistry().histogram("sizes");
+    MapDbObjectSerializer<LookupUsage> ser = new MapDbObjectSerializer<LookupUsage>(LookupUsage.class,
+        new KryoPool.Builder(new LookupKryoFactory()).build(), 8, sizes);
+
+    LookupUsage u = usage(1);
+    u.setAuthorship(Strings.repeat("Miller ", 100));
+    assertEquals(u, roundtrip(ser, u));
+    assertEquals(1, sizes.getCount());
+    assertTrue(sizes.getSnapshot().getMax() > 700);
+    assertTrue(ser.getBufferSize() > 700);
+
+    // small objects reuse the grown buffer
+    assertEquals(usage(2), roundtrip(ser, usage(2)));
+    assertEquals(2, sizes.getCount());
+    assertTrue(ser.getBufferSize() > 700);
+
+    // buffers grown beyond 64KB are not kept
+    u.setAuthorship(Strings.repeat("Miller ", 10000));
+    assertEquals(u, roundtrip(ser, u));
+    assertEquals(8, ser.getBufferSize());
+  }
+
+  private static <T> T roundtrip(MapDbObjectSerializer<T> ser, T obj) throws IOException {
+    DataOutput2 out = new DataOutput2();
+    ser.serialize(out, obj);
+    return ser.deserialize(new DataInput2.ByteArray(out.copyBytes()), out.pos);
+  }
+
   private void logRate(String name, long start) {
     System.out.print(name);
     System.out.print(": ");